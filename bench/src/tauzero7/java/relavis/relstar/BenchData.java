@@ -0,0 +1,65 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+/**
+ * Input data shared by the benchmarks. Benchmarks run in the project
+ * directory, so the data files are found at their usual place.
+ */
+final class BenchData {
+    private static StarCatalog catalog;
+
+    private BenchData() {
+    }
+
+    /**
+     * Star catalog of given size. The loaded catalog is repeated or cut
+     * to the requested number of stars.
+     * 
+     * @param numStars
+     *            : number of stars.
+     * @return star catalog.
+     */
+    static synchronized StarCatalog catalog(int numStars) {
+        if (catalog == null) {
+            catalog = StarCatalogFile.load();
+        }
+        if (numStars == catalog.getNumStars()) {
+            return catalog;
+        }
+        StarCatalog c = StarCatalog.allocate(numStars);
+        int n = catalog.getNumStars();
+        for (int i = 0; i < numStars; i++) {
+            int k = i % n;
+            c.set(i, catalog.hipID(k), catalog.parallax(k), catalog.ra(k),
+                    catalog.dec(k), catalog.absMag(k), catalog.temp(k));
+        }
+        return c;
+    }
+
+    /**
+     * Projection parameters of a typical frame.
+     * 
+     * @param camera
+     *            : 4pi=0, Pinhole=1.
+     * @return projection parameters.
+     */
+    static ProjectionParams params(int camera) {
+        ProjectionParams p = new ProjectionParams();
+        p.width = 1920;
+        p.height = 1080;
+        p.camera = camera;
+        p.beta = 0.9;
+        p.setBoost(p.beta);
+        p.currPos = 10.0;
+        ProjectionParams.rotationMatrix(0.3, Math.PI, p.rotmat);
+        return p;
+    }
+}
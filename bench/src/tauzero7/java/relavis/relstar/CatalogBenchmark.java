@@ -0,0 +1,76 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Loading the star catalog and building the vertex arrays.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CatalogBenchmark {
+    private Hipparcos hip;
+
+    @Setup
+    public void setup() {
+        hip = new Hipparcos(Defs.BIN_NAME_HIPPARCOS);
+    }
+
+    /**
+     * Read and convert the original binary catalog.
+     */
+    @Benchmark
+    public StarCatalog readHipparcos() {
+        return new Hipparcos(Defs.BIN_NAME_HIPPARCOS).getCatalog();
+    }
+
+    /**
+     * Map the packed catalog without checksum.
+     */
+    @Benchmark
+    public StarCatalog readPacked() throws IOException {
+        return new StarCatalogFile(Defs.BIN_NAME_CATALOG).read(false);
+    }
+
+    /**
+     * Map the packed catalog and verify the checksum.
+     */
+    @Benchmark
+    public StarCatalog readPackedVerified() throws IOException {
+        return new StarCatalogFile(Defs.BIN_NAME_CATALOG).read(true);
+    }
+
+    @Benchmark
+    public FloatBuffer getVertices() {
+        return hip.getVertices();
+    }
+
+    @Benchmark
+    public FloatBuffer getMagnitudes() {
+        return hip.getMagnitudes();
+    }
+
+    @Benchmark
+    public FloatBuffer getTemps() {
+        return hip.getTemps();
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Camera control called from the mouse handlers. The renderer is not
+ * attached to a GL context, its assets are never loaded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ControlBenchmark {
+    private GLRenderer renderer;
+    private int        step = 0;
+
+    @Setup
+    public void setup() {
+        renderer = new GLRenderer(1920, 1080, new AssetLoader(
+                new StartupTimeline()));
+    }
+
+    @Benchmark
+    public void setRotMatrix() {
+        step = (step + 1) & 1023;
+        renderer.setRotMatrix(step * 0.001, step * 0.002);
+    }
+
+    @Benchmark
+    public void setMouseMotion() {
+        step = (step + 1) & 1023;
+        renderer.setMouseMotion(step - 512);
+    }
+}
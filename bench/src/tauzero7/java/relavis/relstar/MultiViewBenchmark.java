@@ -0,0 +1,81 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Several views of the same instant, projected in one pass over the
+ * catalog or in one pass per view.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MultiViewBenchmark {
+    @Param({ "118218", "1000000" })
+    public int                 numStars;
+
+    @Param({ "1", "2", "6" })
+    public int                 views;
+
+    @Param({ "1", "4" })
+    public int                 threads;
+
+    private ForkJoinPool       pool;
+    private StarCatalog        catalog;
+    private StarProjector      projector;
+    private ProjectionParams[] params;
+    private ProjectedStars[]   out;
+
+    @Setup
+    public void setup() {
+        pool = new ForkJoinPool(threads);
+        catalog = BenchData.catalog(numStars);
+        projector = new StarProjector(pool, null);
+        projector.setKernel(ProjectionKernel.scalar());
+        params = new ProjectionParams[views];
+        out = new ProjectedStars[views];
+        for (int v = 0; v < views; v++) {
+            params[v] = BenchData.params(1);
+            params[v].setRotation(0.3, Math.PI + v * Math.PI / 3);
+            out[v] = new ProjectedStars(numStars);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public ProjectedStars[] batch() {
+        projector.project(catalog, params, out);
+        return out;
+    }
+
+    @Benchmark
+    public ProjectedStars[] separate() {
+        for (int v = 0; v < views; v++) {
+            projector.project(catalog, params[v], out[v]);
+        }
+        return out;
+    }
+}
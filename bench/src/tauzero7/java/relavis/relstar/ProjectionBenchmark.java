@@ -0,0 +1,76 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * CPU star projection by catalog size, number of threads, kernel and
+ * camera.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProjectionBenchmark {
+    @Param({ "10000", "118218", "1000000" })
+    public int               numStars;
+
+    @Param({ "1", "4", "32" })
+    public int               threads;
+
+    @Param({ "scalar", "vector" })
+    public String            kernel;
+
+    @Param({ "0", "1" })
+    public int               camera;
+
+    private ForkJoinPool     pool;
+    private StarCatalog      catalog;
+    private StarProjector    projector;
+    private ProjectionParams params;
+    private ProjectedStars   out;
+
+    @Setup
+    public void setup() {
+        pool = new ForkJoinPool(threads);
+        catalog = BenchData.catalog(numStars);
+        projector = new StarProjector(pool, null);
+        if (kernel.equals("scalar")) {
+            projector.setKernel(ProjectionKernel.scalar());
+        } else if (ProjectionKernel.load() == ProjectionKernel.scalar()) {
+            throw new IllegalStateException("vector kernel not available, "
+                    + "run with --add-modules jdk.incubator.vector");
+        }
+        params = BenchData.params(camera);
+        out = new ProjectedStars(numStars);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public ProjectedStars project() {
+        projector.project(catalog, params, out);
+        return out;
+    }
+}
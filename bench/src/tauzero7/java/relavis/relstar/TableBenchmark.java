@@ -0,0 +1,90 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Decoding the lookup tables that are uploaded as textures, and sampling
+ * them on the CPU.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TableBenchmark {
+    private TextureTable psiTemp;
+    private TextureTable sigma;
+    private ColorTable   colors;
+    private float[]      rgb = new float[3];
+    private float        s = 0.0f;
+
+    @Setup
+    public void setup() throws IOException {
+        psiTemp = new TextureTable(Defs.BIN_NAME_PSITEMP);
+        sigma = new TextureTable(Defs.BIN_NAME_SIGMA);
+        colors = new ColorTable(psiTemp, sigma, (float) Defs.DEF_GAMMA,
+                ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public TextureTable readPsiTemp() throws IOException {
+        return new TextureTable(Defs.BIN_NAME_PSITEMP);
+    }
+
+    @Benchmark
+    public TextureTable readSigma() throws IOException {
+        return new TextureTable(Defs.BIN_NAME_SIGMA);
+    }
+
+    @Benchmark
+    public ColorTable buildColorTable() {
+        return new ColorTable(psiTemp, sigma, (float) Defs.DEF_GAMMA,
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Bilinear lookup of one channel, three of them per fragment before
+     * the color table.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public float sampleSigma() {
+        s += 0.001f;
+        if (s > 0.5f) {
+            s = 0.0f;
+        }
+        return sigma.sample(s, 0.6f, 1);
+    }
+
+    /**
+     * Bilinear lookup of the color table as done per fragment by the
+     * software rasterizer.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public float[] sampleColor() {
+        s += 0.001f;
+        if (s > 0.5f) {
+            s = 0.0f;
+        }
+        colors.sample(s, 0.6f, rgb);
+        return rgb;
+    }
+}
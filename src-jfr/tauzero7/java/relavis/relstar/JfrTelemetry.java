@@ -0,0 +1,260 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Telemetry as Java Flight Recorder events.
+ * 
+ * Every event is only filled and committed if it is enabled in the running
+ * recordings, so the disabled events cost an allocation that the JIT
+ * usually removes. Frame events are the only ones per frame; they carry no
+ * stack trace. Events of a phase begin at its start and are committed at
+ * its end, so their start time and duration are those of the phase.
+ */
+public class JfrTelemetry extends Telemetry {
+
+    @Name("tauzero7.relstar.CatalogLoad")
+    @Label("Catalog Load")
+    @Category({ "JRelStarFlight", "Assets" })
+    static class CatalogLoad extends Event {
+        @Label("File")
+        String   filename;
+
+        @Label("File Size")
+        @DataAmount(DataAmount.BYTES)
+        long     bytes;
+
+        @Label("Rows Kept")
+        long     rowsKept;
+
+        @Label("Rows Rejected")
+        @Description("Rows without valid temperature")
+        long     rowsRejected;
+    }
+
+    @Name("tauzero7.relstar.TableDecode")
+    @Label("Texture Table Decode")
+    @Category({ "JRelStarFlight", "Assets" })
+    static class TableDecode extends Event {
+        @Label("File")
+        String   filename;
+
+        @Label("Width")
+        int      width;
+
+        @Label("Height")
+        int      height;
+
+        @Label("Components")
+        int      num;
+
+        @Label("Data Size")
+        @DataAmount(DataAmount.BYTES)
+        long     bytes;
+    }
+
+    @Name("tauzero7.relstar.ShaderCompile")
+    @Label("Shader Compile")
+    @Category({ "JRelStarFlight", "Rendering" })
+    static class ShaderCompile extends Event {
+        @Label("Stage")
+        String   stage;
+
+        @Label("Success")
+        boolean  ok;
+    }
+
+    @Name("tauzero7.relstar.ShaderLink")
+    @Label("Shader Link")
+    @Category({ "JRelStarFlight", "Rendering" })
+    static class ShaderLink extends Event {
+        @Label("Success")
+        boolean  ok;
+
+        @Label("Active Uniforms")
+        int      uniforms;
+    }
+
+    @Name("tauzero7.relstar.Frame")
+    @Label("Frame")
+    @Category({ "JRelStarFlight", "Rendering" })
+    @Description("Rendering of a frame, including the buffer swap")
+    @StackTrace(false)
+    static class Frame extends Event {
+        @Label("Stars Drawn")
+        long     starsDrawn;
+
+        @Label("Stars Culled")
+        long     starsCulled;
+
+        @Label("Uniform Calls")
+        int      uniformCalls;
+    }
+
+    @Name("tauzero7.relstar.FlightChange")
+    @Label("Flight State Change")
+    @Category({ "JRelStarFlight", "Flight" })
+    @StackTrace(false)
+    static class FlightChange extends Event {
+        @Label("Change")
+        String   change;
+
+        @Label("Velocity")
+        double   beta;
+
+        @Label("Distance to Origin")
+        double   position;
+
+        @Label("Spacetime")
+        @Description("Minkowski=0, Warp=1")
+        int      spacetime;
+
+        @Label("Camera")
+        @Description("4pi=0, Pinhole=1")
+        int      camera;
+    }
+
+    /**
+     * Span of an enabled event, begun at the start of the phase.
+     */
+    private static class EventSpan extends Span {
+        final Event event;
+
+        EventSpan(Event event) {
+            this.event = event;
+        }
+    }
+
+    private static Span begin(Event e) {
+        if (!e.isEnabled()) {
+            return Span.NONE;
+        }
+        e.begin();
+        return new EventSpan(e);
+    }
+
+    /**
+     * Event of a span, or null if the event is disabled.
+     */
+    private static Event event(Span span) {
+        return span instanceof EventSpan ? ((EventSpan) span).event : null;
+    }
+
+    @Override
+    public String getName() {
+        return "jfr";
+    }
+
+    @Override
+    public Span startCatalogLoad() {
+        return begin(new CatalogLoad());
+    }
+
+    @Override
+    public void catalogLoaded(Span span, String filename, long bytes,
+            long rowsKept, long rowsRejected) {
+        CatalogLoad e = (CatalogLoad) event(span);
+        if (e != null) {
+            e.filename = filename;
+            e.bytes = bytes;
+            e.rowsKept = rowsKept;
+            e.rowsRejected = rowsRejected;
+            e.commit();
+        }
+    }
+
+    @Override
+    public Span startTableDecode() {
+        return begin(new TableDecode());
+    }
+
+    @Override
+    public void tableDecoded(Span span, String filename, int width,
+            int height, int num, long bytes) {
+        TableDecode e = (TableDecode) event(span);
+        if (e != null) {
+            e.filename = filename;
+            e.width = width;
+            e.height = height;
+            e.num = num;
+            e.bytes = bytes;
+            e.commit();
+        }
+    }
+
+    @Override
+    public Span startShaderCompile() {
+        return begin(new ShaderCompile());
+    }
+
+    @Override
+    public void shaderCompiled(Span span, String stage, boolean ok) {
+        ShaderCompile e = (ShaderCompile) event(span);
+        if (e != null) {
+            e.stage = stage;
+            e.ok = ok;
+            e.commit();
+        }
+    }
+
+    @Override
+    public Span startShaderLink() {
+        return begin(new ShaderLink());
+    }
+
+    @Override
+    public void shaderLinked(Span span, boolean ok, int uniforms) {
+        ShaderLink e = (ShaderLink) event(span);
+        if (e != null) {
+            e.ok = ok;
+            e.uniforms = uniforms;
+            e.commit();
+        }
+    }
+
+    @Override
+    public Span startFrame() {
+        return begin(new Frame());
+    }
+
+    @Override
+    public void frameRendered(Span span, long starsDrawn, long starsCulled,
+            int uniformCalls) {
+        Frame e = (Frame) event(span);
+        if (e != null) {
+            e.starsDrawn = starsDrawn;
+            e.starsCulled = starsCulled;
+            e.uniformCalls = uniformCalls;
+            e.commit();
+        }
+    }
+
+    @Override
+    public void flightChanged(String change, double beta, double position,
+            int spacetime, int camera) {
+        FlightChange e = new FlightChange();
+        if (e.isEnabled()) {
+            e.change = change;
+            e.beta = beta;
+            e.position = position;
+            e.spacetime = spacetime;
+            e.camera = camera;
+            e.commit();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.nio.FloatBuffer;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD version of StarProjector.projectRange using the Java Vector API.
+ * 
+ * Stars are processed in blocks: the catalog columns of a block are copied
+ * into arrays, then the direction to the star, the aberration and the
+ * camera projection are evaluated with the preferred vector species. The
+ * warp table lookups are gathers, they are done per star between the
+ * vector passes. Remaining stars that do not fill a vector are handled by
+ * the scalar kernel.
+ * 
+ * Results are not bit-identical to the scalar kernel: the scalar kernel
+ * evaluates the transcendental functions in double precision and rounds
+ * to float, while the lanewise operations are single precision and may
+ * differ by a few ulp (also between interpreted and compiled code).
+ * Arithmetic is done in the same order and without fused multiply-add.
+ * For the whole catalog at 1920x1080 and beta up to 0.99, on-screen
+ * window coordinates differ by less than TOLERANCE_PIXEL, and logTemp and
+ * appMag by less than TOLERANCE_VALUE. Exceptions are the right ascension
+ * of stars at the poles of the fullsky camera, and stars at the edge of
+ * the pinhole camera hemisphere, where the projection is ill-conditioned.
+ * Visibility can only differ for stars whose apparent magnitude is within
+ * TOLERANCE_VALUE of MAX_APPMAG.
+ */
+public class VectorProjectionKernel extends ProjectionKernel {
+    public static final float TOLERANCE_PIXEL = 1e-2f;
+    public static final float TOLERANCE_VALUE = 1e-5f;
+
+    private static final VectorSpecies<Float> SPECIES =
+            FloatVector.SPECIES_PREFERRED;
+    private static final int   BLOCK          = 512;
+
+    private static final float edlg10         = 0.434294482f;
+    private static final float invPI          = 0.31830989f;
+    private static final float invTwoPI       = 0.15915494f;
+
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * Per-thread block buffers.
+     */
+    private static class Scratch {
+        final float[]   plx       = new float[BLOCK];
+        final float[]   ra        = new float[BLOCK];
+        final float[]   dec       = new float[BLOCK];
+        final float[]   absMag    = new float[BLOCK];
+        final float[]   temp      = new float[BLOCK];
+        final float[]   nx        = new float[BLOCK];
+        final float[]   ny        = new float[BLOCK];
+        final float[]   nz        = new float[BLOCK];
+        final float[]   omega     = new float[BLOCK];
+        final float[]   oneOverMu = new float[BLOCK];
+        final boolean[] valid     = new boolean[BLOCK];
+        final float[]   rd        = new float[2];
+    }
+
+    @Override
+    public String getName() {
+        return "vector" + SPECIES.length();
+    }
+
+    @Override
+    public void project(StarCatalog catalog, int from, int to,
+            ProjectionParams p, TextureTable warp, ProjectedStars out) {
+        if (p.camera > 1) {
+            // fisheye and cube faces are offline cameras
+            StarProjector.projectRange(catalog, from, to, p, warp, out);
+            return;
+        }
+        int lanes = SPECIES.length();
+        int end = from + (to - from) / lanes * lanes;
+
+        Scratch sc = scratch.get();
+        FloatBuffer plx = catalog.getParallaxColumn();
+        FloatBuffer ra = catalog.getRaColumn();
+        FloatBuffer dec = catalog.getDecColumn();
+        FloatBuffer absMag = catalog.getAbsMagColumn();
+        FloatBuffer temp = catalog.getTempColumn();
+
+        for (int b = from; b < end; b += BLOCK) {
+            int n = Math.min(BLOCK, end - b);
+            plx.get(b, sc.plx, 0, n);
+            ra.get(b, sc.ra, 0, n);
+            dec.get(b, sc.dec, 0, n);
+            absMag.get(b, sc.absMag, 0, n);
+            temp.get(b, sc.temp, 0, n);
+
+            directions(sc, n, p);
+            if (p.spacetime == 0) {
+                aberration(sc, n, p);
+            } else {
+                warpDistortion(sc, n, p, warp);
+            }
+            camera(sc, b, n, p, out);
+        }
+        if (end < to) {
+            StarProjector.projectRange(catalog, end, to, p, warp, out);
+        }
+    }
+
+    /**
+     * Direction from the observer to the stars.
+     */
+    private static void directions(Scratch sc, int n, ProjectionParams p) {
+        final float[] m = p.rotmat;
+        final FloatVector currPos = FloatVector.broadcast(SPECIES,
+                (float) p.currPos);
+
+        for (int j = 0; j < n; j += SPECIES.length()) {
+            FloatVector psc = FloatVector.broadcast(SPECIES, 1000.0f).div(
+                    FloatVector.fromArray(SPECIES, sc.plx, j));
+            FloatVector ra = FloatVector.fromArray(SPECIES, sc.ra, j);
+            FloatVector dec = FloatVector.fromArray(SPECIES, sc.dec, j);
+
+            // rotation of global coordinate system
+            FloatVector s = psc.mul(3.26f);
+            FloatVector scd = s.mul(dec.lanewise(VectorOperators.COS));
+            FloatVector sx = scd.mul(ra.lanewise(VectorOperators.COS));
+            FloatVector sy = scd.mul(ra.lanewise(VectorOperators.SIN));
+            FloatVector sz = s.mul(dec.lanewise(VectorOperators.SIN));
+            FloatVector rx = sx.mul(m[0]).add(sy.mul(m[4])).add(sz.mul(m[8]));
+            FloatVector ry = sx.mul(m[1]).add(sy.mul(m[5])).add(sz.mul(m[9]));
+            FloatVector rz = sx.mul(m[2]).add(sy.mul(m[6]))
+                    .add(sz.mul(m[10]));
+
+            // relative position between star and observer
+            FloatVector lx = rx.sub(currPos);
+            FloatVector len = lx.mul(lx).add(ry.mul(ry)).add(rz.mul(rz))
+                    .sqrt();
+            lx.div(len).intoArray(sc.nx, j);
+            ry.div(len).intoArray(sc.ny, j);
+            rz.div(len).intoArray(sc.nz, j);
+        }
+    }
+
+    /**
+     * Aberration and Doppler factor in Minkowski spacetime.
+     */
+    private static void aberration(Scratch sc, int n, ProjectionParams p) {
+        final float[] t = p.tetrad;
+        final FloatVector one = FloatVector.broadcast(SPECIES, 1.0f);
+        final FloatVector zero = FloatVector.zero(SPECIES);
+
+        for (int j = 0; j < n; j += SPECIES.length()) {
+            FloatVector nx = FloatVector.fromArray(SPECIES, sc.nx, j);
+            FloatVector ny = FloatVector.fromArray(SPECIES, sc.ny, j);
+            FloatVector nz = FloatVector.fromArray(SPECIES, sc.nz, j);
+
+            // light vector k = (1,-n) in observer system
+            FloatVector k0 = FloatVector.broadcast(SPECIES, t[0])
+                    .sub(nx.mul(t[4])).sub(ny.mul(t[8])).sub(nz.mul(t[12]));
+            FloatVector k1 = FloatVector.broadcast(SPECIES, t[1])
+                    .sub(nx.mul(t[5])).sub(ny.mul(t[9])).sub(nz.mul(t[13]));
+            FloatVector k2 = FloatVector.broadcast(SPECIES, t[2])
+                    .sub(nx.mul(t[6])).sub(ny.mul(t[10]))
+                    .sub(nz.mul(t[14]));
+            FloatVector k3 = FloatVector.broadcast(SPECIES, t[3])
+                    .sub(nx.mul(t[7])).sub(ny.mul(t[11]))
+                    .sub(nz.mul(t[15]));
+            k0.abs().intoArray(sc.omega, j);
+
+            FloatVector kl = k1.mul(k1).add(k2.mul(k2)).add(k3.mul(k3))
+                    .sqrt();
+            FloatVector dx = k1.neg().div(kl);
+            FloatVector dy = k2.neg().div(kl);
+            FloatVector dz = k3.neg().div(kl);
+
+            // see StarProjector.calcRaDec
+            FloatVector l = dy.mul(dy).add(dz.mul(dz)).sqrt();
+            VectorMask<Float> inPlane = l.compare(VectorOperators.GT, 0.0f);
+            FloatVector eyy = one.blend(dy.div(l), inPlane);
+            FloatVector eyz = zero.blend(dz.div(l), inPlane);
+
+            FloatVector phi = dx.lanewise(VectorOperators.ACOS);
+            FloatVector x = phi.lanewise(VectorOperators.COS);
+            FloatVector s = phi.lanewise(VectorOperators.SIN);
+            FloatVector y = s.mul(eyy);
+            FloatVector z = s.mul(eyz);
+
+            z.lanewise(VectorOperators.ATAN2, x.mul(x).add(y.mul(y)).sqrt())
+                    .intoArray(sc.dec, j);
+            y.lanewise(VectorOperators.ATAN2, x).intoArray(sc.ra, j);
+        }
+        for (int j = 0; j < n; j++) {
+            sc.oneOverMu[j] = 1.0f;
+            sc.valid[j] = true;
+        }
+    }
+
+    /**
+     * Warp distortion, per star because of the table lookups.
+     */
+    private static void warpDistortion(Scratch sc, int n, ProjectionParams p,
+            TextureTable warp) {
+        final float beta = p.shaderBeta() + 0.01f;
+        for (int j = 0; j < n; j++) {
+            float phi = (float) Math.acos(sc.nx[j]) * invPI;
+            float xi = warp.sample(phi, beta, 0);
+            sc.omega[j] = 1.0f / warp.sample(phi, beta, 1);
+            sc.oneOverMu[j] = 1.0f / warp.sample(phi, beta, 2);
+            sc.valid[j] = !(xi < 0.0f);
+            if (sc.valid[j]) {
+                StarProjector.calcRaDec(sc.nx[j], sc.ny[j], sc.nz[j], xi,
+                        sc.rd);
+                sc.ra[j] = sc.rd[0];
+                sc.dec[j] = sc.rd[1];
+            }
+        }
+    }
+
+    /**
+     * Camera projection, temperature and magnitude.
+     */
+    private static void camera(Scratch sc, int b, int n, ProjectionParams p,
+            ProjectedStars out) {
+        final float wx = p.width;
+        final float wy = p.height;
+        final float d = wy * 0.5f / (float) Math.tan(p.fovYh());
+        final FloatVector zero = FloatVector.zero(SPECIES);
+        final FloatVector half = FloatVector.broadcast(SPECIES, 0.5f);
+        final float maxAppMag = (float) Defs.MAX_APPMAG;
+
+        for (int j = 0; j < n; j += SPECIES.length()) {
+            FloatVector ra = FloatVector.fromArray(SPECIES, sc.ra, j);
+            FloatVector dec = FloatVector.fromArray(SPECIES, sc.dec, j);
+            VectorMask<Float> valid = VectorMask.fromArray(SPECIES, sc.valid,
+                    j);
+
+            if (p.camera == 0) {
+                half.sub(ra.mul(invTwoPI)).mul(wx).intoArray(out.x, b + j);
+                half.add(dec.mul(invPI)).mul(wy).intoArray(out.y, b + j);
+            } else {
+                FloatVector cdec = dec.lanewise(VectorOperators.COS);
+                FloatVector vx = cdec.mul(ra.lanewise(VectorOperators.COS));
+                FloatVector vy = cdec.mul(ra.lanewise(VectorOperators.SIN));
+                FloatVector vz = dec.lanewise(VectorOperators.SIN);
+                VectorMask<Float> front = vx.compare(VectorOperators.GT,
+                        0.0f);
+                zero.blend(FloatVector.broadcast(SPECIES, wx * 0.5f).sub(
+                        vy.mul(d).div(vx)), front).intoArray(out.x, b + j);
+                zero.blend(FloatVector.broadcast(SPECIES, wy * 0.5f).add(
+                        vz.mul(d).div(vx)), front).intoArray(out.y, b + j);
+                valid = valid.and(front);
+            }
+
+            FloatVector psc = FloatVector.broadcast(SPECIES, 1000.0f).div(
+                    FloatVector.fromArray(SPECIES, sc.plx, j));
+            FloatVector omega = FloatVector.fromArray(SPECIES, sc.omega, j);
+            FloatVector logTemp = FloatVector.fromArray(SPECIES, sc.temp, j)
+                    .mul(omega).lanewise(VectorOperators.LOG).mul(edlg10);
+            FloatVector appMag = FloatVector.fromArray(SPECIES, sc.absMag, j)
+                    .add(10.0f).sub(psc.lanewise(VectorOperators.LOG)
+                            .mul(5.0f).mul(edlg10));
+            logTemp.intoArray(out.logTemp, b + j);
+            appMag.intoArray(out.appMag, b + j);
+            FloatVector.fromArray(SPECIES, sc.oneOverMu, j).intoArray(
+                    out.oneOverMu, b + j);
+
+            appMag.compare(VectorOperators.GT, maxAppMag).not()
+                    .and(valid)
+                    .intoArray(out.visible, b + j);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous loading of star catalog and texture tables.
+ * 
+ * File parsing does not need the OpenGL context, so it is started on
+ * background threads as soon as the application starts. The GL thread
+ * only waits for the results and uploads them.
+ * 
+ * The warp table can take minutes to compute on the first start, so it is
+ * only loaded when it is requested, on a thread of its own.
+ */
+public class AssetLoader {
+    private final StartupTimeline     timeline;
+    private final ExecutorService     executor;
+
+    private Future<ChunkedCatalog>    catalog  = null;
+    private Future<TextureTable>      psiTemp  = null;
+    private Future<TextureTable>      sigma    = null;
+    private FutureTask<TextureTable>  warp     = null;
+
+    /**
+     * Asset loader.
+     * 
+     * @param timeline
+     *            : startup timeline.
+     */
+    public AssetLoader(StartupTimeline timeline) {
+        this.timeline = timeline;
+
+        final AtomicInteger count = new AtomicInteger();
+        int numThreads = Math.max(1,
+                Math.min(4, Runtime.getRuntime().availableProcessors()));
+        executor = Executors.newFixedThreadPool(numThreads,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "asset-loader-"
+                                + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    public StartupTimeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * Start loading all assets.
+     */
+    public void start() {
+        catalog = executor.submit(new Callable<ChunkedCatalog>() {
+            @Override
+            public ChunkedCatalog call() throws Exception {
+                StartupTimeline.Stage stage = timeline.begin("load catalog");
+                ChunkedCatalog cat = ChunkedCatalog.load();
+                stage.end();
+                return cat;
+            }
+        });
+        psiTemp = submitTable("psitemp", new Callable<TextureTable>() {
+            @Override
+            public TextureTable call() throws IOException {
+                return SpectralTables.loadPsiTemp();
+            }
+        });
+        sigma = submitTable("sigma", new Callable<TextureTable>() {
+            @Override
+            public TextureTable call() throws IOException {
+                return SpectralTables.loadSigma();
+            }
+        });
+    }
+
+    /**
+     * Start loading the warp table in the background, unless it is already
+     * loading.
+     * 
+     * @param loaded
+     *            : called on the loader thread when the table is loaded, or
+     *            null.
+     */
+    public synchronized void requestWarpTable(final Runnable loaded) {
+        if (warp != null) {
+            return;
+        }
+        warp = new FutureTask<TextureTable>(new Callable<TextureTable>() {
+            @Override
+            public TextureTable call() throws Exception {
+                StartupTimeline.Stage stage = timeline.begin("load warp");
+                TextureTable table = WarpTable.load();
+                stage.end();
+                return table;
+            }
+        }) {
+            @Override
+            protected void done() {
+                if (loaded != null) {
+                    loaded.run();
+                }
+            }
+        };
+        Thread t = new Thread(warp, "asset-loader-warp");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Check whether the warp table is loaded, without waiting for it.
+     * 
+     * @return true if getWarpTable() returns immediately.
+     */
+    public synchronized boolean isWarpTableLoaded() {
+        return warp != null && warp.isDone();
+    }
+
+    public ChunkedCatalog getCatalog() {
+        return await("catalog", catalog);
+    }
+
+    public TextureTable getPsiTempTable() {
+        return await("psitemp", psiTemp);
+    }
+
+    public TextureTable getSigmaTable() {
+        return await("sigma", sigma);
+    }
+
+    /**
+     * Wait for the warp table, requestWarpTable() must have been called.
+     * 
+     * @return warp distortion table.
+     */
+    public TextureTable getWarpTable() {
+        FutureTask<TextureTable> table;
+        synchronized (this) {
+            table = warp;
+        }
+        return await("warp", table);
+    }
+
+    /**
+     * Stop loader threads. Assets that are already loaded stay available,
+     * and the warp table can still be requested.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Load or compute a table on the executor.
+     * 
+     * @param name
+     *            : name of the startup stage.
+     * @param load
+     *            : loads the table, or computes it if it is not available
+     *            for the current resolution.
+     */
+    private Future<TextureTable> submitTable(final String name,
+            final Callable<TextureTable> load) {
+        return executor.submit(new Callable<TextureTable>() {
+            @Override
+            public TextureTable call() throws Exception {
+                StartupTimeline.Stage stage = timeline.begin("load " + name);
+                TextureTable table = load.call();
+                stage.end();
+                return table;
+            }
+        });
+    }
+
+    static String baseName(String filename) {
+        return filename.substring(filename.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Wait for asset.
+     * 
+     * @param name
+     *            : name of asset.
+     * @param future
+     *            : future of asset.
+     * @return asset.
+     */
+    private <T> T await(String name, Future<T> future) {
+        if (future == null) {
+            throw new IllegalStateException("asset loader not started");
+        }
+        StartupTimeline.Stage stage = timeline.begin("wait " + name);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted while loading " + name);
+            System.exit(1);
+        } catch (ExecutionException e) {
+            System.err.println("Cannot load " + name + ": "
+                    + e.getCause().getMessage());
+            System.exit(1);
+        } finally {
+            stage.end();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.util.Arrays;
+
+/**
+ * Brightness order of a star catalog.
+ * 
+ * The shader hides a star (point size zero) if its apparent magnitude
+ * exceeds Defs.MAX_APPMAG. This magnitude only depends on the absolute
+ * magnitude and the distance to the origin of the catalog; the Doppler
+ * factor and the aberration change the colour and the position of a star,
+ * the warp lensing factor scales the sprite, but none of them enters the
+ * magnitude limit. The brightening bound is therefore zero for all
+ * velocities, positions and spacetimes, and in a catalog sorted by apparent
+ * magnitude the stars that can be visible form a prefix. Renderers only
+ * submit this prefix. Stars with undefined magnitude (non-positive
+ * parallax) pass the shader test and are sorted to the front.
+ */
+public class BrightnessIndex {
+    /**
+     * Extra magnitudes in the prefix, so that stars at the limit are kept
+     * even if the shader rounds differently.
+     */
+    public static final float  MARGIN = 1e-3f;
+
+    private static final float edlg10 = 0.434294482f;
+
+    private BrightnessIndex() {
+    }
+
+    /**
+     * Apparent magnitude as computed by the vertex shader.
+     * 
+     * @param catalog
+     *            : star catalog.
+     * @param i
+     *            : star index.
+     * @return apparent magnitude.
+     */
+    public static float appMag(StarCatalog catalog, int i) {
+        float psc = 1000.0f / catalog.parallax(i);
+        return catalog.absMag(i) + 10.0f - 5.0f * (float) Math.log(psc)
+                * edlg10;
+    }
+
+    /**
+     * Order-preserving integer key of an apparent magnitude, NaN sorts
+     * like negative infinity.
+     */
+    private static int key(float appMag) {
+        if (Float.isNaN(appMag)) {
+            appMag = Float.NEGATIVE_INFINITY;
+        }
+        int bits = Float.floatToIntBits(appMag);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
+    /**
+     * Check whether the stars are sorted by apparent magnitude.
+     * 
+     * @param catalog
+     *            : star catalog.
+     * @return true if the brightest star comes first.
+     */
+    public static boolean isSorted(StarCatalog catalog) {
+        int n = catalog.getNumStars();
+        int prev = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            int k = key(appMag(catalog, i));
+            if (k < prev) {
+                return false;
+            }
+            prev = k;
+        }
+        return true;
+    }
+
+    /**
+     * Check whether a block of stars is sorted and continues the order of
+     * the stars before it.
+     * 
+     * @param block
+     *            : star catalog.
+     * @param prevAppMag
+     *            : apparent magnitude of the star before the block.
+     * @return true if the brightness order continues.
+     */
+    static boolean continuesOrder(StarCatalog block, float prevAppMag) {
+        return block.getNumStars() == 0
+                || (key(appMag(block, 0)) >= key(prevAppMag)
+                        && isSorted(block));
+    }
+
+    /**
+     * Sort stars by apparent magnitude, brightest first. Stars of equal
+     * magnitude keep their order.
+     * 
+     * @param catalog
+     *            : star catalog.
+     * @return sorted copy without vertex column.
+     */
+    public static StarCatalog sort(StarCatalog catalog) {
+        int n = catalog.getNumStars();
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = ((long) key(appMag(catalog, i)) << 32) | i;
+        }
+        Arrays.parallelSort(keys);
+
+        StarCatalog sorted = StarCatalog.allocate(n);
+        for (int k = 0; k < n; k++) {
+            int i = (int) keys[k];
+            sorted.set(k, catalog.hipID(i), catalog.parallax(i),
+                    catalog.ra(i), catalog.dec(i), catalog.absMag(i),
+                    catalog.temp(i));
+        }
+        return sorted;
+    }
+
+    /**
+     * Count stars that can pass the magnitude limit.
+     * 
+     * @param sorted
+     *            : star catalog sorted by apparent magnitude.
+     * @param maxAppMag
+     *            : magnitude limit, e.g. Defs.MAX_APPMAG.
+     * @return length of the prefix with apparent magnitudes up to the
+     *         limit plus MARGIN.
+     */
+    public static int count(StarCatalog sorted, double maxAppMag) {
+        float limit = (float) maxAppMag + MARGIN;
+        int lo = 0;
+        int hi = sorted.getNumStars();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (appMag(sorted, mid) > limit) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL calls of StarBuffers.
+ * 
+ * Vertex pointers are offsets into the bound buffer object; there is no
+ * call that points a vertex array to client memory. GL2BufferGL forwards to
+ * a real context, a recording stand-in checks the call sequence without a
+ * graphics board.
+ */
+public interface BufferGL {
+    boolean isFunctionAvailable(String name);
+
+    void glGenBuffers(int n, int[] buffers, int offset);
+
+    void glBindBuffer(int target, int buffer);
+
+    void glBufferData(int target, long size, Buffer data, int usage);
+
+    void glBufferSubData(int target, long offset, long size, Buffer data);
+
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+
+    void glGenVertexArrays(int n, int[] arrays, int offset);
+
+    void glBindVertexArray(int array);
+
+    void glDeleteVertexArrays(int n, int[] arrays, int offset);
+
+    void glVertexPointer(int size, int type, int stride, long offset);
+
+    void glEnableClientState(int array);
+
+    void glDisableClientState(int array);
+
+    void glVertexAttribPointer(int index, int size, int type,
+            boolean normalized, int stride, long offset);
+
+    void glEnableVertexAttribArray(int index);
+
+    void glDisableVertexAttribArray(int index);
+
+    void glDrawArrays(int mode, int first, int count);
+
+    void glMultiDrawArrays(int mode, int[] first, int firstOffset,
+            int[] count, int countOffset, int drawCount);
+}
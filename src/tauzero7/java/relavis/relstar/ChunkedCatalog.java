@@ -0,0 +1,275 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Star catalog split into chunks of a fixed number of stars.
+ * 
+ * A chunked catalog is either a catalog in memory, whose chunks are
+ * slices, or a packed catalog file, whose chunks are mapped one at a time
+ * when they are requested. Renderers process the chunks independently, so
+ * with a file the memory needed does not depend on the catalog size.
+ * Mapped chunks are released by the garbage collector; until then their
+ * pages are clean file pages that the operating system can drop.
+ * 
+ * If the stars are sorted by brightness, brightest() returns the prefix of
+ * the catalog that can pass the magnitude limit of the shader, and stars
+ * behind it are neither transformed nor read.
+ */
+public class ChunkedCatalog {
+    private final StarCatalog     catalog;
+    private final StarCatalogFile file;
+    private final long            numRows;
+    private final int             chunkSize;
+    private final int             numChunks;
+    private final boolean         ordered;
+
+    private ChunkedCatalog        bright      = null;
+    private double                brightLimit = Double.NaN;
+    private SkyIndex[]            skyIndex    = null;
+
+    /**
+     * Chunked view of a catalog in memory.
+     * 
+     * @param catalog
+     *            : star catalog.
+     * @param chunkSize
+     *            : number of stars per chunk.
+     */
+    public ChunkedCatalog(StarCatalog catalog, int chunkSize) {
+        this(catalog, null, catalog.getNumStars(), chunkSize,
+                BrightnessIndex.isSorted(catalog));
+    }
+
+    /**
+     * Chunked packed catalog file.
+     * 
+     * @param file
+     *            : packed catalog file.
+     * @param chunkSize
+     *            : number of stars per chunk.
+     */
+    public ChunkedCatalog(StarCatalogFile file, int chunkSize) {
+        this(null, file, file.getNumRows(), chunkSize, file
+                .isBrightnessOrdered());
+    }
+
+    private ChunkedCatalog(StarCatalog catalog, StarCatalogFile file,
+            long numRows, int chunkSize, boolean ordered) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size " + chunkSize);
+        }
+        this.catalog = catalog;
+        this.file = file;
+        this.numRows = numRows;
+        this.chunkSize = chunkSize;
+        this.ordered = ordered;
+        long n = (numRows + chunkSize - 1) / chunkSize;
+        if (n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(numRows + " rows need too "
+                    + "many chunks of " + chunkSize);
+        }
+        this.numChunks = (int) n;
+    }
+
+    public long getNumRows() {
+        return numRows;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getNumChunks() {
+        return numChunks;
+    }
+
+    /**
+     * Check whether the stars are sorted by apparent magnitude.
+     * 
+     * @return true if the brightest star comes first.
+     */
+    public boolean isBrightnessOrdered() {
+        return ordered;
+    }
+
+    /**
+     * Check whether all stars are in memory.
+     * 
+     * @return true if the chunks are slices of a catalog in memory.
+     */
+    public boolean isInCore() {
+        return catalog != null;
+    }
+
+    /**
+     * Get catalog in memory.
+     * 
+     * @return star catalog, or null if the chunks are read from a file.
+     */
+    public StarCatalog getCatalog() {
+        if (catalog != null && numRows < catalog.getNumStars()) {
+            return catalog.slice(0, (int) numRows);
+        }
+        return catalog;
+    }
+
+    /**
+     * Get index of the first star of a chunk.
+     * 
+     * @param k
+     *            : chunk index.
+     * @return row of first star.
+     */
+    public long getChunkStart(int k) {
+        return (long) k * chunkSize;
+    }
+
+    /**
+     * Get number of stars of a chunk.
+     * 
+     * @param k
+     *            : chunk index.
+     * @return number of stars, only the last chunk may be smaller than the
+     *         chunk size.
+     */
+    public int getChunkLength(int k) {
+        return (int) Math.min(chunkSize, numRows - getChunkStart(k));
+    }
+
+    /**
+     * Get stars of a chunk.
+     * 
+     * @param k
+     *            : chunk index.
+     * @return catalog view of the chunk.
+     * @throws IOException
+     *             if the chunk cannot be read from the file.
+     */
+    public StarCatalog getChunk(int k) throws IOException {
+        if (k < 0 || k >= numChunks) {
+            throw new IndexOutOfBoundsException("chunk " + k + " of "
+                    + numChunks);
+        }
+        if (catalog != null) {
+            return catalog.slice((int) getChunkStart(k), getChunkLength(k));
+        }
+        return file.readChunk(getChunkStart(k), getChunkLength(k));
+    }
+
+    /**
+     * Get the stars that can pass a magnitude limit.
+     * 
+     * @param maxAppMag
+     *            : magnitude limit, e.g. Defs.MAX_APPMAG.
+     * @return chunked view of the brightest stars, with the same chunks
+     *         as this catalog, or this catalog if it is not sorted.
+     * @throws IOException
+     *             if a chunk cannot be read from the file.
+     */
+    public synchronized ChunkedCatalog brightest(double maxAppMag)
+            throws IOException {
+        if (!ordered) {
+            return this;
+        }
+        if (maxAppMag == brightLimit) {
+            return bright;
+        }
+        long n;
+        if (catalog != null) {
+            n = BrightnessIndex.count(catalog, maxAppMag);
+        } else {
+            // first chunk that starts with a star behind the limit
+            int lo = 0;
+            int hi = numChunks;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                StarCatalog first = file.readChunk(getChunkStart(mid), 1);
+                if (BrightnessIndex.count(first, maxAppMag) > 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            n = lo == 0 ? 0 : getChunkStart(lo - 1)
+                    + BrightnessIndex.count(getChunk(lo - 1), maxAppMag);
+        }
+        bright = new ChunkedCatalog(catalog, file, n, chunkSize, true);
+        brightLimit = maxAppMag;
+        return bright;
+    }
+
+    /**
+     * Get sky index of a chunk, built when it is first requested. The index
+     * holds a copy of the chunk, so it is only built for catalogs in
+     * memory.
+     * 
+     * @param k
+     *            : chunk index.
+     * @return sky index, or null if the chunks are read from a file.
+     */
+    public synchronized SkyIndex getSkyIndex(int k) {
+        if (catalog == null) {
+            return null;
+        }
+        if (skyIndex == null) {
+            skyIndex = new SkyIndex[numChunks];
+        }
+        if (skyIndex[k] == null) {
+            skyIndex[k] = new SkyIndex(catalog.slice((int) getChunkStart(k),
+                    getChunkLength(k)));
+        }
+        return skyIndex[k];
+    }
+
+    /**
+     * Load the star catalog. Packed catalogs with more than
+     * Defs.MAX_INCORE_STARS stars are read chunk by chunk, smaller ones
+     * are loaded as with StarCatalogFile.load() and sorted by brightness
+     * if necessary.
+     * 
+     * @return chunked star catalog.
+     */
+    public static ChunkedCatalog load() {
+        if (Files.exists(Paths.get(Defs.BIN_NAME_CATALOG))) {
+            try {
+                Telemetry.Span span = Telemetry.get().startCatalogLoad();
+                StarCatalogFile file = new StarCatalogFile(
+                        Defs.BIN_NAME_CATALOG);
+                if (file.getNumRows() > Defs.MAX_INCORE_STARS) {
+                    if (!file.isBrightnessOrdered()) {
+                        System.err.println(Defs.BIN_NAME_CATALOG
+                                + " is not sorted by brightness, all "
+                                + "stars will be transformed");
+                    }
+                    ChunkedCatalog catalog = new ChunkedCatalog(file,
+                            Defs.CHUNK_SIZE);
+                    // the stars are streamed later, only the file is opened
+                    Telemetry.get().catalogLoaded(span, Defs.BIN_NAME_CATALOG,
+                            Files.size(Paths.get(Defs.BIN_NAME_CATALOG)),
+                            file.getNumRows(), 0);
+                    return catalog;
+                }
+            } catch (IOException e) {
+                System.err.println("Cannot read " + Defs.BIN_NAME_CATALOG
+                        + ": " + e.getMessage());
+            }
+        }
+        StarCatalog catalog = StarCatalogFile.load();
+        if (!BrightnessIndex.isSorted(catalog)) {
+            catalog = BrightnessIndex.sort(catalog);
+        }
+        return new ChunkedCatalog(catalog, Defs.CHUNK_SIZE);
+    }
+}
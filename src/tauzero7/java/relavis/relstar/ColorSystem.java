@@ -0,0 +1,83 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+/**
+ * Color system of the star colors: CIE primaries and white point
+ * of the XYZ to RGB conversion.
+ */
+public class ColorSystem {
+    public static final double xRed   = 0.7355;
+    public static final double yRed   = 0.2645;
+    public static final double xGreen = 0.2658;
+    public static final double yGreen = 0.7243;
+    public static final double xBlue  = 0.1669;
+    public static final double yBlue  = 0.0085;
+    public static final double xWhite = 0.33333;  // illuminant E
+    public static final double yWhite = 0.33333;
+
+    /**
+     * XYZ to RGB matrix, row-major, scaled to the white point. It is
+     * applied when the ColorTable is built.
+     */
+    public static final float[] XYZ_TO_RGB = xyzToRgbMatrix();
+
+    /**
+     * Convert XYZ to linear RGB.
+     * 
+     * @param x
+     *            : X.
+     * @param y
+     *            : Y.
+     * @param z
+     *            : Z.
+     * @param rgb
+     *            : resulting red, green and blue.
+     */
+    public static void xyzToRgb(float x, float y, float z, float[] rgb) {
+        float[] m = XYZ_TO_RGB;
+        rgb[0] = m[0] * x + m[1] * y + m[2] * z;
+        rgb[1] = m[3] * x + m[4] * y + m[5] * z;
+        rgb[2] = m[6] * x + m[7] * y + m[8] * z;
+    }
+
+    private static float[] xyzToRgbMatrix() {
+        double[] xx = { xRed, xGreen, xBlue };
+        double[] yy = { yRed, yGreen, yBlue };
+        double[] zz = new double[3];
+        for (int i = 0; i < 3; i++) {
+            zz[i] = 1.0 - xx[i] - yy[i];
+        }
+        double[] w = { xWhite, yWhite, 1.0 - xWhite - yWhite };
+
+        // xyz -> rgb matrix, before scaling to white
+        double[] rgbx = new double[3];
+        double[] rgby = new double[3];
+        double[] rgbz = new double[3];
+        for (int i = 0; i < 3; i++) {
+            int j = (i + 1) % 3;
+            int k = (i + 2) % 3;
+            rgbx[i] = yy[j] * zz[k] - yy[k] * zz[j];
+            rgby[i] = xx[k] * zz[j] - xx[j] * zz[k];
+            rgbz[i] = xx[j] * yy[k] - xx[k] * yy[j];
+        }
+
+        // white scaling factors, dividing by w.y scales white luminance to 1
+        float[] m = new float[9];
+        for (int i = 0; i < 3; i++) {
+            double rgbw = (rgbx[i] * w[0] + rgby[i] * w[1] + rgbz[i] * w[2])
+                    / w[1];
+            m[3 * i + 0] = (float) (rgbx[i] / rgbw);
+            m[3 * i + 1] = (float) (rgby[i] / rgbw);
+            m[3 * i + 2] = (float) (rgbz[i] / rgbw);
+        }
+        return m;
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Gamma-corrected RGB color of a star sprite over the distance to the
+ * sprite center and the Doppler-shifted temperature.
+ * 
+ * The fragment shader used to compute per fragment
+ * 
+ * rgb = pow(M sigma(dist,T) b / psi(T), 1/gamma),
+ * 
+ * with the XYZ to RGB matrix M of ColorSystem and the star brightness b
+ * from the apparent magnitude, s0 and the lensing factor. Since b is a
+ * positive factor, this is pow(b, 1/gamma) times the table entry
+ * pow(M sigma / psi, 1/gamma). The table is computed once per gamma on the
+ * CPU, the brightness once per star in the vertex shader, and a fragment
+ * is one lookup and one multiplication. The software rasterizer uses the
+ * same table.
+ * 
+ * The table has the resolution of the sigma table. Negative color
+ * channels, for which pow() is undefined in GLSL, are zero.
+ */
+public class ColorTable {
+    public static final float  DEF_APPMAG_FACTOR_4PI = -0.4f;
+    public static final float  DEF_APPMAG_FACTOR_PIN = -0.3f;
+    /** log10 of the lowest temperature of the table. */
+    public static final float  minTemp               = 3.0f;
+    /** Range of log10 temperature of the table. */
+    public static final float  tempRange             = 1.7f;
+
+    private final int          width;
+    private final int          height;
+    private final float        gamma;
+    private final float[]      rgb;
+
+    /**
+     * Compute color table in parallel over the temperature.
+     * 
+     * @param psiTemp
+     *            : psi temperature table.
+     * @param sigma
+     *            : sigma table.
+     * @param gamma
+     *            : gamma of the display.
+     * @param pool
+     *            : fork-join pool.
+     */
+    public ColorTable(TextureTable psiTemp, TextureTable sigma, float gamma,
+            ForkJoinPool pool) {
+        this.width = sigma.getWidth();
+        this.height = sigma.getHeight();
+        this.gamma = gamma;
+        this.rgb = new float[width * height * 3];
+        pool.invoke(new RowTask(psiTemp, sigma, 0, height));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public float getGamma() {
+        return gamma;
+    }
+
+    /**
+     * Get table data for a GL_RGB32F texture.
+     * 
+     * @return float buffer of width*height*3 values.
+     */
+    public FloatBuffer getData() {
+        return FloatBuffer.wrap(rgb);
+    }
+
+    /**
+     * Texture coordinate of a temperature.
+     * 
+     * @param logTemp
+     *            : log10 of the Doppler-shifted temperature.
+     * @return texture coordinate in [0,1).
+     */
+    public static float tempPos(float logTemp) {
+        return Math.max(0.0f, Math.min((logTemp - minTemp) / tempRange,
+                0.9999f));
+    }
+
+    /**
+     * Brightness factor of a star, computed per vertex.
+     * 
+     * @param appMag
+     *            : apparent magnitude.
+     * @param oneOverMu
+     *            : inverse lensing magnification.
+     * @param camera
+     *            : 4pi=0, Pinhole=1.
+     * @param s0
+     *            : brightness scale.
+     * @param gamma
+     *            : gamma of the display.
+     * @return factor of the table color.
+     */
+    public static float brightness(float appMag, float oneOverMu,
+            int camera, float s0, float gamma) {
+        float factor = camera == 1 ? DEF_APPMAG_FACTOR_PIN
+                : DEF_APPMAG_FACTOR_4PI;
+        double b = Math.pow(10.0, factor * appMag) * s0 / oneOverMu;
+        return (float) Math.pow(b, 1.0 / gamma);
+    }
+
+    /**
+     * Sample table with bilinear interpolation like a GL_LINEAR texture
+     * whose coordinates are clamped to the edge.
+     * 
+     * @param s
+     *            : distance to the sprite center in [0,0.5].
+     * @param t
+     *            : temperature coordinate from tempPos().
+     * @param out
+     *            : resulting red, green and blue.
+     */
+    public void sample(float s, float t, float[] out) {
+        float x = s * width - 0.5f;
+        float y = t * height - 0.5f;
+        x = Math.max(0.0f, Math.min(x, width - 1));
+        y = Math.max(0.0f, Math.min(y, height - 1));
+
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int x1 = Math.min(x0 + 1, width - 1);
+        int y1 = Math.min(y0 + 1, height - 1);
+        float fx = x - x0;
+        float fy = y - y0;
+        float w00 = (1.0f - fx) * (1.0f - fy);
+        float w10 = fx * (1.0f - fy);
+        float w01 = (1.0f - fx) * fy;
+        float w11 = fx * fy;
+
+        int i00 = (y0 * width + x0) * 3;
+        int i10 = (y0 * width + x1) * 3;
+        int i01 = (y1 * width + x0) * 3;
+        int i11 = (y1 * width + x1) * 3;
+        for (int c = 0; c < 3; c++) {
+            out[c] = rgb[i00 + c] * w00 + rgb[i10 + c] * w10 + rgb[i01 + c]
+                    * w01 + rgb[i11 + c] * w11;
+        }
+    }
+
+    /**
+     * Fork-join task for a range of table rows.
+     */
+    @SuppressWarnings("serial")
+    private class RowTask extends RecursiveAction {
+        private static final int   ROWS = 16;
+
+        private final TextureTable psiTemp;
+        private final TextureTable sigma;
+        private final int          from;
+        private final int          to;
+
+        RowTask(TextureTable psiTemp, TextureTable sigma, int from, int to) {
+            this.psiTemp = psiTemp;
+            this.sigma = sigma;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ROWS) {
+                for (int row = from; row < to; row++) {
+                    computeRow(psiTemp, sigma, row);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RowTask(psiTemp, sigma, from, mid), new RowTask(
+                    psiTemp, sigma, mid, to));
+        }
+    }
+
+    private void computeRow(TextureTable psiTemp, TextureTable sigma, int row) {
+        float psiV = psiTemp.sample((row + 0.5f) / height, 0.0f, 0);
+        float invGamma = 1.0f / gamma;
+        float[] c = new float[3];
+        for (int col = 0; col < width; col++) {
+            ColorSystem.xyzToRgb(sigma.get(col, row, 0) / psiV, sigma.get(
+                    col, row, 1) / psiV, sigma.get(col, row, 2) / psiV, c);
+            int i = (row * width + col) * 3;
+            for (int k = 0; k < 3; k++) {
+                rgb[i + k] = c[k] > 0.0f ? (float) Math.pow(c[k], invGamma)
+                        : 0.0f;
+            }
+        }
+    }
+}
@@ -14,14 +14,31 @@ public final class Defs {
     public static int    VERTEX_TEMP_ARRAY  = 11;
 
     public static double PINHOLECAM_FOVY    = 50.0;
+    public static double FISHEYE_FOV        = 180.0;
+    public static double MAX_APPMAG         = 14.0;
+    public static double POINT_SIZE         = 10.0;
+    public static double DEF_GAMMA          = 1.5;
+    public static double DEF_S0             = 5.0;
+
+    public static int    CHUNK_SIZE         = 1 << 20;
+    public static int    MAX_INCORE_STARS   = 1 << 24;
+    public static int    RESIDENT_CHUNKS    = 16;
+    public static int    TILE_MEMORY        = 1 << 20;
 
     public static double timeStep           = 0.4;
+    public static int    TICK_MILLIS        = 40;
+    public static int    MAX_CATCHUP_TICKS  = 5;
 
     public static double betaMax            = 0.99;
     public static double betaMaxWarp        = 9.0;
+    public static int    SIGMA_WIDTH        = 512;
+    public static int    TEMP_STEPS         = 512;
+    public static int    WARP_WIDTH         = 4096;
+    public static int    WARP_HEIGHT        = 248;
     public static double movStepY           = 0.003;
 
     public static String BIN_NAME_HIPPARCOS = "data/hip.bin";
+    public static String BIN_NAME_CATALOG   = "data/hip.rsc";
     public static String BIN_NAME_PSITEMP   = "data/psitemp.bin";
     public static String BIN_NAME_SIGMA     = "data/sigma.bin";
     public static String BIN_NAME_WARP      = "data/warpDistort_max9.bin";
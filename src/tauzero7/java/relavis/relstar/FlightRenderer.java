@@ -0,0 +1,351 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Offline renderer for scripted flights.
+ * 
+ * Frames pass through three stages that run in their own threads:
+ * projection, rasterization and encoding in a FrameOutput (with several
+ * encoder threads that commit the frames in order). Projection and
+ * rasterization themselves use the fork-join pool, so one frame can be
+ * projected while the previous one is rasterized and older ones are
+ * encoded. Stages are connected by bounded queues, projected stars are
+ * taken from a fixed pool, and the FrameOutput limits the frames in
+ * flight, so memory does not grow with the number of frames and the
+ * renderer waits for slow encoders. Large catalogs are projected and
+ * rasterized chunk by chunk, the chunks of a frame are accumulated in one
+ * framebuffer.
+ */
+public class FlightRenderer {
+    private static final Frame       END         = new Frame();
+
+    private final FlightScript       script;
+    private final ChunkedCatalog     catalog;
+    private final StarProjector      projector;
+    private final SoftwareRasterizer rasterizer;
+    private final int                width;
+    private final int                height;
+
+    private int                      numBuffers  = 2;
+    private int                      numEncoders = 2;
+
+    private final AtomicLong         projectTime = new AtomicLong();
+    private final AtomicLong         rasterTime  = new AtomicLong();
+
+    /**
+     * Chunk of a frame in flight through the pipeline.
+     */
+    private static class Frame {
+        int                    index;
+        int                    chunk;
+        boolean                last;
+        final ProjectionParams params = new ProjectionParams();
+        ProjectedStars         stars;
+    }
+
+    /**
+     * Flight renderer.
+     * 
+     * @param script
+     *            : flight script.
+     * @param catalog
+     *            : star catalog, rendered chunk by chunk. Only stars that
+     *            can pass the magnitude limit are projected if the catalog
+     *            is sorted by brightness.
+     * @param psiTemp
+     *            : psi temperature table.
+     * @param sigma
+     *            : sigma table.
+     * @param warp
+     *            : warp distortion table, may be null if the script does
+     *            not use the warp metric.
+     * @param width
+     *            : image width.
+     * @param height
+     *            : image height.
+     */
+    public FlightRenderer(FlightScript script, ChunkedCatalog catalog,
+            TextureTable psiTemp, TextureTable sigma, TextureTable warp,
+            int width, int height) {
+        this.script = script;
+        this.catalog = catalog;
+        this.projector = new StarProjector(ForkJoinPool.commonPool(), warp);
+        this.rasterizer = new SoftwareRasterizer(psiTemp, sigma,
+                ForkJoinPool.commonPool());
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Set number of frames that may be projected ahead of rasterization.
+     * 
+     * @param numBuffers
+     *            : number of buffers, at least 1.
+     */
+    public void setNumBuffers(int numBuffers) {
+        this.numBuffers = Math.max(1, numBuffers);
+    }
+
+    /**
+     * Set number of encoder threads.
+     * 
+     * @param numEncoders
+     *            : number of threads, at least 1.
+     */
+    public void setNumEncoders(int numEncoders) {
+        this.numEncoders = Math.max(1, numEncoders);
+    }
+
+    /**
+     * Render frames of the script.
+     * 
+     * @param first
+     *            : first frame.
+     * @param last
+     *            : last frame (inclusive).
+     * @param pattern
+     *            : file name pattern with frame number, e.g.
+     *            "out/frame_%05d.png". Images are written as PFM if the
+     *            name ends with ".pfm", as PNG otherwise. A name ending with
+     *            ".raw" or ".raw16" is a RawFrameSink file with all frames
+     *            as floats or half floats.
+     * @throws IOException
+     *             if a chunk cannot be read or an image cannot be written.
+     * @throws InterruptedException
+     *             if the rendering was interrupted.
+     */
+    public void render(int first, int last, String pattern)
+            throws IOException, InterruptedException {
+        FrameSink sink;
+        if (pattern.endsWith(".raw") || pattern.endsWith(".raw16")) {
+            sink = new RawFrameSink(pattern, width, height, first, last
+                    - first + 1, pattern.endsWith(".raw16"));
+        } else {
+            sink = new ImageFileSink(pattern);
+        }
+        try {
+            render(first, last, sink);
+        } finally {
+            sink.close();
+        }
+    }
+
+    /**
+     * Render frames of the script into a frame sink.
+     * 
+     * @param first
+     *            : first frame.
+     * @param last
+     *            : last frame (inclusive).
+     * @param sink
+     *            : frame sink.
+     * @throws IOException
+     *             if a chunk cannot be read or a frame cannot be written.
+     * @throws InterruptedException
+     *             if the rendering was interrupted.
+     */
+    public void render(final int first, final int last, FrameSink sink)
+            throws IOException, InterruptedException {
+        final BlockingQueue<ProjectedStars> freeStars =
+                new ArrayBlockingQueue<ProjectedStars>(numBuffers);
+        final BlockingQueue<Frame> projected = new ArrayBlockingQueue<Frame>(
+                numBuffers);
+        for (int i = 0; i < numBuffers; i++) {
+            freeStars.add(new ProjectedStars(catalog.getNumChunks() > 0
+                    ? catalog.getChunkLength(0) : 0));
+        }
+        final FrameOutput output = new FrameOutput(sink, width, height,
+                first, numEncoders, numBuffers + numEncoders);
+
+        final ChunkedCatalog bright = catalog.brightest(Defs.MAX_APPMAG);
+
+        ExecutorService stages = Executors.newFixedThreadPool(2);
+        CompletionService<Void> done = new ExecutorCompletionService<Void>(
+                stages);
+        final long start = System.nanoTime();
+
+        // projection
+        done.submit(new Callable<Void>() {
+            public Void call() throws InterruptedException, IOException {
+                int numChunks = Math.max(1, bright.getNumChunks());
+                SkyIndex.Ranges ranges = new SkyIndex.Ranges();
+                for (int f = first; f <= last; f++) {
+                    for (int k = 0; k < numChunks; k++) {
+                        Frame frame = new Frame();
+                        frame.index = f;
+                        frame.chunk = k;
+                        frame.last = k == numChunks - 1;
+                        frame.params.width = width;
+                        frame.params.height = height;
+                        script.getFrame(f, frame.params);
+                        frame.stars = freeStars.take();
+
+                        long t = System.nanoTime();
+                        if (k < bright.getNumChunks()) {
+                            projector.project(bright, k, frame.params,
+                                    frame.stars, ranges);
+                        } else {
+                            frame.stars.setCount(0);
+                        }
+                        projectTime.addAndGet(System.nanoTime() - t);
+                        projected.put(frame);
+                    }
+                }
+                projected.put(END);
+                return null;
+            }
+        });
+
+        // rasterization
+        done.submit(new Callable<Void>() {
+            public Void call() throws InterruptedException, IOException {
+                Frame frame;
+                Framebuffer fb = null;
+                while ((frame = projected.take()) != END) {
+                    if (frame.chunk == 0) {
+                        fb = output.acquire(frame.index);
+                    }
+
+                    long t = System.nanoTime();
+                    rasterizer.render(frame.stars, frame.params.camera, fb,
+                            frame.chunk == 0);
+                    rasterTime.addAndGet(System.nanoTime() - t);
+                    freeStars.put(frame.stars);
+                    frame.stars = null;
+                    if (frame.last) {
+                        output.submit(frame.index, fb);
+                    }
+                }
+                return null;
+            }
+        });
+
+        try {
+            for (int i = 0; i < 2; i++) {
+                done.take().get();
+            }
+            output.finish();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            stages.shutdownNow();
+            output.shutdown();
+        }
+
+        double sec = (System.nanoTime() - start) * 1e-9;
+        int n = last - first + 1;
+        System.out.println(String.format("%d frames in %.1f s (%.2f fps), "
+                + "per frame: project %.1f ms, rasterize %.1f ms, "
+                + "encode %.1f ms", n, sec, n / sec, projectTime.get() * 1e-6
+                / n, rasterTime.get() * 1e-6 / n, output.getEncodeTime() * 1e-6
+                / n));
+    }
+
+    /**
+     * Render a flight script.
+     * 
+     * Usage: FlightRenderer script.txt (pattern|file.raw|file.raw16) [width
+     * height [first last]]
+     * 
+     * @param args
+     *            : command line arguments.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: FlightRenderer script.txt "
+                    + "out/frame_%05d.(png|pfm)|out/flight.(raw|raw16) "
+                    + "[width height [first last]]");
+            System.exit(1);
+        }
+        FlightScript script = null;
+        try {
+            script = new FlightScript(args[0]);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        int width = 720;
+        int height = 576;
+        int first = 0;
+        int last = script.getNumFrames() - 1;
+        try {
+            if (args.length > 3) {
+                width = Integer.parseInt(args[2]);
+                height = Integer.parseInt(args[3]);
+            }
+            if (args.length > 5) {
+                first = Math.max(0, Integer.parseInt(args[4]));
+                last = Math.min(last, Integer.parseInt(args[5]));
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid argument: " + e.getMessage());
+            System.exit(1);
+        }
+
+        boolean warp = false;
+        for (int f = first; f <= last; f++) {
+            ProjectionParams p = new ProjectionParams();
+            script.getFrame(f, p);
+            warp |= p.spacetime != 0;
+        }
+
+        TextureTable psiTemp = null;
+        TextureTable sigma = null;
+        TextureTable warpTable = null;
+        try {
+            psiTemp = SpectralTables.loadPsiTemp();
+            sigma = SpectralTables.loadSigma();
+            if (warp) {
+                warpTable = WarpTable.load();
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        ChunkedCatalog catalog = ChunkedCatalog.load();
+
+        File dir = new File(String.format(args[1], first)).getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            System.err.println("Cannot create directory " + dir);
+            System.exit(1);
+        }
+
+        FlightRenderer renderer = new FlightRenderer(script, catalog,
+                psiTemp, sigma, warpTable, width, height);
+        try {
+            renderer.render(first, last, args[1]);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.err.println("Interrupted");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Keyframed flight path.
+ * 
+ * A script is a text file with one keyframe per line:
+ * 
+ * <pre>
+ * # frame  beta  position  alpha  theta  spacetime  camera
+ *   0      0.0   0.0       0.0    0.0    0          0
+ *   250    0.9   *         0.0    0.0    0          0
+ *   500    0.9   *         0.3    1.57   0          1
+ * </pre>
+ * 
+ * Beta, position and the rotation angles alpha and theta (radians, see
+ * ProjectionParams.rotationMatrix) are interpolated linearly between
+ * keyframes. Spacetime (Minkowski=0, Warp=1) and camera (4pi=0,
+ * Pinhole=1, Fisheye=2, Cube=3) change at the keyframe. An optional eighth
+ * column selects the face of the cube camera (0-5, see
+ * ProjectionParams.cubeFaces), the default is the front face; a cubemap
+ * flight is rendered once per face. A position '*' means the observer
+ * moves with beta*Defs.timeStep per frame like in the interactive flight,
+ * starting from the position of the previous frame. Everything after '#'
+ * is a comment.
+ */
+public class FlightScript {
+    private final int      numFrames;
+    private final double[] beta;
+    private final double[] position;
+    private final double[] alpha;
+    private final double[] theta;
+    private final int[]    spacetime;
+    private final int[]    camera;
+    private final int[]    face;
+
+    /**
+     * Keyframe as read from the script.
+     */
+    private static class Keyframe {
+        int     frame;
+        double  beta;
+        double  position;
+        boolean integrate;
+        double  alpha;
+        double  theta;
+        int     spacetime;
+        int     camera;
+        int     face;
+    }
+
+    /**
+     * Read flight script.
+     * 
+     * @param filename
+     *            : name of script file.
+     * @throws IOException
+     *             if the file cannot be read or has syntax errors.
+     */
+    public FlightScript(String filename) throws IOException {
+        List<Keyframe> keys = new ArrayList<Keyframe>();
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(filename),
+                StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                int c = line.indexOf('#');
+                if (c >= 0) {
+                    line = line.substring(0, c);
+                }
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    keys.add(parseKeyframe(line));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(filename + ":" + lineNo + ": "
+                            + e.getMessage());
+                }
+                int n = keys.size();
+                if (n > 1 && keys.get(n - 1).frame <= keys.get(n - 2).frame) {
+                    throw new IOException(filename + ":" + lineNo
+                            + ": frame numbers must increase");
+                }
+            }
+        }
+        if (keys.isEmpty()) {
+            throw new IOException(filename + ": no keyframes");
+        }
+        if (keys.get(0).frame != 0) {
+            throw new IOException(filename + ": first keyframe must be "
+                    + "frame 0");
+        }
+        if (keys.get(0).integrate) {
+            keys.get(0).integrate = false;
+            keys.get(0).position = 0.0;
+        }
+
+        numFrames = keys.get(keys.size() - 1).frame + 1;
+        beta = new double[numFrames];
+        position = new double[numFrames];
+        alpha = new double[numFrames];
+        theta = new double[numFrames];
+        spacetime = new int[numFrames];
+        camera = new int[numFrames];
+        face = new int[numFrames];
+        sample(keys);
+    }
+
+    private static Keyframe parseKeyframe(String line) {
+        String[] tok = line.split("\\s+");
+        if (tok.length != 7 && tok.length != 8) {
+            throw new IllegalArgumentException("expected 7 or 8 columns, "
+                    + "found " + tok.length);
+        }
+        Keyframe k = new Keyframe();
+        k.frame = Integer.parseInt(tok[0]);
+        k.beta = Double.parseDouble(tok[1]);
+        k.integrate = tok[2].equals("*");
+        k.position = k.integrate ? 0.0 : Double.parseDouble(tok[2]);
+        k.alpha = Double.parseDouble(tok[3]);
+        k.theta = Double.parseDouble(tok[4]);
+        k.spacetime = Integer.parseInt(tok[5]);
+        k.camera = Integer.parseInt(tok[6]);
+        k.face = tok.length > 7 ? Integer.parseInt(tok[7]) : 0;
+
+        if (k.frame < 0) {
+            throw new IllegalArgumentException("negative frame number");
+        }
+        double bmin = k.spacetime == 0 ? -Defs.betaMax : 0.0;
+        double bmax = k.spacetime == 0 ? Defs.betaMax : Defs.betaMaxWarp;
+        if (k.beta < bmin || k.beta > bmax) {
+            throw new IllegalArgumentException("beta must be in [" + bmin
+                    + "," + bmax + "]");
+        }
+        if (k.spacetime < 0 || k.spacetime > 1) {
+            throw new IllegalArgumentException("spacetime must be 0 or 1");
+        }
+        if (k.camera < 0 || k.camera > 3) {
+            throw new IllegalArgumentException("camera must be in [0,3]");
+        }
+        if (k.face < 0 || k.face > 5) {
+            throw new IllegalArgumentException("face must be in [0,5]");
+        }
+        return k;
+    }
+
+    /**
+     * Evaluate the keyframes for every frame.
+     */
+    private void sample(List<Keyframe> keys) {
+        int k = 0;
+        for (int f = 0; f < numFrames; f++) {
+            while (k + 1 < keys.size() && keys.get(k + 1).frame <= f) {
+                k++;
+            }
+            Keyframe k0 = keys.get(k);
+            Keyframe k1 = k + 1 < keys.size() ? keys.get(k + 1) : k0;
+            double t = k1.frame > k0.frame ? (f - k0.frame)
+                    / (double) (k1.frame - k0.frame) : 0.0;
+
+            beta[f] = k0.beta + t * (k1.beta - k0.beta);
+            alpha[f] = k0.alpha + t * (k1.alpha - k0.alpha);
+            theta[f] = k0.theta + t * (k1.theta - k0.theta);
+            spacetime[f] = k0.spacetime;
+            camera[f] = k0.camera;
+            face[f] = k0.face;
+
+            if (f == k0.frame && !k0.integrate) {
+                position[f] = k0.position;
+            } else if (f == k0.frame || k1.integrate) {
+                position[f] = position[f - 1] + beta[f - 1] * Defs.timeStep;
+            } else {
+                double p0 = position[k0.frame];
+                position[f] = p0 + t * (k1.position - p0);
+            }
+        }
+    }
+
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+    /**
+     * Set projection parameters of a frame. Width, height and field of
+     * view are not changed.
+     * 
+     * @param frame
+     *            : frame number.
+     * @param p
+     *            : projection parameters.
+     */
+    public void getFrame(int frame, ProjectionParams p) {
+        p.beta = beta[frame];
+        p.currPos = position[frame];
+        p.spacetime = spacetime[frame];
+        p.camera = camera[frame];
+        p.face = face[frame];
+        ProjectionParams.rotationMatrix(alpha[frame], theta[frame], p.rotmat);
+        p.setBoost(p.spacetime == 0 ? p.beta : 0.0);
+    }
+
+    /**
+     * Describe a frame.
+     * 
+     * @param frame
+     *            : frame number.
+     * @return one line description.
+     */
+    public String describe(int frame) {
+        return String.format(Locale.US, "frame %d: beta %.4f, position %.3f"
+                + ", alpha %.3f, theta %.3f, spacetime %d, camera %d, face %d",
+                frame, beta[frame], position[frame], alpha[frame],
+                theta[frame], spacetime[frame], camera[frame], face[frame]);
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import javax.media.opengl.GL;
+import javax.media.opengl.GL2;
+
+/**
+ * Last rendered frame on the graphics board.
+ * 
+ * Frames are rendered into a framebuffer object and blitted to the window.
+ * The cache remembers the version of the render state that it holds; as
+ * long as the state does not change, the next frame is a blit instead of a
+ * pass over all stars. The window is still redrawn and swapped, so exposed
+ * or resized windows show the right image. Without framebuffer blits
+ * (OpenGL before 3.0), the cache is not available and every frame is
+ * rendered.
+ */
+public class FrameCache {
+    private final int[] fbo       = new int[1];
+    private final int[] color     = new int[1];
+    private final int[] depth     = new int[1];
+    private int         width     = 0;
+    private int         height    = 0;
+    private boolean     supported = false;
+    private long        version   = -1;
+
+    /**
+     * Create or resize the framebuffer object.
+     * 
+     * @param gl
+     *            : opengl.
+     * @param width
+     *            : frame width.
+     * @param height
+     *            : frame height.
+     * @return true if frames can be cached.
+     */
+    public boolean init(GL2 gl, int width, int height) {
+        if (width == this.width && height == this.height) {
+            return supported;
+        }
+        release(gl);
+        this.width = width;
+        this.height = height;
+        supported = width > 0 && height > 0
+                && gl.isFunctionAvailable("glGenFramebuffers")
+                && gl.isFunctionAvailable("glBlitFramebuffer");
+        if (!supported) {
+            return false;
+        }
+
+        gl.glGenRenderbuffers(1, color, 0);
+        gl.glBindRenderbuffer(GL.GL_RENDERBUFFER, color[0]);
+        gl.glRenderbufferStorage(GL.GL_RENDERBUFFER, GL.GL_RGBA8, width,
+                height);
+        gl.glGenRenderbuffers(1, depth, 0);
+        gl.glBindRenderbuffer(GL.GL_RENDERBUFFER, depth[0]);
+        gl.glRenderbufferStorage(GL.GL_RENDERBUFFER,
+                GL.GL_DEPTH_COMPONENT16, width, height);
+        gl.glBindRenderbuffer(GL.GL_RENDERBUFFER, 0);
+
+        gl.glGenFramebuffers(1, fbo, 0);
+        gl.glBindFramebuffer(GL.GL_FRAMEBUFFER, fbo[0]);
+        gl.glFramebufferRenderbuffer(GL.GL_FRAMEBUFFER,
+                GL.GL_COLOR_ATTACHMENT0, GL.GL_RENDERBUFFER, color[0]);
+        gl.glFramebufferRenderbuffer(GL.GL_FRAMEBUFFER,
+                GL.GL_DEPTH_ATTACHMENT, GL.GL_RENDERBUFFER, depth[0]);
+        int status = gl.glCheckFramebufferStatus(GL.GL_FRAMEBUFFER);
+        gl.glBindFramebuffer(GL.GL_FRAMEBUFFER,
+                gl.getDefaultDrawFramebuffer());
+        if (status != GL.GL_FRAMEBUFFER_COMPLETE) {
+            System.err.printf("Frame cache not available, status 0x%x\n",
+                    status);
+            release(gl);
+            return false;
+        }
+        return true;
+    }
+
+    public boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * Check whether the cache holds a frame.
+     * 
+     * @param stateVersion
+     *            : version of the render state.
+     * @return true if the frame of this version is cached.
+     */
+    public boolean holds(long stateVersion) {
+        return supported && version == stateVersion;
+    }
+
+    /**
+     * Forget the cached frame.
+     */
+    public void invalidate() {
+        version = -1;
+    }
+
+    /**
+     * Redirect rendering into the cache.
+     * 
+     * @param gl
+     *            : opengl.
+     */
+    public void begin(GL2 gl) {
+        gl.glBindFramebuffer(GL.GL_FRAMEBUFFER, fbo[0]);
+    }
+
+    /**
+     * End rendering into the cache.
+     * 
+     * @param gl
+     *            : opengl.
+     * @param stateVersion
+     *            : version of the render state of the frame.
+     */
+    public void end(GL2 gl, long stateVersion) {
+        gl.glBindFramebuffer(GL.GL_FRAMEBUFFER,
+                gl.getDefaultDrawFramebuffer());
+        version = stateVersion;
+    }
+
+    /**
+     * Copy the cached frame into the window.
+     * 
+     * @param gl
+     *            : opengl.
+     */
+    public void present(GL2 gl) {
+        gl.glBindFramebuffer(GL2.GL_READ_FRAMEBUFFER, fbo[0]);
+        gl.glBindFramebuffer(GL2.GL_DRAW_FRAMEBUFFER,
+                gl.getDefaultDrawFramebuffer());
+        gl.glBlitFramebuffer(0, 0, width, height, 0, 0, width, height,
+                GL.GL_COLOR_BUFFER_BIT, GL.GL_NEAREST);
+        gl.glBindFramebuffer(GL.GL_FRAMEBUFFER,
+                gl.getDefaultDrawFramebuffer());
+    }
+
+    public void dispose(GL2 gl) {
+        release(gl);
+        width = 0;
+        height = 0;
+    }
+
+    private void release(GL2 gl) {
+        if (fbo[0] != 0) {
+            gl.glDeleteFramebuffers(1, fbo, 0);
+            gl.glDeleteRenderbuffers(1, color, 0);
+            gl.glDeleteRenderbuffers(1, depth, 0);
+        }
+        fbo[0] = 0;
+        color[0] = 0;
+        depth[0] = 0;
+        supported = false;
+        version = -1;
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of encoder threads between the renderer and a FrameSink.
+ * 
+ * Frames are encoded in parallel and finish out of order; finished frames
+ * wait in a reorder set until all earlier frames are finished, and are then
+ * committed in order. At most 'maxFrames' frames can be acquired and not
+ * yet committed. acquire() blocks while this limit is reached, so a
+ * renderer that is faster than the encoders waits for them, and the memory
+ * for frames does not grow with the length of the flight.
+ */
+public class FrameOutput {
+    private final FrameSink          sink;
+    private final int                width;
+    private final int                height;
+    private final int                maxFrames;
+    private final ExecutorService    encoders;
+    private final Semaphore          inFlight;
+    private final Queue<Framebuffer> free;
+    private final TreeSet<Integer>   encoded;
+    private final AtomicLong         encodeTime = new AtomicLong();
+    private final long               start      = System.nanoTime();
+
+    private int                      nextCommit;
+    private int                      numSubmitted;
+    private int                      numCommitted;
+    private IOException              error;
+
+    /**
+     * Frame output.
+     * 
+     * @param sink
+     *            : frame sink.
+     * @param width
+     *            : frame width.
+     * @param height
+     *            : frame height.
+     * @param first
+     *            : number of the first frame.
+     * @param numEncoders
+     *            : number of encoder threads.
+     * @param maxFrames
+     *            : frames in flight between acquire() and commit.
+     */
+    public FrameOutput(FrameSink sink, int width, int height, int first,
+            int numEncoders, int maxFrames) {
+        this.sink = sink;
+        this.width = width;
+        this.height = height;
+        this.maxFrames = Math.max(1, maxFrames);
+        this.encoders = Executors.newFixedThreadPool(Math.max(1, numEncoders));
+        this.inFlight = new Semaphore(this.maxFrames);
+        this.free = new ConcurrentLinkedQueue<Framebuffer>();
+        this.encoded = new TreeSet<Integer>();
+        this.nextCommit = first;
+    }
+
+    /**
+     * Get framebuffer for the next frame, waiting while too many frames are
+     * in flight. Frames must be acquired and submitted in order.
+     * 
+     * @param index
+     *            : frame number.
+     * @return framebuffer, its content is undefined.
+     * @throws IOException
+     *             if an earlier frame could not be written.
+     * @throws InterruptedException
+     *             if interrupted while waiting.
+     */
+    public Framebuffer acquire(int index) throws IOException,
+            InterruptedException {
+        inFlight.acquire();
+        synchronized (this) {
+            if (error != null) {
+                throw error;
+            }
+        }
+        if (sink.isMapped()) {
+            return sink.map(index);
+        }
+        Framebuffer fb = free.poll();
+        return fb != null ? fb : new Framebuffer(width, height);
+    }
+
+    /**
+     * Encode and commit a rendered frame.
+     * 
+     * @param index
+     *            : frame number.
+     * @param fb
+     *            : framebuffer from acquire().
+     */
+    public void submit(final int index, final Framebuffer fb) {
+        synchronized (this) {
+            numSubmitted++;
+        }
+        encoders.execute(new Runnable() {
+            public void run() {
+                long t = System.nanoTime();
+                try {
+                    sink.encode(index, fb);
+                } catch (IOException e) {
+                    fail(e);
+                    return;
+                } catch (RuntimeException e) {
+                    fail(new IOException("Cannot encode frame " + index, e));
+                    return;
+                }
+                encodeTime.addAndGet(System.nanoTime() - t);
+                if (!sink.isMapped()) {
+                    free.add(fb);
+                }
+                finished(index);
+            }
+        });
+    }
+
+    /**
+     * Commit the frame and all later frames that wait for it.
+     */
+    private synchronized void finished(int index) {
+        encoded.add(index);
+        try {
+            while (!encoded.isEmpty() && encoded.first() == nextCommit) {
+                encoded.pollFirst();
+                sink.commit(nextCommit);
+                nextCommit++;
+                numCommitted++;
+                inFlight.release();
+                if (numCommitted % 100 == 0) {
+                    System.out.println(String.format("%d frames, %.1f fps",
+                            numCommitted, numCommitted * 1e9
+                                    / (System.nanoTime() - start)));
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+        notifyAll();
+    }
+
+    private synchronized void fail(IOException e) {
+        if (error == null) {
+            error = e;
+        }
+        // wake up the renderer, acquire() reports the error
+        inFlight.release(maxFrames);
+        notifyAll();
+    }
+
+    /**
+     * Wait until all submitted frames are committed and stop the encoder
+     * threads.
+     * 
+     * @throws IOException
+     *             if a frame could not be written.
+     * @throws InterruptedException
+     *             if interrupted while waiting.
+     */
+    public void finish() throws IOException, InterruptedException {
+        try {
+            synchronized (this) {
+                while (numCommitted < numSubmitted && error == null) {
+                    wait();
+                }
+                if (error != null) {
+                    throw error;
+                }
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Stop the encoder threads without waiting for pending frames.
+     */
+    public void shutdown() {
+        encoders.shutdownNow();
+    }
+
+    public synchronized int getNumCommitted() {
+        return numCommitted;
+    }
+
+    /**
+     * Get time spent encoding, summed over all encoder threads.
+     * 
+     * @return time in nanoseconds.
+     */
+    public long getEncodeTime() {
+        return encodeTime.get();
+    }
+}
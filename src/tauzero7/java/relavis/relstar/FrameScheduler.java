@@ -0,0 +1,235 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import javax.media.opengl.GLAutoDrawable;
+import javax.media.opengl.GLEventListener;
+
+/**
+ * Fixed-timestep clock between simulation and rendering.
+ * 
+ * The simulation advances in ticks of constant length, taken from the
+ * monotonic System.nanoTime() clock, while frames are drawn as fast as the
+ * display allows. Every frame first runs the ticks that are due and then
+ * shows the state interpolated between the last two ticks, so the flight
+ * only depends on the elapsed time and not on the frame rate. After a
+ * stall, at most maxSteps ticks are caught up in one frame; the time
+ * beyond that is dropped and counted, so a long stall slows the flight
+ * down instead of making it jump.
+ * 
+ * Add the scheduler to the drawable before the renderer, so that display()
+ * updates the state before it is drawn.
+ */
+public class FrameScheduler implements GLEventListener {
+    /**
+     * Simulation driven by the scheduler.
+     */
+    public interface Simulation {
+        /**
+         * Advance the state by one tick.
+         */
+        void step();
+
+        /**
+         * Show the state between the last two ticks.
+         * 
+         * @param alpha
+         *            : fraction of the current tick in [0,1].
+         */
+        void interpolate(double alpha);
+    }
+
+    /** Number of frames used for frame rate and jitter. */
+    public static final int  WINDOW       = 120;
+
+    private final Simulation sim;
+    private final long       tick;
+    private final int        maxSteps;
+
+    private boolean          running      = false;
+    private long             last         = 0;
+    private long             accumulator  = 0;
+    private long             ticks        = 0;
+    private long             droppedTicks = 0;
+
+    private final long[]     intervals    = new long[WINDOW];
+    private int              numIntervals = 0;
+    private int              next         = 0;
+    private long             lastFrame    = -1;
+    private FrameStats       stats        = null;
+
+    /**
+     * Frame scheduler.
+     * 
+     * @param sim
+     *            : simulation.
+     * @param tickMillis
+     *            : length of a tick in milliseconds.
+     * @param maxSteps
+     *            : maximum number of ticks per frame.
+     */
+    public FrameScheduler(Simulation sim, int tickMillis, int maxSteps) {
+        if (tickMillis <= 0 || maxSteps <= 0) {
+            throw new IllegalArgumentException("tick " + tickMillis
+                    + " ms, " + maxSteps + " steps");
+        }
+        this.sim = sim;
+        this.tick = tickMillis * 1000000L;
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Start the simulation clock.
+     * 
+     * @param now
+     *            : current time in nanoseconds.
+     */
+    public synchronized void start(long now) {
+        running = true;
+        last = now;
+        accumulator = 0;
+    }
+
+    /**
+     * Stop the simulation clock and show the state of the last tick.
+     */
+    public synchronized void stop() {
+        if (running) {
+            running = false;
+            accumulator = 0;
+            sim.interpolate(1.0);
+        }
+        lastFrame = -1;
+    }
+
+    /**
+     * Time the updates of every frame as FrameStats.UPDATE.
+     * 
+     * @param stats
+     *            : frame statistics, or null.
+     */
+    public synchronized void setFrameStats(FrameStats stats) {
+        this.stats = stats;
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Run the ticks that are due and interpolate the state for a frame.
+     * 
+     * @param now
+     *            : current time in nanoseconds.
+     */
+    public synchronized void frame(long now) {
+        if (lastFrame >= 0) {
+            intervals[next] = now - lastFrame;
+            next = (next + 1) % WINDOW;
+            numIntervals = Math.min(numIntervals + 1, WINDOW);
+        }
+        lastFrame = now;
+        if (!running) {
+            return;
+        }
+
+        long start = stats != null ? FrameStats.now() : 0;
+        accumulator += now - last;
+        last = now;
+        int steps = 0;
+        while (accumulator >= tick) {
+            if (steps == maxSteps) {
+                droppedTicks += accumulator / tick;
+                accumulator %= tick;
+                break;
+            }
+            sim.step();
+            ticks++;
+            steps++;
+            accumulator -= tick;
+        }
+        sim.interpolate(accumulator / (double) tick);
+        if (stats != null) {
+            stats.record(FrameStats.UPDATE, start);
+        }
+    }
+
+    /**
+     * Get number of ticks since construction.
+     * 
+     * @return simulated ticks.
+     */
+    public synchronized long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Get number of ticks dropped after stalls.
+     * 
+     * @return dropped ticks.
+     */
+    public synchronized long getDroppedTicks() {
+        return droppedTicks;
+    }
+
+    /**
+     * Get achieved frame rate over the last WINDOW frames.
+     * 
+     * @return frames per second, zero before the second frame.
+     */
+    public synchronized double getFrameRate() {
+        long sum = 0;
+        for (int i = 0; i < numIntervals; i++) {
+            sum += intervals[i];
+        }
+        return sum > 0 ? numIntervals * 1e9 / sum : 0.0;
+    }
+
+    /**
+     * Get standard deviation of the frame intervals over the last WINDOW
+     * frames.
+     * 
+     * @return jitter in milliseconds.
+     */
+    public synchronized double getJitter() {
+        if (numIntervals < 2) {
+            return 0.0;
+        }
+        double mean = 0.0;
+        for (int i = 0; i < numIntervals; i++) {
+            mean += intervals[i];
+        }
+        mean /= numIntervals;
+        double var = 0.0;
+        for (int i = 0; i < numIntervals; i++) {
+            double d = intervals[i] - mean;
+            var += d * d;
+        }
+        return Math.sqrt(var / (numIntervals - 1)) * 1e-6;
+    }
+
+    @Override
+    public void init(GLAutoDrawable drawable) {
+    }
+
+    @Override
+    public void dispose(GLAutoDrawable drawable) {
+    }
+
+    @Override
+    public void display(GLAutoDrawable drawable) {
+        frame(System.nanoTime());
+    }
+
+    @Override
+    public void reshape(GLAutoDrawable drawable, int x, int y, int width,
+            int height) {
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of rendered frames, used by FrameOutput.
+ * 
+ * Frames are encoded by several threads at once and in any order; commit()
+ * is then called in frame order, one frame at a time.
+ */
+public interface FrameSink extends Closeable {
+    /**
+     * Check whether the sink provides the framebuffers itself.
+     * 
+     * @return true if frames are rendered into map(), false if they are
+     *         rendered into pooled framebuffers.
+     */
+    boolean isMapped();
+
+    /**
+     * Framebuffer that renders directly into the sink. Only called if
+     * isMapped() is true; other sinks throw IllegalStateException.
+     * 
+     * @param index
+     *            : frame number.
+     * @return framebuffer of the frame.
+     * @throws IOException
+     *             if the frame cannot be mapped.
+     */
+    Framebuffer map(int index) throws IOException;
+
+    /**
+     * Encode a frame. Called concurrently for different frames.
+     * 
+     * @param index
+     *            : frame number.
+     * @param fb
+     *            : rendered frame.
+     * @throws IOException
+     *             if the frame cannot be written.
+     */
+    void encode(int index, Framebuffer fb) throws IOException;
+
+    /**
+     * Commit an encoded frame. Called in frame order after all earlier
+     * frames have been committed.
+     * 
+     * @param index
+     *            : frame number.
+     * @throws IOException
+     *             if the frame cannot be committed.
+     */
+    void commit(int index) throws IOException;
+}
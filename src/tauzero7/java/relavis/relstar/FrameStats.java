@@ -0,0 +1,238 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Timing of the render and update phases of the interactive flight.
+ * 
+ * Every phase keeps the durations of its last WINDOW runs in a ring
+ * buffer. Recording is a System.nanoTime() call and an array store, so the
+ * timers can stay in the render loop; percentiles are only computed when
+ * the statistics are read. Once registered, the statistics are published
+ * as the MBean OBJECT_NAME, e.g. for jconsole.
+ */
+public class FrameStats implements FrameStatsMBean {
+    public static final String   OBJECT_NAME = "tauzero7.relavis.relstar:"
+            + "type=FrameStats";
+    public static final int      WINDOW      = 1024;
+
+    /** Texture binds. */
+    public static final int      TEXTURES    = 0;
+    /** Shader and uniform setup. */
+    public static final int      UNIFORMS    = 1;
+    /** Star buffers, including streamed chunks. */
+    public static final int      DRAW        = 2;
+    /** Buffer swap, includes the wait for the display. */
+    public static final int      SWAP        = 3;
+    /** Simulation ticks and interpolation. */
+    public static final int      UPDATE      = 4;
+    /** Whole display callback of the renderer. */
+    public static final int      FRAME       = 5;
+
+    private static final String[] NAMES      = { "textures", "uniforms",
+            "draw", "swap", "update", "frame" };
+
+    private final long[][]       samples     = new long[NAMES.length][];
+    private final int[]          num         = new int[NAMES.length];
+    private final int[]          next        = new int[NAMES.length];
+    private long                 frames      = 0;
+    private long                 skipped     = 0;
+    private long                 starsDrawn  = 0;
+    private long                 starsCulled = 0;
+
+    public FrameStats() {
+        for (int p = 0; p < NAMES.length; p++) {
+            samples[p] = new long[WINDOW];
+        }
+    }
+
+    /**
+     * Current time for the start of a phase.
+     * 
+     * @return time in nanoseconds.
+     */
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the end of a phase.
+     * 
+     * @param phase
+     *            : phase index.
+     * @param start
+     *            : start time of the phase from now().
+     * @return end time, to be used as start of the next phase.
+     */
+    public long record(int phase, long start) {
+        long end = System.nanoTime();
+        synchronized (this) {
+            samples[phase][next[phase]] = end - start;
+            next[phase] = (next[phase] + 1) % WINDOW;
+            if (num[phase] < WINDOW) {
+                num[phase]++;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Count a frame.
+     * 
+     * @param drawn
+     *            : number of stars sent to the graphics board.
+     * @param culled
+     *            : number of stars skipped by magnitude or view.
+     */
+    public synchronized void frame(long drawn, long culled) {
+        frames++;
+        starsDrawn = drawn;
+        starsCulled = culled;
+    }
+
+    /**
+     * Count a frame that reused the last image.
+     */
+    public synchronized void skipped() {
+        skipped++;
+    }
+
+    /**
+     * Publish the statistics in the platform MBean server.
+     * 
+     * @throws JMException
+     *             if the MBean cannot be registered.
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+    }
+
+    @Override
+    public String[] getPhases() {
+        return NAMES.clone();
+    }
+
+    @Override
+    public double[] getMeanMillis() {
+        double[] mean = new double[NAMES.length];
+        for (int p = 0; p < NAMES.length; p++) {
+            long[] s = sorted(p);
+            double sum = 0.0;
+            for (long v : s) {
+                sum += v;
+            }
+            mean[p] = s.length > 0 ? sum / s.length * 1e-6 : 0.0;
+        }
+        return mean;
+    }
+
+    @Override
+    public double[] getP50Millis() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public double[] getP95Millis() {
+        return percentile(0.95);
+    }
+
+    @Override
+    public double[] getP99Millis() {
+        return percentile(0.99);
+    }
+
+    @Override
+    public double[] getMaxMillis() {
+        return percentile(1.0);
+    }
+
+    @Override
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    @Override
+    public synchronized long getSkippedFrames() {
+        return skipped;
+    }
+
+    @Override
+    public synchronized long getStarsDrawn() {
+        return starsDrawn;
+    }
+
+    @Override
+    public synchronized long getStarsCulled() {
+        return starsCulled;
+    }
+
+    @Override
+    public String report() {
+        double[] mean = getMeanMillis();
+        double[] p50 = getP50Millis();
+        double[] p95 = getP95Millis();
+        double[] p99 = getP99Millis();
+        double[] max = getMaxMillis();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-10s %8s %8s %8s %8s %8s\n", "phase [ms]",
+                "mean", "p50", "p95", "p99", "max"));
+        for (int p = 0; p < NAMES.length; p++) {
+            sb.append(String.format("%-10s %8.3f %8.3f %8.3f %8.3f %8.3f\n",
+                    NAMES[p], mean[p], p50[p], p95[p], p99[p], max[p]));
+        }
+        sb.append(String.format("%d frames, %d skipped, %d stars drawn, "
+                + "%d culled\n", getFrames(), getSkippedFrames(),
+                getStarsDrawn(), getStarsCulled()));
+        return sb.toString();
+    }
+
+    @Override
+    public synchronized void reset() {
+        Arrays.fill(num, 0);
+        Arrays.fill(next, 0);
+        frames = 0;
+        skipped = 0;
+        starsDrawn = 0;
+        starsCulled = 0;
+    }
+
+    /**
+     * Nearest-rank percentile of every phase.
+     */
+    private double[] percentile(double q) {
+        double[] result = new double[NAMES.length];
+        for (int p = 0; p < NAMES.length; p++) {
+            long[] s = sorted(p);
+            if (s.length > 0) {
+                int rank = (int) Math.ceil(q * s.length);
+                result[p] = s[Math.max(rank, 1) - 1] * 1e-6;
+            }
+        }
+        return result;
+    }
+
+    private synchronized long[] sorted(int phase) {
+        long[] s = Arrays.copyOf(samples[phase], num[phase]);
+        Arrays.sort(s);
+        return s;
+    }
+}
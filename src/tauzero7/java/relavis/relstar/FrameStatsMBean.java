@@ -0,0 +1,51 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+/**
+ * Management interface of the frame statistics. The timing arrays are
+ * parallel to getPhases() and given in milliseconds over the last
+ * FrameStats.WINDOW samples of every phase.
+ */
+public interface FrameStatsMBean {
+    String[] getPhases();
+
+    double[] getMeanMillis();
+
+    double[] getP50Millis();
+
+    double[] getP95Millis();
+
+    double[] getP99Millis();
+
+    double[] getMaxMillis();
+
+    long getFrames();
+
+    /**
+     * Frames that showed the last image because nothing changed.
+     * 
+     * @return number of skipped frames.
+     */
+    long getSkippedFrames();
+
+    long getStarsDrawn();
+
+    long getStarsCulled();
+
+    /**
+     * Summary of all phases as a table.
+     * 
+     * @return text table.
+     */
+    String report();
+
+    void reset();
+}
@@ -0,0 +1,207 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import javax.imageio.ImageIO;
+
+import com.jogamp.common.nio.Buffers;
+
+/**
+ * Off-heap RGB float framebuffer. Rows are stored bottom-up like in OpenGL.
+ */
+public class Framebuffer {
+    private final int         width;
+    private final int         height;
+    private final FloatBuffer data;
+
+    /**
+     * Framebuffer.
+     * 
+     * @param width
+     *            : width in pixels.
+     * @param height
+     *            : height in pixels.
+     */
+    public Framebuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.data = Buffers.newDirectFloatBuffer(width * height * 3);
+    }
+
+    /**
+     * Framebuffer on existing memory, e.g. a frame of a mapped file.
+     * 
+     * @param width
+     *            : width in pixels.
+     * @param height
+     *            : height in pixels.
+     * @param data
+     *            : buffer of width*height RGB triples, starting at index 0.
+     */
+    public Framebuffer(int width, int height, FloatBuffer data) {
+        if (data.capacity() < width * height * 3) {
+            throw new IllegalArgumentException("buffer too small for "
+                    + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.data = data;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get pixel data. The buffer shares memory with the framebuffer.
+     * 
+     * @return float buffer of width*height RGB triples.
+     */
+    public FloatBuffer getData() {
+        return data.duplicate();
+    }
+
+    /**
+     * Clear framebuffer to black.
+     */
+    public void clear() {
+        clear(0, 0, width, height);
+    }
+
+    /**
+     * Clear rectangle to black.
+     * 
+     * @param x0
+     *            : left column.
+     * @param y0
+     *            : bottom row.
+     * @param x1
+     *            : right column (exclusive).
+     * @param y1
+     *            : top row (exclusive).
+     */
+    public void clear(int x0, int y0, int x1, int y1) {
+        for (int y = y0; y < y1; y++) {
+            int base = (y * width) * 3;
+            for (int i = base + x0 * 3; i < base + x1 * 3; i++) {
+                data.put(i, 0.0f);
+            }
+        }
+    }
+
+    /**
+     * Add color to pixel (GL_ONE, GL_ONE blending).
+     * 
+     * @param x
+     *            : column.
+     * @param y
+     *            : row from bottom.
+     * @param r
+     *            : red.
+     * @param g
+     *            : green.
+     * @param b
+     *            : blue.
+     */
+    public void add(int x, int y, float r, float g, float b) {
+        int i = (y * width + x) * 3;
+        data.put(i, data.get(i) + r);
+        data.put(i + 1, data.get(i + 1) + g);
+        data.put(i + 2, data.get(i + 2) + b);
+    }
+
+    public float get(int x, int y, int c) {
+        return data.get((y * width + x) * 3 + c);
+    }
+
+    /**
+     * Convert to 8-bit image, clamping like a fixed-point color buffer.
+     * 
+     * @return image with top row first.
+     */
+    public BufferedImage toImage() {
+        BufferedImage img = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            int base = y * width * 3;
+            for (int x = 0; x < width; x++) {
+                int i = base + x * 3;
+                row[x] = (toByte(data.get(i)) << 16)
+                        | (toByte(data.get(i + 1)) << 8)
+                        | toByte(data.get(i + 2));
+            }
+            img.setRGB(0, height - 1 - y, width, 1, row, 0, width);
+        }
+        return img;
+    }
+
+    /**
+     * Write framebuffer as PNG image.
+     * 
+     * @param filename
+     *            : name of image file.
+     * @throws IOException
+     *             if the image cannot be written.
+     */
+    public void writePNG(String filename) throws IOException {
+        ImageIO.write(toImage(), "png", new File(filename));
+    }
+
+    /**
+     * Write framebuffer unclamped as portable float map (PFM).
+     * 
+     * @param filename
+     *            : name of image file.
+     * @throws IOException
+     *             if the image cannot be written.
+     */
+    public void writePFM(String filename) throws IOException {
+        // negative scale denotes little-endian data, rows are bottom-up
+        byte[] head = String.format("PF\n%d %d\n-1.0\n", width, height)
+                .getBytes("US-ASCII");
+        ByteBuffer buf = ByteBuffer.allocateDirect(width * height * 12)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buf.asFloatBuffer().put(getData());
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer hb = ByteBuffer.wrap(head);
+            while (hb.hasRemaining()) {
+                channel.write(hb);
+            }
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+    }
+
+    private static int toByte(float v) {
+        if (!(v > 0.0f)) {
+            return 0;
+        }
+        return v >= 1.0f ? 255 : (int) (v * 255.0f + 0.5f);
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.nio.Buffer;
+
+import javax.media.opengl.GL2;
+
+/**
+ * BufferGL on an OpenGL 2 context.
+ */
+public class GL2BufferGL implements BufferGL {
+    private final GL2 gl;
+
+    /**
+     * Buffer calls on a context.
+     * 
+     * @param gl
+     *            : opengl.
+     */
+    public GL2BufferGL(GL2 gl) {
+        this.gl = gl;
+    }
+
+    public boolean isFunctionAvailable(String name) {
+        return gl.isFunctionAvailable(name);
+    }
+
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        gl.glGenBuffers(n, buffers, offset);
+    }
+
+    public void glBindBuffer(int target, int buffer) {
+        gl.glBindBuffer(target, buffer);
+    }
+
+    public void glBufferData(int target, long size, Buffer data, int usage) {
+        gl.glBufferData(target, size, data, usage);
+    }
+
+    public void glBufferSubData(int target, long offset, long size,
+            Buffer data) {
+        gl.glBufferSubData(target, offset, size, data);
+    }
+
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        gl.glDeleteBuffers(n, buffers, offset);
+    }
+
+    public void glGenVertexArrays(int n, int[] arrays, int offset) {
+        gl.glGenVertexArrays(n, arrays, offset);
+    }
+
+    public void glBindVertexArray(int array) {
+        gl.glBindVertexArray(array);
+    }
+
+    public void glDeleteVertexArrays(int n, int[] arrays, int offset) {
+        gl.glDeleteVertexArrays(n, arrays, offset);
+    }
+
+    public void glVertexPointer(int size, int type, int stride, long offset) {
+        gl.glVertexPointer(size, type, stride, offset);
+    }
+
+    public void glEnableClientState(int array) {
+        gl.glEnableClientState(array);
+    }
+
+    public void glDisableClientState(int array) {
+        gl.glDisableClientState(array);
+    }
+
+    public void glVertexAttribPointer(int index, int size, int type,
+            boolean normalized, int stride, long offset) {
+        gl.glVertexAttribPointer(index, size, type, normalized, stride,
+                offset);
+    }
+
+    public void glEnableVertexAttribArray(int index) {
+        gl.glEnableVertexAttribArray(index);
+    }
+
+    public void glDisableVertexAttribArray(int index) {
+        gl.glDisableVertexAttribArray(index);
+    }
+
+    public void glDrawArrays(int mode, int first, int count) {
+        gl.glDrawArrays(mode, first, count);
+    }
+
+    public void glMultiDrawArrays(int mode, int[] first, int firstOffset,
+            int[] count, int countOffset, int drawCount) {
+        gl.glMultiDrawArrays(mode, first, firstOffset, count, countOffset,
+                drawCount);
+    }
+}
@@ -9,11 +9,9 @@
  */
 package tauzero7.java.relavis.relstar;
 
-import java.io.DataInputStream;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.media.opengl.GL;
 import javax.media.opengl.GL2;
@@ -34,16 +32,44 @@ public class GLRenderer implements GLEventListener {
     private GLU         glu             = new GLU();
     private Shader      shader          = null;
 
-    private Hipparcos   hipCat          = null;
-    private Texture     mTempTex        = null;
-    private Texture     mSigmaTex       = null;
-    private Texture     mWarpTex        = null;
-
-    private FloatBuffer mVertices       = null;
-    private FloatBuffer mAbsMag         = null;
-    private FloatBuffer mTemps          = null;
+    private AssetLoader assets          = null;
 
-    int[]               mVBO            = new int[1];
+    private ChunkedCatalog mCatalog     = null;
+    private TextureTable mPsiTempTable  = null;
+    private TextureTable mSigmaTable    = null;
+    private ColorTable  mColorTable     = null;
+    private Texture     mColorTex       = null;
+    private Texture     mWarpTex        = null;
+    private boolean     mWarpPending    = false;
+    private Runnable    mWarpLoaded     = null;
+
+    private StarBuffers mBuffers        = null;
+    private FrameCache  mFrameCache     = new FrameCache();
+    private final ProjectionParams mState = new ProjectionParams();
+    private final ProjectionParams mNext  = new ProjectionParams();
+    private long        mStateVersion   = 0;
+    private double      mStateS0        = Defs.DEF_S0;
+    private long        mSkippedFrames  = 0;
+
+    private Shader.Uniform2f       uWSize;
+    private Shader.Uniform1i       uTexColor;
+    private Shader.Uniform1i       uTexWarp;
+    private Shader.Uniform1i       uSpacetime;
+    private Shader.Uniform1i       uCamera;
+    private Shader.Uniform1f       uBeta;
+    private Shader.Uniform1f       uCurrPos;
+    private Shader.Uniform1f       uGamma;
+    private Shader.Uniform1f       uS0;
+    private Shader.Uniform1f       uFovYh;
+    private Shader.UniformMatrix4f uRotmat;
+    private Shader.UniformMatrix4f uTetrad;
+    private int                    mUniformCalls = 0;
+
+    private final FrameStats       mStats        = new FrameStats();
+    private long                   mTotalStars   = 0;
+    private long                   mDrawnStars   = 0;
+    private final Telemetry        mTelemetry    = Telemetry.get();
+    ProjectionParams    mParams         = new ProjectionParams();
 
     double[]            rotAngle        = { Math.PI, 0.0 };
     double[]            oldAngle        = { Math.PI, 0.0 };
@@ -63,14 +89,32 @@ public class GLRenderer implements GLEventListener {
     double              mCurrPos        = 0;
 
     GLRenderer(int width, int height) {
+        this(width, height, new AssetLoader(new StartupTimeline()));
+        assets.start();
+    }
+
+    /**
+     * GLRenderer with assets that are already loading.
+     * 
+     * @param width
+     *            : window width.
+     * @param height
+     *            : window height.
+     * @param assets
+     *            : started asset loader.
+     */
+    GLRenderer(int width, int height, AssetLoader assets) {
         this.width = width;
         this.height = height;
+        this.assets = assets;
         setRotMatrix(rotAngle[1], rotAngle[0]);
     }
 
     @Override
     public void init(GLAutoDrawable drawable) {
         GL2 gl = drawable.getGL().getGL2();
+        // frames follow the display refresh
+        gl.setSwapInterval(1);
         gl.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
 
         System.out.println("Graphics board details:");
@@ -83,6 +127,9 @@ public class GLRenderer implements GLEventListener {
         System.out.printf("\tGLSL version   : %s\n",
                 gl.glGetString(GL2.GL_SHADING_LANGUAGE_VERSION));
         
+        // swap in display() to time it
+        drawable.setAutoSwapBufferMode(false);
+
         glu = new GLU();
         gl.glMatrixMode(GL2.GL_PROJECTION);
         gl.glLoadIdentity();
@@ -99,33 +146,103 @@ public class GLRenderer implements GLEventListener {
         gl.glShadeModel(GL2.GL_SMOOTH);
         gl.glEnable(GL2.GL_POINT_SPRITE);
 
+        StartupTimeline timeline = assets.getTimeline();
+        StartupTimeline.Stage stage = timeline.begin("compile shader");
         shader = new Shader(gl);
         shader.setShaders(gl);
         shader.release();
+        findUniforms();
+        stage.end();
+
+        // the tables and the catalog are loaded in the background
+        mPsiTempTable = assets.getPsiTempTable();
+        mSigmaTable = assets.getSigmaTable();
+        loadColorTex(gl);
+
+        ChunkedCatalog catalog = assets.getCatalog();
+        mTotalStars = catalog.getNumRows();
+        try {
+            // stars behind the magnitude limit never reach the board
+            mCatalog = catalog.brightest(Defs.MAX_APPMAG);
+        } catch (IOException e) {
+            System.err.println("Cannot read catalog: " + e.getMessage());
+            System.exit(1);
+        }
+        System.err.printf("Load star catalog ... %d, %d in %d chunk(s) "
+                + "up to magnitude %.1f\n", catalog.getNumRows(),
+                mCatalog.getNumRows(), mCatalog.getNumChunks(),
+                Defs.MAX_APPMAG);
 
-        hipCat = new Hipparcos();
-        loadPsiTempTex(gl);
-        loadSigmaTex(gl);
-        loadWarpTex(gl);
-
-        System.err.printf("Load %s ... %d\n", Defs.BIN_NAME_HIPPARCOS,
-                hipCat.getNumStars());
-        mVertices = hipCat.getVertices();
-        mAbsMag = hipCat.getMagnitudes();
-        mTemps = hipCat.getTemps();
-        // System.err.printf("%f %f %f\n",mVertices.get(0),mVertices.get(1),mVertices.get(2));
-        createVBO(gl);
+        stage = timeline.begin("create VBO");
+        mBuffers = new StarBuffers(mCatalog);
+        try {
+            mBuffers.init(new GL2BufferGL(gl));
+        } catch (IOException e) {
+            System.err.println("Cannot read catalog: " + e.getMessage());
+            System.exit(1);
+        }
+        stage.end();
+
+        assets.shutdown();
+        timeline.print(System.err);
     }
 
     @Override
     public void dispose(GLAutoDrawable drawable) {
-        // TODO Auto-generated method stub
-
+        if (mBuffers != null) {
+            mBuffers.dispose(new GL2BufferGL(drawable.getGL().getGL2()));
+        }
+        mFrameCache.dispose(drawable.getGL().getGL2());
     }
 
+    /**
+     * Render the stars if the render state changed since the last frame,
+     * otherwise show the cached frame.
+     */
     @Override
     public void display(GLAutoDrawable drawable) {
+        long start = FrameStats.now();
+        Telemetry.Span span = mTelemetry.startFrame();
+        GL2 gl = drawable.getGL().getGL2();
+        if (mWarpPending && assets.isWarpTableLoaded()) {
+            loadWarpTex(gl, assets.getWarpTable());
+            mWarpPending = false;
+            mSpacetime = 1;
+            setMouseMotion(0);
+        }
+        getProjectionParams(mNext);
+        if (!mNext.sameAs(mState) || mStateS0 != Defs.DEF_S0
+                || mColorTable.getGamma() != (float) Defs.DEF_GAMMA) {
+            mState.set(mNext);
+            mStateS0 = Defs.DEF_S0;
+            mStateVersion++;
+        }
+
+        boolean cache = mFrameCache.init(gl, width, height);
+        if (mFrameCache.holds(mStateVersion)) {
+            mFrameCache.present(gl);
+            long t = FrameStats.now();
+            drawable.swapBuffers();
+            mStats.record(FrameStats.SWAP, t);
+            mStats.skipped();
+            mSkippedFrames++;
+            return;
+        }
+        if (cache) {
+            mFrameCache.begin(gl);
+        }
         render(drawable);
+        if (cache) {
+            mFrameCache.end(gl, mStateVersion);
+            mFrameCache.present(gl);
+        }
+        long t = FrameStats.now();
+        drawable.swapBuffers();
+        mStats.record(FrameStats.SWAP, t);
+        mStats.record(FrameStats.FRAME, start);
+        mStats.frame(mDrawnStars, mTotalStars - mDrawnStars);
+        mTelemetry.frameRendered(span, mDrawnStars, mTotalStars
+                - mDrawnStars, mUniformCalls);
     }
 
     @Override
@@ -146,305 +263,214 @@ public class GLRenderer implements GLEventListener {
         gl.glClear(GL.GL_COLOR_BUFFER_BIT | GL.GL_DEPTH_BUFFER_BIT);
         gl.glColor3d(1, 1, 1);
 
-        gl.glActiveTexture(GL.GL_TEXTURE0);
-        mTempTex.bind(gl);
-        mTempTex.enable(gl);
+        if (mColorTable.getGamma() != (float) Defs.DEF_GAMMA) {
+            mColorTex.destroy(gl);
+            loadColorTex(gl);
+        }
 
-        gl.glActiveTexture(GL.GL_TEXTURE1);
-        mSigmaTex.bind(gl);
-        mSigmaTex.enable(gl);
+        long t = FrameStats.now();
+        gl.glActiveTexture(GL.GL_TEXTURE0);
+        mColorTex.bind(gl);
+        mColorTex.enable(gl);
 
-        gl.glActiveTexture(GL.GL_TEXTURE2);
-        mWarpTex.bind(gl);
-        mWarpTex.enable(gl);
+        if (mWarpTex != null) {
+            gl.glActiveTexture(GL.GL_TEXTURE1);
+            mWarpTex.bind(gl);
+            mWarpTex.enable(gl);
+        }
+        t = mStats.record(FrameStats.TEXTURES, t);
 
         gl.glPointSize(1.0f);
         shader.bind();
-        gl.glUniform2f(shader.location("wSize"), (float) width, (float) height);
-        gl.glUniform1i(shader.location("texPsiTemp"), 0);
-        gl.glUniform1i(shader.location("texSigma"), 1);
-        gl.glUniform1i(shader.location("texWarp"), 2);
-        gl.glUniform1i(shader.location("spacetime"), mSpacetime);
+        shader.resetUniformCalls();
+        uWSize.set((float) width, (float) height);
+        uTexColor.set(0);
+        uTexWarp.set(1);
+        uSpacetime.set(mSpacetime);
         if (mSpacetime == 0) {
-            gl.glUniform1f(shader.location("beta"), (float) beta);
+            uBeta.set((float) beta);
         } else {
-            gl.glUniform1f(shader.location("beta"),
-                    (float) (Math.log(beta + 1) / Math.log(10)));
+            uBeta.set((float) (Math.log(beta + 1)
+                    / Math.log(1 + Defs.betaMaxWarp)));
         }
-        gl.glUniform1f(shader.location("curr_pos"), (float) mCurrPos);
-        gl.glUniform1f(shader.location("def_gamma"), 1.5f);
-        gl.glUniform1f(shader.location("def_s0"), 5.0f);
-        gl.glUniform1i(shader.location("camera"), mCamera);
-        gl.glUniform1f(shader.location("fovYh"),
-                (float) Math.toRadians(Defs.PINHOLECAM_FOVY * 0.5));
-        gl.glUniformMatrix4fv(shader.location("rotmat"), 1, false,
-                rotation_matrix, 0);
-        gl.glUniformMatrix4fv(shader.location("tetrad"), 1, false,
-                tetrad_matrix, 0);
+        uCurrPos.set((float) mCurrPos);
+        uGamma.set((float) Defs.DEF_GAMMA);
+        uS0.set((float) Defs.DEF_S0);
+        uCamera.set(mCamera);
+        uFovYh.set((float) Math.toRadians(Defs.PINHOLECAM_FOVY * 0.5));
+        uRotmat.set(rotation_matrix, 0);
+        uTetrad.set(tetrad_matrix, 0);
+        t = mStats.record(FrameStats.UNIFORMS, t);
 
         drawPoints(gl);
+        mStats.record(FrameStats.DRAW, t);
 
         shader.release();
+        mUniformCalls = shader.getUniformCalls();
 
-        mWarpTex.disable(gl);
-        mSigmaTex.disable(gl);
-        mTempTex.disable(gl);
+        if (mWarpTex != null) {
+            mWarpTex.disable(gl);
+        }
+        mColorTex.disable(gl);
     }
 
-    private void drawPoints(GL2 gl) {
-
-        gl.glVertexAttribPointer(Defs.VERTEX_MAG_ARRAY, 1, GL.GL_FLOAT, false,
-                0, mAbsMag);
-        gl.glEnableVertexAttribArray(Defs.VERTEX_MAG_ARRAY);
-        gl.glVertexAttribPointer(Defs.VERTEX_TEMP_ARRAY, 1, GL.GL_FLOAT, false,
-                0, mTemps);
-        gl.glEnableVertexAttribArray(Defs.VERTEX_TEMP_ARRAY);
-
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, mVBO[0]);
-        gl.glVertexPointer(3, GL.GL_FLOAT, 0, 0);
-        gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
-
-        gl.glEnable(GL2.GL_VERTEX_PROGRAM_POINT_SIZE);
-        gl.glTexEnvi(GL2.GL_POINT_SPRITE, GL2.GL_COORD_REPLACE, GL.GL_TRUE);
-        gl.glDrawArrays(GL.GL_POINTS, 0, hipCat.getNumStars());
-        gl.glDisable(GL2.GL_VERTEX_PROGRAM_POINT_SIZE);
-
-        gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+    /**
+     * Get frame statistics, published with FrameStats.register().
+     * 
+     * @return frame statistics.
+     */
+    public FrameStats getFrameStats() {
+        return mStats;
+    }
 
-        gl.glDisableVertexAttribArray(Defs.VERTEX_MAG_ARRAY);
-        gl.glDisableVertexAttribArray(Defs.VERTEX_TEMP_ARRAY);
+    /**
+     * Get number of frames that showed the cached image because the render
+     * state did not change.
+     * 
+     * @return number of skipped frames.
+     */
+    public long getSkippedFrames() {
+        return mSkippedFrames;
     }
 
-    private void loadPsiTempTex(GL2 gl) {
-        FileInputStream fs = null;
-        DataInputStream in = null;
+    /**
+     * Forget the cached frame, so that the next frame is rendered.
+     */
+    public void invalidate() {
+        mFrameCache.invalidate();
+    }
 
-        try {
-            fs = new FileInputStream(Defs.BIN_NAME_PSITEMP);
-        } catch (FileNotFoundException e) {
-            System.err.println("FileNotFoundException: " + e.getMessage());
-            System.exit(1);
-        }
+    /**
+     * Get number of uniform calls of the last frame.
+     * 
+     * @return number of calls.
+     */
+    public int getUniformCalls() {
+        return mUniformCalls;
+    }
 
-        int tex_width = 0;
-        int tex_height = 0;
-        int num = 0;
-        int byteSize = 0;
-        byte[] array = null;
+    private void findUniforms() {
+        uWSize = shader.uniform2f("wSize");
+        uTexColor = shader.uniform1i("texColor");
+        uTexWarp = shader.uniform1i("texWarp");
+        uSpacetime = shader.uniform1i("spacetime");
+        uCamera = shader.uniform1i("camera");
+        uBeta = shader.uniform1f("beta");
+        uCurrPos = shader.uniform1f("curr_pos");
+        uGamma = shader.uniform1f("def_gamma");
+        uS0 = shader.uniform1f("def_s0");
+        uFovYh = shader.uniform1f("fovYh");
+        uRotmat = shader.uniformMatrix4f("rotmat");
+        uTetrad = shader.uniformMatrix4f("tetrad");
+    }
 
+    private void drawPoints(GL2 gl) {
+        gl.glEnable(GL2.GL_VERTEX_PROGRAM_POINT_SIZE);
+        gl.glTexEnvi(GL2.GL_POINT_SPRITE, GL2.GL_COORD_REPLACE, GL.GL_TRUE);
+        getProjectionParams(mParams);
         try {
-            byte[] head_code = new byte[4];
-            byte[] head_size = new byte[13];
-
-            in = new DataInputStream(fs);
-            in.read(head_code, 0, 4);
-            in.read(head_size, 0, 12);
-
-            // System.err.println(new String(head_code));
-            tex_width = byteArrayToInt(head_size, 0);
-            tex_height = byteArrayToInt(head_size, 4);
-            num = byteArrayToInt(head_size, 8);
-            System.err.printf("Load %s ... %d x %d x %d\n",
-                    Defs.BIN_NAME_PSITEMP, tex_width, tex_height, num);
-            if (tex_height != 1 || num != 1) {
-                System.err.println("psitemp size is wrong!");
-                System.exit(1);
-            }
-            byteSize = tex_width * tex_height * num * Float.BYTES;
-            array = new byte[byteSize];
-            in.read(array, 0, byteSize);
+            mDrawnStars = mBuffers.draw(new GL2BufferGL(gl), mParams);
         } catch (IOException e) {
-            System.err.println("Cannot read buffer");
-        }
-
-        FloatBuffer tBuf = FloatBuffer.allocate(tex_width);
-        int offset = 0;
-        for (int n = 0; n < tex_width; n++) {
-            tBuf.put(n, byteArrayToFloat(array, offset));
-            offset += 4;
-            // System.err.println(tBuf.get(n));
+            System.err.println("Cannot read catalog: " + e.getMessage());
+            System.exit(1);
         }
-
-        GLProfile glp = GLProfile.getDefault();
-        TextureData texData = new TextureData(glp, GL2.GL_ALPHA32F, tex_width,
-                tex_height, 0, GL.GL_ALPHA, GL.GL_FLOAT, false, false, false,
-                tBuf, null);
-        mTempTex = TextureIO.newTexture(texData);
-        mTempTex.setTexParameteri(gl, GL2.GL_TEXTURE_WRAP_S, GL2.GL_CLAMP);
-        mTempTex.setTexParameteri(gl, GL2.GL_TEXTURE_WRAP_T, GL2.GL_CLAMP);
+        gl.glDisable(GL2.GL_VERTEX_PROGRAM_POINT_SIZE);
     }
 
     /**
-     * Load sigma texture.
+     * Build the color table for the current gamma from the psi temperature
+     * and sigma tables, and load it as texture.
      * 
      * @param gl
      *            : opengl.
      */
-    private void loadSigmaTex(GL2 gl) {
-        FileInputStream fs = null;
-        DataInputStream in = null;
-
-        try {
-            fs = new FileInputStream(Defs.BIN_NAME_SIGMA);
-        } catch (FileNotFoundException e) {
-            System.err.println("FileNotFoundException: " + e.getMessage());
+    private void loadColorTex(GL2 gl) {
+        printTable(mPsiTempTable);
+        if (mPsiTempTable.getHeight() != 1 || mPsiTempTable.getNum() != 1) {
+            System.err.println("psitemp size is wrong!");
             System.exit(1);
         }
-
-        int tex_width = 0;
-        int tex_height = 0;
-        int num = 0;
-        int byteSize = 0;
-        byte[] array = null;
-
-        try {
-            byte[] head_code = new byte[4];
-            byte[] head_size = new byte[13];
-
-            in = new DataInputStream(fs);
-            in.read(head_code, 0, 4);
-            in.read(head_size, 0, 12);
-            // System.err.println(new String(head_code));
-            tex_width = byteArrayToInt(head_size, 0);
-            tex_height = byteArrayToInt(head_size, 4);
-            num = byteArrayToInt(head_size, 8);
-            System.err.printf("Load %s ... %d x %d x %d\n",
-                    Defs.BIN_NAME_SIGMA, tex_width, tex_height, num);
-
-            byteSize = tex_width * tex_height * num * Float.BYTES;
-            array = new byte[byteSize];
-            in.read(array, 0, byteSize);
-        } catch (IOException e) {
-            System.err.println("Cannot read buffer");
-        }
-
-        FloatBuffer tBuf = FloatBuffer.allocate(tex_width * tex_height * num);
-        int offset = 0;
-        for (int n = 0; n < tex_width * tex_height * num; n++) {
-            tBuf.put(n, byteArrayToFloat(array, offset));
-            offset += 4;
-            // System.err.println(tBuf.get(n));
-        }
-
-        GLProfile glp = GLProfile.getDefault();
-        TextureData texData = new TextureData(glp, GL2.GL_RGB32F, tex_width,
-                tex_height, 0, GL.GL_RGB, GL.GL_FLOAT, false, false, false,
-                tBuf, null);
-        mSigmaTex = TextureIO.newTexture(texData);
-        mSigmaTex.setTexParameteri(gl, GL2.GL_TEXTURE_WRAP_S, GL2.GL_CLAMP);
-        mSigmaTex.setTexParameteri(gl, GL2.GL_TEXTURE_WRAP_T, GL2.GL_CLAMP);
+        printTable(mSigmaTable);
+        StartupTimeline.Stage stage = assets.getTimeline().begin(
+                "build color table");
+        mColorTable = new ColorTable(mPsiTempTable, mSigmaTable,
+                (float) Defs.DEF_GAMMA, ForkJoinPool.commonPool());
+        stage.end();
+        mColorTex = newTexture("color", mColorTable.getWidth(),
+                mColorTable.getHeight(), mColorTable.getData(),
+                GL2.GL_RGB32F, GL.GL_RGB);
+        mColorTex.setTexParameteri(gl, GL2.GL_TEXTURE_WRAP_S, GL2.GL_CLAMP);
+        mColorTex.setTexParameteri(gl, GL2.GL_TEXTURE_WRAP_T, GL2.GL_CLAMP);
     }
 
     /**
      * Load distortion texture for warp metric.
      * 
+     * @param gl
+     *            : opengl.
+     * @param table
+     *            : warp distortion table.
      */
-    private void loadWarpTex(GL2 gl) {
-        FileInputStream fs = null;
-        DataInputStream in = null;
-
-        try {
-            fs = new FileInputStream(Defs.BIN_NAME_WARP);
-        } catch (FileNotFoundException e) {
-            System.err.println("FileNotFoundException: " + e.getMessage());
-            System.exit(1);
-        }
-
-        int tex_width = 0;
-        int tex_height = 0;
-        int num = 0;
-        int byteSize = 0;
-        byte[] array = null;
-
-        try {
-            byte[] head_code = new byte[4];
-            byte[] head_size = new byte[13];
-
-            in = new DataInputStream(fs);
-            in.read(head_code, 0, 4);
-            in.read(head_size, 0, 12);
-
-            // System.err.println(new String(head_code));
-            tex_width = byteArrayToInt(head_size, 0);
-            tex_height = byteArrayToInt(head_size, 4);
-            num = byteArrayToInt(head_size, 8);
-            System.err.printf("Load %s ... %d x %d x %d\n", Defs.BIN_NAME_WARP,
-                    tex_width, tex_height, num);
-
-            byteSize = tex_width * tex_height * num * Float.BYTES;
-            array = new byte[byteSize];
-            in.read(array, 0, byteSize);
-        } catch (IOException e) {
-            System.err.println("Cannot read buffer");
-        }
-
-        FloatBuffer tBuf = FloatBuffer.allocate(tex_width * tex_height * num);
-        int offset = 0;
-        for (int n = 0; n < tex_width * tex_height * num; n++) {
-            tBuf.put(n, byteArrayToFloat(array, offset));
-            offset += 4;
-            // System.err.println(tBuf.get(n));
-            // if (n==10) System.exit(1);
-        }
-
-        GLProfile glp = GLProfile.getDefault();
-        TextureData texData = new TextureData(glp, GL2.GL_RGB32F, tex_width,
-                tex_height, 0, GL.GL_RGB, GL.GL_FLOAT, false, false, false,
-                tBuf, null);
-        mWarpTex = TextureIO.newTexture(texData);
+    private void loadWarpTex(GL2 gl, TextureTable table) {
+        printTable(table);
+        mWarpTex = newTexture(table, GL2.GL_RGB32F, GL.GL_RGB);
         mWarpTex.setTexParameteri(gl, GL.GL_TEXTURE_WRAP_S, GL2.GL_CLAMP);
         mWarpTex.setTexParameteri(gl, GL.GL_TEXTURE_WRAP_T, GL2.GL_CLAMP);
         mWarpTex.setTexParameteri(gl, GL.GL_TEXTURE_MIN_FILTER, GL.GL_LINEAR);
         mWarpTex.setTexParameteri(gl, GL.GL_TEXTURE_MAG_FILTER, GL.GL_LINEAR);
     }
 
-    /**
-     * Convert byte array into float value.
-     * 
-     * @param b
-     *            : byte array.
-     * @param offset
-     *            : offset for array access.
-     * @return float value.
-     */
-    private float byteArrayToFloat(byte[] b, int offset) {
-        int accum = 0;
-        for (int shiftBy = 0, i = 0; shiftBy < 32; i++, shiftBy += 8) {
-            accum |= ((int) (b[offset + i] & 0xff)) << shiftBy;
-        }
-        return Float.intBitsToFloat(accum);
+    private void printTable(TextureTable table) {
+        System.err.printf("Load %s ... %d x %d x %d\n", table.getFilename(),
+                table.getWidth(), table.getHeight(), table.getNum());
     }
 
     /**
-     * Convert byte array into integer value.
+     * Create float texture from texture table.
      * 
-     * @param b
-     *            : byte array.
-     * @param offset
-     *            : offset for array access.
-     * @return integer value.
+     * @param table
+     *            : texture table.
+     * @param internalFormat
+     *            : internal texture format.
+     * @param format
+     *            : pixel format.
+     * @return texture.
      */
-    private int byteArrayToInt(byte[] b, int offset) {
-        int accum = 0;
-        for (int shiftBy = 0, i = 0; shiftBy < 32; i++, shiftBy += 8) {
-            accum |= ((int) (b[offset + i] & 0xff)) << shiftBy;
-        }
-        return accum;
+    private Texture newTexture(TextureTable table, int internalFormat,
+            int format) {
+        return newTexture(AssetLoader.baseName(table.getFilename()),
+                table.getWidth(), table.getHeight(), table.getData(),
+                internalFormat, format);
     }
 
     /**
-     * Create vertex buffer object.
+     * Create float texture.
      * 
-     * @param gl
-     *            : opengl.
+     * @param name
+     *            : name for the startup timeline.
+     * @param width
+     *            : texture width.
+     * @param height
+     *            : texture height.
+     * @param data
+     *            : texture data.
+     * @param internalFormat
+     *            : internal texture format.
+     * @param format
+     *            : pixel format.
+     * @return texture.
      */
-    private void createVBO(GL gl) {
-        gl.glGenBuffers(1, mVBO, 0);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, mVBO[0]);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, mVertices.capacity() * Float.BYTES,
-                mVertices, GL.GL_STATIC_DRAW);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+    private Texture newTexture(String name, int width, int height,
+            FloatBuffer data, int internalFormat, int format) {
+        StartupTimeline.Stage stage = assets.getTimeline().begin(
+                "upload " + name);
+        GLProfile glp = GLProfile.getDefault();
+        TextureData texData = new TextureData(glp, internalFormat, width,
+                height, 0, format, GL.GL_FLOAT, false, false, false, data,
+                null);
+        Texture tex = TextureIO.newTexture(texData);
+        stage.end();
+        return tex;
     }
 
     /**
@@ -456,15 +482,7 @@ public class GLRenderer implements GLEventListener {
      *            : rotation angle.
      */
     public void setRotMatrix(double alpha, double beta) {
-        rotation_matrix[0] = (float) (Math.cos(alpha) * Math.cos(beta));
-        rotation_matrix[1] = (float) (Math.cos(alpha) * Math.sin(beta));
-        rotation_matrix[2] = (float) (Math.sin(alpha));
-        rotation_matrix[4] = -(float) (Math.sin(beta));
-        rotation_matrix[5] = (float) (Math.cos(beta));
-        rotation_matrix[6] = 0.0f;
-        rotation_matrix[8] = -(float) (Math.sin(alpha) * Math.cos(beta));
-        rotation_matrix[9] = -(float) (Math.sin(alpha) * Math.sin(beta));
-        rotation_matrix[10] = (float) Math.cos(alpha);
+        ProjectionParams.rotationMatrix(alpha, beta, rotation_matrix);
     }
 
     /**
@@ -550,15 +568,57 @@ public class GLRenderer implements GLEventListener {
         return mCurrPos;
     }
 
+    /**
+     * Select spacetime. The warp table is loaded when warp is selected for
+     * the first time; until it is available, the view stays in special
+     * relativity.
+     * 
+     * @param spacetime
+     *            : Minkowski=0, Warp=1.
+     */
     public void setSpacetime(int spacetime) {
-        if (spacetime == 0 || spacetime == 1) {
+        if (spacetime == 1 && mWarpTex == null) {
+            mWarpPending = true;
+            assets.requestWarpTable(mWarpLoaded);
+        } else if (spacetime == 0 || spacetime == 1) {
+            mWarpPending = false;
             mSpacetime = spacetime;
         }
     }
 
+    /**
+     * Set action for the end of the warp table loading, e.g. a repaint.
+     * 
+     * @param loaded
+     *            : called on the loader thread.
+     */
+    public void setWarpLoadedListener(Runnable loaded) {
+        mWarpLoaded = loaded;
+    }
+
     public void setCamera(int camera) {
         if (camera == 0 || camera == 1) {
             mCamera = camera;
         }
     }
+
+    /**
+     * Get current projection parameters for the CPU star projection.
+     * 
+     * @param p
+     *            : parameters to be filled.
+     * @return parameters.
+     */
+    public ProjectionParams getProjectionParams(ProjectionParams p) {
+        System.arraycopy(rotation_matrix, 0, p.rotmat, 0, 16);
+        System.arraycopy(tetrad_matrix, 0, p.tetrad, 0, 16);
+        p.beta = beta;
+        p.currPos = mCurrPos;
+        p.spacetime = mSpacetime;
+        p.camera = mCamera;
+        p.width = width;
+        p.height = height;
+        p.fovY = Defs.PINHOLECAM_FOVY;
+        return p;
+    }
 }
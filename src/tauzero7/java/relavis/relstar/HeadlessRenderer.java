@@ -0,0 +1,168 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Render star field images without OpenGL. The CPU projection and
+ * rasterization reproduce the shaders of the GLRenderer, so this can be
+ * used on machines without a GPU and as reference for the GPU images.
+ */
+public class HeadlessRenderer {
+    private final ChunkedCatalog     catalog;
+    private final StarProjector      projector;
+    private final SoftwareRasterizer rasterizer;
+    private final ProjectedStars     stars;
+    private final SkyIndex.Ranges    ranges = new SkyIndex.Ranges();
+
+    /**
+     * Headless renderer.
+     * 
+     * @param catalog
+     *            : star catalog, rendered chunk by chunk. Only stars that
+     *            can pass the magnitude limit are projected if the catalog
+     *            is sorted by brightness.
+     * @param psiTemp
+     *            : psi temperature table.
+     * @param sigma
+     *            : sigma table.
+     * @param warp
+     *            : warp distortion table, may be null for Minkowski only.
+     * @param pool
+     *            : fork-join pool.
+     */
+    public HeadlessRenderer(ChunkedCatalog catalog, TextureTable psiTemp,
+            TextureTable sigma, TextureTable warp, ForkJoinPool pool) {
+        this.catalog = catalog;
+        this.projector = new StarProjector(pool, warp);
+        this.rasterizer = new SoftwareRasterizer(psiTemp, sigma, pool);
+        this.stars = new ProjectedStars(catalog.getNumChunks() > 0 ? catalog
+                .getChunkLength(0) : 0);
+    }
+
+    public StarProjector getProjector() {
+        return projector;
+    }
+
+    public SoftwareRasterizer getRasterizer() {
+        return rasterizer;
+    }
+
+    /**
+     * Render one frame.
+     * 
+     * @param params
+     *            : projection parameters, width and height must match the
+     *            framebuffer.
+     * @param fb
+     *            : framebuffer.
+     * @return number of visible stars.
+     * @throws IOException
+     *             if a chunk cannot be read.
+     */
+    public long render(ProjectionParams params, Framebuffer fb)
+            throws IOException {
+        ChunkedCatalog bright = catalog.brightest(Defs.MAX_APPMAG);
+        long numVisible = 0;
+        if (bright.getNumChunks() == 0) {
+            fb.clear();
+        }
+        for (int k = 0; k < bright.getNumChunks(); k++) {
+            projector.project(bright, k, params, stars, ranges);
+            rasterizer.render(stars, params.camera, fb, k == 0);
+            numVisible += stars.getNumVisible();
+        }
+        return numVisible;
+    }
+
+    /**
+     * Render a single image.
+     * 
+     * Usage: HeadlessRenderer image.(png|pfm) [width height beta camera
+     * spacetime currPos]
+     * 
+     * @param args
+     *            : command line arguments.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: HeadlessRenderer image.(png|pfm) "
+                    + "[width height beta camera spacetime currPos]");
+            System.exit(1);
+        }
+        ProjectionParams params = new ProjectionParams();
+        params.width = 720;
+        params.height = 576;
+        try {
+            if (args.length > 2) {
+                params.width = Integer.parseInt(args[1]);
+                params.height = Integer.parseInt(args[2]);
+            }
+            if (args.length > 3) {
+                params.beta = Double.parseDouble(args[3]);
+            }
+            if (args.length > 4) {
+                params.camera = Integer.parseInt(args[4]);
+            }
+            if (args.length > 5) {
+                params.spacetime = Integer.parseInt(args[5]);
+            }
+            if (args.length > 6) {
+                params.currPos = Double.parseDouble(args[6]);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid argument: " + e.getMessage());
+            System.exit(1);
+        }
+        if (params.spacetime == 0) {
+            params.setBoost(params.beta);
+        }
+
+        TextureTable psiTemp = null;
+        TextureTable sigma = null;
+        TextureTable warp = null;
+        try {
+            psiTemp = SpectralTables.loadPsiTemp();
+            sigma = SpectralTables.loadSigma();
+            if (params.spacetime != 0) {
+                warp = WarpTable.load();
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        ChunkedCatalog catalog = ChunkedCatalog.load();
+
+        HeadlessRenderer renderer = new HeadlessRenderer(catalog, psiTemp,
+                sigma, warp, ForkJoinPool.commonPool());
+        Framebuffer fb = new Framebuffer(params.width, params.height);
+
+        try {
+            long start = System.nanoTime();
+            long numVisible = renderer.render(params, fb);
+            System.out.println(String.format(
+                    "Rendered %d of %d stars in %.1f ms (%s kernel)",
+                    numVisible, catalog.getNumRows(),
+                    (System.nanoTime() - start) * 1e-6, renderer
+                            .getProjector().getKernel().getName()));
+
+            if (args[0].endsWith(".pfm")) {
+                fb.writePFM(args[0]);
+            } else {
+                fb.writePNG(args[0]);
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
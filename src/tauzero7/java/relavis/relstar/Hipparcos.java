@@ -10,36 +10,41 @@
 package tauzero7.java.relavis.relstar;
 
 
-import java.io.DataInputStream;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
-import java.util.Vector;
-
-import com.jogamp.common.nio.Buffers;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 public class Hipparcos {
-    private final String    filename = Defs.BIN_NAME_HIPPARCOS;
-    private final int       num_rows = 118218;
-    private final int       num_cols = 7;
-    private final int       size     = num_rows * num_cols;
+    private final String filename;
+    private final int    num_cols = 7;
 
-    private Vector<Integer> hipID    = null;
-    private Vector<Double>  ra       = null;
-    private Vector<Double>  de       = null;
-    private Vector<Double>  plx      = null;
-    private Vector<Double>  Vmag     = null;
-    private Vector<Double>  bmv      = null;
-    private Vector<Double>  temp     = null;
+    private StarCatalog  catalog  = null;
 
-    private int             numStars = 0;
+    private int          numStars = 0;
+    private long         loadTime = 0;
 
     /**
      * Hipparcos.
      * 
      */
     Hipparcos() {
+        this(Defs.BIN_NAME_HIPPARCOS);
+    }
+
+    /**
+     * Hipparcos.
+     * 
+     * @param filename
+     *            : name of Hipparcos binary file.
+     */
+    Hipparcos(String filename) {
+        this.filename = filename;
         readBinaryFile();
     }
 
@@ -52,22 +57,31 @@ public class Hipparcos {
         return numStars;
     }
 
+    /**
+     * Get star catalog.
+     * 
+     * @return catalog of all stars with positive temperature.
+     */
+    public StarCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Get time needed to load the catalog.
+     * 
+     * @return load time in nanoseconds.
+     */
+    public long getLoadTime() {
+        return loadTime;
+    }
+
     /**
      * Get position data of stars.
      * 
      * @return 3d vertices float buffer.
      */
     public FloatBuffer getVertices() {
-        // FloatBuffer verts = FloatBuffer.allocate(ra.size()*3);
-        FloatBuffer verts = Buffers.newDirectFloatBuffer(ra.size() * 3);
-        for (int i = 0; i < numStars; i++) {
-            verts.put(3 * i + 0, plx.elementAt(i).floatValue());
-            verts.put(3 * i + 1, ra.elementAt(i).floatValue() * (float) Math.PI
-                    / 180.0f);
-            verts.put(3 * i + 2, de.elementAt(i).floatValue() * (float) Math.PI
-                    / 180.0f);
-        }
-        return verts;
+        return catalog.newVertexBuffer();
     }
 
     /**
@@ -76,129 +90,82 @@ public class Hipparcos {
      * @return magnitude float buffer.
      */
     public FloatBuffer getMagnitudes() {
-        // FloatBuffer magBuf = FloatBuffer.allocate(Vmag.size());
-        FloatBuffer magBuf = Buffers.newDirectFloatBuffer(Vmag.size());
-        for (int i = 0; i < numStars; i++) {
-            float absMag = Vmag.elementAt(i).floatValue()
-                    + (float) (5.0 * Math.log(1000.0 / plx.elementAt(i))
-                            / Math.log(10.0) - 10.0);
-            magBuf.put(i, absMag);
-        }
-        return magBuf;
+        return catalog.getAbsMagColumn();
     }
 
     /**
-     * Get log of temperature of stars.
+     * Get temperature of stars.
      * 
      * @return temperature float buffer.
      */
     public FloatBuffer getTemps() {
-        // FloatBuffer tbuf = FloatBuffer.allocate(temp.size());
-        FloatBuffer tbuf = Buffers.newDirectFloatBuffer(temp.size());
-        for (int i = 0; i < numStars; i++) {
-            tbuf.put(i, temp.elementAt(i).floatValue());
-        }
-        return tbuf;
+        return catalog.getTempColumn();
     }
 
     /**
      * Read Hipparcos file in binary form.
      * 
+     * The file is mapped into memory and read as little-endian double view,
+     * so that the catalog columns are filled directly without intermediate
+     * byte array. Right ascension and declination are converted to radians,
+     * the visual magnitude to the absolute magnitude.
      */
     private void readBinaryFile() {
-        FileInputStream fs = null;
-        DataInputStream in = null;
-
-        try {
-            fs = new FileInputStream(filename);
-        } catch (FileNotFoundException e) {
+        long start = System.nanoTime();
+        Telemetry.Span span = Telemetry.get().startCatalogLoad();
+        long fileSize = 0;
+        int rejected = 0;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            long rowBytes = num_cols * Double.BYTES;
+            fileSize = channel.size();
+            int num_rows = (int) (fileSize / rowBytes);
+
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, num_rows * rowBytes);
+            DoubleBuffer data = map.order(ByteOrder.LITTLE_ENDIAN)
+                    .asDoubleBuffer();
+
+            numStars = 0;
+            int offset = 0;
+            for (int row = 0; row < num_rows; row++) {
+                // otherwise the parallax is negative
+                if (data.get(offset + 6) > 0.0) {
+                    numStars++;
+                }
+                offset += num_cols;
+            }
+            rejected = num_rows - numStars;
+
+            catalog = StarCatalog.allocate(numStars);
+            int i = 0;
+            offset = 0;
+            for (int row = 0; row < num_rows; row++) {
+                if (data.get(offset + 6) > 0.0) {
+                    double plx = data.get(offset + 3);
+                    float absMag = (float) data.get(offset + 4)
+                            + (float) (5.0 * Math.log(1000.0 / plx)
+                                    / Math.log(10.0) - 10.0);
+                    catalog.set(i++, (int) data.get(offset),
+                            (float) plx,
+                            (float) data.get(offset + 1) * (float) Math.PI
+                                    / 180.0f,
+                            (float) data.get(offset + 2) * (float) Math.PI
+                                    / 180.0f,
+                            absMag, (float) data.get(offset + 6));
+                }
+                offset += num_cols;
+            }
+        } catch (NoSuchFileException e) {
             System.err.println("FileNotFoundException: " + e.getMessage());
             System.exit(1);
-        }
-
-        /*
-         * try { int av = fs.available(); System.err.println("Size: " + av); }
-         * catch (IOException e) { }
-         */
-
-        int byteSize = size * Double.SIZE;
-        byte[] array = new byte[byteSize];
-
-        try {
-            in = new DataInputStream(fs);
-            in.read(array, 0, byteSize);
         } catch (IOException e) {
             System.err.println("Cannot read buffer");
         }
 
-        hipID = new Vector<Integer>();
-        ra = new Vector<Double>();
-        de = new Vector<Double>();
-        plx = new Vector<Double>();
-        Vmag = new Vector<Double>();
-        bmv = new Vector<Double>();
-        temp = new Vector<Double>();
-
-        int offset = 0;
-        double[] rowData = new double[num_cols];
-
-        numStars = 0;
-        for (int row = 0; row < num_rows; row++) {
-            convertRow(array, offset, rowData);
-            offset += num_cols * 8;
-            // otherwise the parallax is negative
-            if (rowData[6] > 0.0) {
-                hipID.add((int) rowData[0]);
-                ra.add(rowData[1]);
-                de.add(rowData[2]);
-                plx.add(rowData[3]);
-                Vmag.add(rowData[4]);
-                bmv.add(rowData[5]);
-                temp.add(rowData[6]);
-                numStars++;
-            }
-        }
-
-        try {
-            in.close();
-            fs.close();
-        } catch (IOException e) {
-        }
-    }
-
-    /**
-     * Convert data
-     * 
-     * @param a
-     *            : byte array.
-     * @param off
-     *            : offset.
-     * @param data
-     *            : double data array.
-     */
-    private void convertRow(byte[] a, int off, double[] data) {
-        int offset = off;
-        for (int i = 0; i < num_cols; i++) {
-            data[i] = byteArrayToDouble(a, offset);
-            offset += 8;
-        }
-    }
-
-    /**
-     * Convert byte array to double.
-     * 
-     * @param b
-     *            : byte array.
-     * @param offset
-     *            : offset in byte array.
-     * @return double value.
-     */
-    private double byteArrayToDouble(byte[] b, int offset) {
-        long accum = 0;
-        for (int shiftBy = 0, i = 0; shiftBy < 64; i++, shiftBy += 8) {
-            // must cast to long or the shift would be done modulo 32
-            accum |= ((long) (b[offset + i] & 0xff)) << shiftBy;
-        }
-        return Double.longBitsToDouble(accum);
+        loadTime = System.nanoTime() - start;
+        Telemetry.get().catalogLoaded(span, filename, fileSize, numStars,
+                rejected);
     }
 }
@@ -0,0 +1,67 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * One PNG or PFM image file per frame.
+ * 
+ * Encoders write to "name.part", and the commit renames the file. Since
+ * commits are in frame order, the finished files are always the frames up
+ * to the last commit, even if a render is aborted or a player reads the
+ * images while they are rendered.
+ */
+public class ImageFileSink implements FrameSink {
+    private final String pattern;
+
+    /**
+     * Image file sink.
+     * 
+     * @param pattern
+     *            : file name pattern with frame number, e.g.
+     *            "out/frame_%05d.png". Images are written as PFM if the name
+     *            ends with ".pfm", as PNG otherwise.
+     */
+    public ImageFileSink(String pattern) {
+        this.pattern = pattern;
+    }
+
+    public boolean isMapped() {
+        return false;
+    }
+
+    public Framebuffer map(int index) {
+        throw new IllegalStateException("image files are not mapped, "
+                + "render frame " + index + " into a framebuffer");
+    }
+
+    public void encode(int index, Framebuffer fb) throws IOException {
+        String filename = String.format(pattern, index);
+        if (filename.endsWith(".pfm")) {
+            fb.writePFM(filename + ".part");
+        } else {
+            fb.writePNG(filename + ".part");
+        }
+    }
+
+    public void commit(int index) throws IOException {
+        String filename = String.format(pattern, index);
+        Files.move(Paths.get(filename + ".part"), Paths.get(filename),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void close() {
+    }
+}
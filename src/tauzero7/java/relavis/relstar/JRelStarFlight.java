@@ -12,6 +12,7 @@ package tauzero7.java.relavis.relstar;
 import java.awt.BorderLayout;
 import java.awt.Container;
 import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.InputEvent;
@@ -22,6 +23,7 @@ import java.awt.event.MouseMotionListener;
 import java.text.DecimalFormat;
 import java.util.Locale;
 
+import javax.management.JMException;
 import javax.media.opengl.awt.GLCanvas;
 import javax.swing.JComboBox;
 import javax.swing.JFrame;
@@ -29,18 +31,20 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.KeyStroke;
-import javax.swing.Timer;
 import javax.swing.text.DefaultFormatterFactory;
 import javax.swing.text.NumberFormatter;
 
+import com.jogamp.opengl.util.Animator;
+
 @SuppressWarnings("serial")
 public class JRelStarFlight extends JFrame {
 
     private GLRenderer renderer;
     private MyMouseAdapter mouseAdapter;
 
-    private Timer mTimer;
-    private int mDelay = 40;
+    private FrameScheduler mScheduler;
+    private Animator mAnimator;
+    private double mPrevPos = 0.0;
     private double mCurrPos = 0.0f;
 
     private javax.media.opengl.awt.GLCanvas glCanvas;
@@ -57,7 +61,7 @@ public class JRelStarFlight extends JFrame {
     private javax.swing.JFormattedTextField jTextFieldVel;
     private javax.swing.JToggleButton jToggleButtonPlay;
 
-    public JRelStarFlight() {
+    public JRelStarFlight(AssetLoader assets) {
         Locale englishLoc = new Locale("en_US");
         Locale.setDefault(englishLoc);
         
@@ -66,28 +70,91 @@ public class JRelStarFlight extends JFrame {
         initComponents();
         setTitle("JRelStarFlight");
 
-        renderer = new GLRenderer(glCanvas.getWidth(), glCanvas.getHeight());
+        renderer = new GLRenderer(glCanvas.getWidth(), glCanvas.getHeight(),
+                assets);
         glCanvas.addGLEventListener(renderer);
+        renderer.setWarpLoadedListener(new Runnable() {
+            public void run() {
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() {
+                        // the renderer switches to warp in the next frame
+                        glCanvas.display();
+                        setVelocity(renderer.getBeta());
+                        flightChanged("spacetime");
+                    }
+                });
+            }
+        });
 
         mouseAdapter = new MyMouseAdapter(glCanvas, renderer, this);
         glCanvas.addMouseListener(mouseAdapter);
         glCanvas.addMouseMotionListener(mouseAdapter);
 
-        ActionListener taskPerformer = new ActionListener() {
-            public void actionPerformed(ActionEvent e) {
-                mCurrPos += renderer.getBeta() * Defs.timeStep;
-                jTextFieldDist.setText(String.format("%.2f", mCurrPos));
-                renderer.setCurrentPosition(mCurrPos);
-                glCanvas.repaint();
+        // the flight advances in fixed ticks, frames follow the display
+        mScheduler = new FrameScheduler(new FrameScheduler.Simulation() {
+            public void step() {
+                stepPosition();
             }
-        };
+
+            public void interpolate(double alpha) {
+                renderer.setCurrentPosition(interpolatePosition(alpha));
+            }
+        }, Defs.TICK_MILLIS, Defs.MAX_CATCHUP_TICKS);
+        mScheduler.setFrameStats(renderer.getFrameStats());
+        glCanvas.addGLEventListener(0, mScheduler);
+        mAnimator = new Animator(glCanvas);
+
+        try {
+            renderer.getFrameStats().register();
+        } catch (JMException e) {
+            System.err.println("Cannot publish frame statistics: "
+                    + e.getMessage());
+        }
 
         glCanvas.requestFocusInWindow();
-        mTimer = new Timer(mDelay, taskPerformer);
+    }
+
+    /*
+     * Advance the position by one tick.
+     */
+    private void stepPosition() {
+        final double pos;
+        synchronized (this) {
+            mPrevPos = mCurrPos;
+            mCurrPos += renderer.getBeta() * Defs.timeStep;
+            pos = mCurrPos;
+        }
+        // frame statistics about once a second
+        final boolean stats = mScheduler.getTicks()
+                % (1000 / Defs.TICK_MILLIS) == 0;
+        EventQueue.invokeLater(new Runnable() {
+            public void run() {
+                jTextFieldDist.setText(String.format("%.2f", pos));
+                if (stats) {
+                    setTitle(String.format(
+                            "JRelStarFlight - %.1f fps, jitter %.1f ms",
+                            mScheduler.getFrameRate(),
+                            mScheduler.getJitter()));
+                }
+            }
+        });
+    }
+
+    private synchronized double interpolatePosition(double alpha) {
+        return mPrevPos + alpha * (mCurrPos - mPrevPos);
+    }
+
+    /*
+     * Jump to a position.
+     */
+    private synchronized void setPosition(double pos) {
+        mPrevPos = mCurrPos = pos;
+        renderer.setCurrentPosition(pos);
     }
 
     private void close() {
-        mTimer.stop();
+        mAnimator.stop();
+        mScheduler.stop();
         super.dispose();
         System.out.println("Bye bye");
         System.exit(0);
@@ -123,6 +190,7 @@ public class JRelStarFlight extends JFrame {
                 renderer.setSpacetime(jComboBoxST.getSelectedIndex());
                 renderer.setMouseMotion(0);
                 setVelocity(renderer.getBeta());
+                flightChanged("spacetime");
                 glCanvas.repaint();
             }
         });
@@ -134,6 +202,7 @@ public class JRelStarFlight extends JFrame {
         jComboBoxCam.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
                 renderer.setCamera(jComboBoxCam.getSelectedIndex());
+                flightChanged("camera");
                 glCanvas.repaint();
             }
         });
@@ -142,12 +211,18 @@ public class JRelStarFlight extends JFrame {
         jToggleButtonPlay.setPreferredSize(new Dimension(80, 25));
         jToggleButtonPlay.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent evt) {
-                if (mTimer.isRunning()) {
-                    mTimer.stop();
+                if (mScheduler.isRunning()) {
+                    mAnimator.stop();
+                    mScheduler.stop();
+                    setTitle("JRelStarFlight");
                     jToggleButtonPlay.setText("Play");
+                    flightChanged("pause");
+                    glCanvas.repaint();
                 } else {
-                    mTimer.start();
+                    mScheduler.start(System.nanoTime());
+                    mAnimator.start();
                     jToggleButtonPlay.setText("Pause");
+                    flightChanged("play");
                 }
             }
         });
@@ -156,11 +231,11 @@ public class JRelStarFlight extends JFrame {
         jButtonReset.setPreferredSize(new Dimension(80, 25));
         jButtonReset.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent evt) {
-                mCurrPos = 0.0;
                 jTextFieldVel.setText("0.000");
                 jTextFieldDist.setText("0.000");
                 renderer.setMotion(0.0);
-                renderer.setCurrentPosition(mCurrPos);
+                setPosition(0.0);
+                flightChanged("reset");
                 glCanvas.repaint();
             }
         });
@@ -173,6 +248,7 @@ public class JRelStarFlight extends JFrame {
             public void actionPerformed(ActionEvent evt) {
                 double actBeta = renderer.setMotion(Double.parseDouble(jTextFieldVel.getText()));
                 jTextFieldVel.setText(String.format("%.3f", actBeta));
+                flightChanged("velocity");
                 glCanvas.repaint();
             }
         });
@@ -183,8 +259,8 @@ public class JRelStarFlight extends JFrame {
         jTextFieldDist.setPreferredSize(new Dimension(100, 25));
         jTextFieldDist.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent evt) {
-                mCurrPos = Double.parseDouble(jTextFieldDist.getText());
-                renderer.setCurrentPosition(mCurrPos);
+                setPosition(Double.parseDouble(jTextFieldDist.getText()));
+                flightChanged("position");
                 glCanvas.repaint();
             }
         });
@@ -248,6 +324,16 @@ public class JRelStarFlight extends JFrame {
         setSize(1200, 700);
     }
 
+    /*
+     * Report a change of the flight state to the telemetry.
+     */
+    void flightChanged(String change) {
+        ProjectionParams p = renderer.getProjectionParams(
+                new ProjectionParams());
+        Telemetry.get().flightChanged(change, p.beta, p.currPos, p.spacetime,
+                p.camera);
+    }
+
     public void setVelocity(double beta) {
         jTextFieldVel.setText(String.format("%.2f", beta));
     }
@@ -256,10 +342,14 @@ public class JRelStarFlight extends JFrame {
      * main method
      */
     public static void main(String[] args) {
+        // start loading the data before any window exists
+        final AssetLoader assets = new AssetLoader(new StartupTimeline());
+        assets.start();
+
         java.awt.EventQueue.invokeLater(new Runnable() {
             @Override
             public void run() {
-                new JRelStarFlight().setVisible(true);
+                new JRelStarFlight(assets).setVisible(true);
             }
         });
     }
@@ -315,6 +405,9 @@ class MyMouseAdapter extends MouseAdapter implements MouseMotionListener {
 
     @Override
     public void mouseReleased(MouseEvent e) {
+        if (button == MouseEvent.BUTTON3) {
+            relstar.flightChanged("velocity");
+        }
         button = MouseEvent.NOBUTTON;
         this.canvas.repaint();
         super.mouseReleased(e);
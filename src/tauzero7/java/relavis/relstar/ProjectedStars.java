@@ -0,0 +1,71 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+/**
+ * Result of the star projection, i.e. the outputs of the vertex shader.
+ * The arrays are allocated once and reused for every frame.
+ */
+public class ProjectedStars {
+    public final float[]   x;         // window coordinates
+    public final float[]   y;
+    public final float[]   appMag;
+    public final float[]   logTemp;
+    public final float[]   oneOverMu;
+    public final boolean[] visible;   // point size is not zero
+
+    private int            count = 0;
+
+    /**
+     * Projected stars.
+     * 
+     * @param capacity
+     *            : maximum number of stars.
+     */
+    public ProjectedStars(int capacity) {
+        x = new float[capacity];
+        y = new float[capacity];
+        appMag = new float[capacity];
+        logTemp = new float[capacity];
+        oneOverMu = new float[capacity];
+        visible = new boolean[capacity];
+    }
+
+    public int getCapacity() {
+        return x.length;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        if (count > x.length) {
+            throw new IllegalArgumentException(count + " stars exceed "
+                    + "capacity " + x.length);
+        }
+        this.count = count;
+    }
+
+    /**
+     * Count visible stars.
+     * 
+     * @return number of stars with non-zero point size.
+     */
+    public int getNumVisible() {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (visible[i]) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+/**
+ * Kernel that projects a range of stars, see StarProjector.
+ * 
+ * The scalar kernel is always available. The SIMD kernel in src-vector
+ * uses the incubating Java Vector API (JDK 16 or later); it is built by the
+ * 'build-vector' target and only works if the JVM is started with
+ * '--add-modules jdk.incubator.vector'. Otherwise load() falls back to the
+ * scalar kernel. The system property 'relstar.kernel=scalar' forces the
+ * scalar kernel.
+ */
+public abstract class ProjectionKernel {
+    public static final String VECTOR_KERNEL =
+            "tauzero7.java.relavis.relstar.VectorProjectionKernel";
+
+    private static ProjectionKernel best;
+
+    /**
+     * Project a range of stars.
+     * 
+     * @param catalog
+     *            : star catalog.
+     * @param from
+     *            : first star.
+     * @param to
+     *            : end of range (exclusive).
+     * @param p
+     *            : projection parameters.
+     * @param warp
+     *            : warp distortion table.
+     * @param out
+     *            : output, indexed like the catalog.
+     */
+    public abstract void project(StarCatalog catalog, int from, int to,
+            ProjectionParams p, TextureTable warp, ProjectedStars out);
+
+    /**
+     * Project a range of stars for several views. The default reads every
+     * star once for all views, see StarProjector.projectRange().
+     * 
+     * @param catalog
+     *            : star catalog.
+     * @param from
+     *            : first star.
+     * @param to
+     *            : end of range (exclusive).
+     * @param p
+     *            : projection parameters of every view.
+     * @param warp
+     *            : warp distortion table.
+     * @param out
+     *            : output of every view, indexed like the catalog.
+     */
+    public void project(StarCatalog catalog, int from, int to,
+            ProjectionParams[] p, TextureTable warp, ProjectedStars[] out) {
+        StarProjector.projectRange(catalog, from, to, p, warp, out);
+    }
+
+    public abstract String getName();
+
+    /**
+     * Scalar kernel, a line by line translation of the vertex shader.
+     * 
+     * @return scalar kernel.
+     */
+    public static ProjectionKernel scalar() {
+        return Scalar.INSTANCE;
+    }
+
+    /**
+     * Fastest kernel available in this JVM.
+     * 
+     * @return SIMD kernel if available, scalar kernel otherwise.
+     */
+    public static synchronized ProjectionKernel load() {
+        if (best == null) {
+            best = scalar();
+            if (!"scalar".equals(System.getProperty("relstar.kernel"))) {
+                try {
+                    best = (ProjectionKernel) Class.forName(VECTOR_KERNEL)
+                            .getDeclaredConstructor().newInstance();
+                } catch (ClassNotFoundException e) {
+                    // not built
+                } catch (Exception | LinkageError e) {
+                    // built, but the vector module is not available
+                    System.err.println("Vector kernel not available: " + e);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Scalar kernel.
+     */
+    private static class Scalar extends ProjectionKernel {
+        static final Scalar INSTANCE = new Scalar();
+
+        @Override
+        public void project(StarCatalog catalog, int from, int to,
+                ProjectionParams p, TextureTable warp, ProjectedStars out) {
+            StarProjector.projectRange(catalog, from, to, p, warp, out);
+        }
+
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.util.Arrays;
+
+/**
+ * Parameters of the star projection, i.e. the uniforms of the vertex
+ * shader. Matrices are stored column-major like in OpenGL.
+ */
+public class ProjectionParams {
+    public final float[] rotmat     = { 1.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f,
+            0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f };
+    public final float[] tetrad     = { 1.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f,
+            0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f };
+
+    public double        beta       = 0.0;
+    public double        currPos    = 0.0;
+    public int           spacetime  = 0;  // Minkowski=0, Warp=1
+    public int           camera     = 0;  // 4pi=0, Pinhole=1, Fisheye=2, Cube=3
+    public int           face       = 0;  // cube face, see cubeFaces()
+    public int           width      = 1;
+    public int           height     = 1;
+    public double        fovY       = Defs.PINHOLECAM_FOVY;
+    public double        fisheyeFov = Defs.FISHEYE_FOV;
+
+    /**
+     * Copy parameters.
+     * 
+     * @param p
+     *            : source parameters.
+     * @return this.
+     */
+    public ProjectionParams set(ProjectionParams p) {
+        System.arraycopy(p.rotmat, 0, rotmat, 0, 16);
+        System.arraycopy(p.tetrad, 0, tetrad, 0, 16);
+        beta = p.beta;
+        currPos = p.currPos;
+        spacetime = p.spacetime;
+        camera = p.camera;
+        face = p.face;
+        width = p.width;
+        height = p.height;
+        fovY = p.fovY;
+        fisheyeFov = p.fisheyeFov;
+        return this;
+    }
+
+    /**
+     * Compare parameters.
+     * 
+     * @param p
+     *            : other parameters.
+     * @return true if both give the same image.
+     */
+    public boolean sameAs(ProjectionParams p) {
+        return Arrays.equals(rotmat, p.rotmat)
+                && Arrays.equals(tetrad, p.tetrad) && beta == p.beta
+                && currPos == p.currPos && spacetime == p.spacetime
+                && camera == p.camera && face == p.face
+                && width == p.width && height == p.height && fovY == p.fovY
+                && fisheyeFov == p.fisheyeFov;
+    }
+
+    /**
+     * Set rotation matrix.
+     * 
+     * @param alpha
+     *            : rotation angle.
+     * @param beta
+     *            : rotation angle.
+     */
+    public void setRotation(double alpha, double beta) {
+        rotationMatrix(alpha, beta, rotmat);
+    }
+
+    /**
+     * Fill rotation matrix of the camera, column-major.
+     * 
+     * @param alpha
+     *            : rotation angle.
+     * @param beta
+     *            : rotation angle.
+     * @param m
+     *            : 4x4 matrix, only the upper 3x3 part is written.
+     */
+    public static void rotationMatrix(double alpha, double beta, float[] m) {
+        m[0] = (float) (Math.cos(alpha) * Math.cos(beta));
+        m[1] = (float) (Math.cos(alpha) * Math.sin(beta));
+        m[2] = (float) (Math.sin(alpha));
+        m[4] = -(float) (Math.sin(beta));
+        m[5] = (float) (Math.cos(beta));
+        m[6] = 0.0f;
+        m[8] = -(float) (Math.sin(alpha) * Math.cos(beta));
+        m[9] = -(float) (Math.sin(alpha) * Math.sin(beta));
+        m[10] = (float) Math.cos(alpha);
+    }
+
+    /**
+     * Set tetrad for a boost along the x-axis.
+     * 
+     * @param b
+     *            : velocity in units of c.
+     */
+    public void setBoost(double b) {
+        double gamma = 1.0 / Math.sqrt(1.0 - b * b);
+        tetrad[0] = (float) gamma;
+        tetrad[1] = -(float) (gamma * b);
+        tetrad[4] = -(float) (gamma * b);
+        tetrad[5] = (float) gamma;
+    }
+
+    /**
+     * Value of the 'beta' uniform. For the warp metric, this is the texture
+     * coordinate of the distortion table.
+     * 
+     * @return shader beta.
+     */
+    public float shaderBeta() {
+        if (spacetime == 0) {
+            return (float) beta;
+        }
+        return (float) (Math.log(beta + 1)
+                / Math.log(1 + Defs.betaMaxWarp));
+    }
+
+    /**
+     * Parameters of the six faces of a cubemap at the position and velocity
+     * of this view. The faces are square with a field of view of 90 degrees
+     * and are seen from the observer, i.e. after aberration.
+     * 
+     * @param size
+     *            : width and height of a face in pixels.
+     * @return front, right, back, left, up and down face.
+     */
+    public ProjectionParams[] cubeFaces(int size) {
+        ProjectionParams[] faces = new ProjectionParams[6];
+        for (int f = 0; f < 6; f++) {
+            faces[f] = new ProjectionParams().set(this);
+            faces[f].camera = 3;
+            faces[f].face = f;
+            faces[f].width = size;
+            faces[f].height = size;
+        }
+        return faces;
+    }
+
+    /**
+     * Half of the vertical field of view of the pinhole camera.
+     * 
+     * @return angle in radians.
+     */
+    public float fovYh() {
+        return (float) Math.toRadians(fovY * 0.5);
+    }
+}
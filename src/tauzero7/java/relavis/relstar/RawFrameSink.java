@@ -0,0 +1,219 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * All frames of a flight in one preallocated, memory-mapped file, for later
+ * transcoding.
+ * 
+ * The file starts with a header of HEADER_SIZE bytes, followed by frames of
+ * fixed size. Header and frames are little-endian:
+ * 
+ * <pre>
+ *  0  "RSRAW001"
+ *  8  int   width
+ * 12  int   height
+ * 16  int   channels (3, RGB)
+ * 20  int   bytes per channel (4 = float, 2 = half float)
+ * 24  int   number of frames
+ * 28  int   number of committed frames
+ * </pre>
+ * 
+ * A frame has width*height RGB triples, rows bottom-up. Frames are
+ * committed in order, so a reader can process the first 'committed' frames
+ * while the flight is still rendered.
+ * 
+ * Float frames are not copied: the renderer draws into a framebuffer on the
+ * mapped frame, and encoding does nothing. Half float frames are converted
+ * by the encoders. The frames are mapped once, in segments of whole frames,
+ * since a mapping is limited to 2 GB.
+ */
+public class RawFrameSink implements FrameSink {
+    public static final int           HEADER_SIZE = 64;
+    private static final long         MAX_SEGMENT = 1L << 30;
+
+    private final int                 width;
+    private final int                 height;
+    private final int                 first;
+    private final int                 numFrames;
+    private final boolean             half;
+    private final long                frameBytes;
+    private final RandomAccessFile    file;
+    private final FileChannel         channel;
+    private final MappedByteBuffer    header;
+    private final int                 framesPerSegment;
+    private final MappedByteBuffer[]  segments;
+
+    /**
+     * Create raw frame file.
+     * 
+     * @param filename
+     *            : name of file, an existing file is overwritten.
+     * @param width
+     *            : frame width.
+     * @param height
+     *            : frame height.
+     * @param first
+     *            : number of the first frame.
+     * @param numFrames
+     *            : number of frames.
+     * @param half
+     *            : store half floats instead of floats.
+     * @throws IOException
+     *             if the file cannot be created.
+     */
+    public RawFrameSink(String filename, int width, int height, int first,
+            int numFrames, boolean half) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.first = first;
+        this.numFrames = numFrames;
+        this.half = half;
+        this.frameBytes = width * (long) height * 3 * (half ? 2 : 4);
+        if (frameBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("frame of " + width + "x"
+                    + height + " too large for raw file");
+        }
+
+        framesPerSegment = (int) Math.max(1, MAX_SEGMENT / frameBytes);
+        segments = new MappedByteBuffer[(numFrames + framesPerSegment - 1)
+                / framesPerSegment];
+        file = new RandomAccessFile(filename, "rw");
+        channel = file.getChannel();
+        try {
+            file.setLength(0);
+            file.setLength(HEADER_SIZE + numFrames * frameBytes);
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE);
+            for (int s = 0; s < segments.length; s++) {
+                long frames = Math.min(framesPerSegment, numFrames - (long) s
+                        * framesPerSegment);
+                segments[s] = channel.map(FileChannel.MapMode.READ_WRITE,
+                        HEADER_SIZE + s * framesPerSegment * frameBytes,
+                        frames * frameBytes);
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RSRAW001".getBytes("US-ASCII"));
+        header.putInt(width).putInt(height).putInt(3).putInt(half ? 2 : 4);
+        header.putInt(numFrames).putInt(0);
+    }
+
+    public boolean isMapped() {
+        return !half;
+    }
+
+    public Framebuffer map(int index) throws IOException {
+        return new Framebuffer(width, height, mapFrame(index)
+                .asFloatBuffer());
+    }
+
+    public void encode(int index, Framebuffer fb) throws IOException {
+        if (!half) {
+            return;
+        }
+        FloatBuffer src = fb.getData();
+        ShortBuffer dst = mapFrame(index).asShortBuffer();
+        int n = width * height * 3;
+        for (int i = 0; i < n; i++) {
+            dst.put(i, toHalf(src.get(i)));
+        }
+    }
+
+    public synchronized void commit(int index) {
+        header.putInt(28, index - first + 1);
+    }
+
+    /**
+     * Write the mapped header and frames and close the file.
+     * 
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    public void close() throws IOException {
+        for (MappedByteBuffer s : segments) {
+            s.force();
+        }
+        header.force();
+        file.close();
+    }
+
+    /**
+     * View of a frame in its mapped segment. Views of different frames can
+     * be used concurrently.
+     */
+    private ByteBuffer mapFrame(int index) {
+        int slot = index - first;
+        if (slot < 0 || slot >= numFrames) {
+            throw new IllegalArgumentException("frame " + index
+                    + " outside of raw file");
+        }
+        ByteBuffer buf = segments[slot / framesPerSegment].duplicate();
+        int offset = (int) (slot % framesPerSegment * frameBytes);
+        buf.limit(offset + (int) frameBytes).position(offset);
+        return buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Convert float to IEEE 754 half float, rounding to nearest even.
+     * 
+     * @param v
+     *            : value.
+     * @return bits of the half float.
+     */
+    static short toHalf(float v) {
+        int f = Float.floatToRawIntBits(v);
+        int sign = (f >>> 16) & 0x8000;
+        int exp = (f >>> 23) & 0xff;
+        int m = f & 0x7fffff;
+        if (exp == 0xff) {
+            // infinity or NaN
+            return (short) (sign | 0x7c00 | (m != 0 ? 0x200 : 0));
+        }
+        int e = exp - 127 + 15;
+        if (e >= 0x1f) {
+            return (short) (sign | 0x7c00);
+        }
+        if (e <= 0) {
+            // subnormal half float or zero
+            if (e < -10) {
+                return (short) sign;
+            }
+            m |= 0x800000;
+            int shift = 14 - e;
+            int h = m >> shift;
+            int rest = m & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (rest > halfway || (rest == halfway && (h & 1) != 0)) {
+                h++;
+            }
+            return (short) (sign | h);
+        }
+        int h = (e << 10) | (m >> 13);
+        int rest = m & 0x1fff;
+        if (rest > 0x1000 || (rest == 0x1000 && (h & 1) != 0)) {
+            // a carry into the exponent is correct, up to infinity
+            h++;
+        }
+        return (short) (sign | h);
+    }
+}
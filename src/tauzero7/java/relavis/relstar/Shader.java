@@ -9,14 +9,29 @@
  */
 package tauzero7.java.relavis.relstar;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.media.opengl.GL2;
 
+/**
+ * Star shader program.
+ * 
+ * The active uniforms are looked up once after linking. Typed uniform
+ * handles remember the value last sent to the program and skip the call if
+ * it did not change; the values stay with the program while other programs
+ * are bound. getUniformCalls() counts the uniform calls actually issued.
+ */
 public class Shader {
-    protected GL2     gl;
-    protected boolean isLinked;
-    protected int     prog;
-    protected int     fragHandle;
-    protected int     vertHandle;
+    protected GL2                      gl;
+    protected boolean                  isLinked;
+    protected int                      prog;
+    protected int                      fragHandle;
+    protected int                      vertHandle;
+
+    private final Map<String, Integer> locations;
+    private final Map<String, Uniform> uniforms;
+    private int                        uniformCalls = 0;
 
     /**
      * Shader
@@ -28,6 +43,8 @@ public class Shader {
         this.gl = gl;
         this.isLinked = false;
         this.prog = 0;
+        this.locations = new HashMap<String, Integer>();
+        this.uniforms = new HashMap<String, Uniform>();
     }
 
     /**
@@ -37,18 +54,25 @@ public class Shader {
      *            : opengl.
      */
     public void setShaders(GL2 gl) {
+        Telemetry telemetry = Telemetry.get();
+        Telemetry.Span span = telemetry.startShaderCompile();
         vertHandle = gl.glCreateShader(GL2.GL_VERTEX_SHADER);
         String[] vt = getVertShaderString();
         gl.glShaderSource(vertHandle, 1, vt, null);
         gl.glCompileShader(vertHandle);
+        telemetry.shaderCompiled(span, "vertex", compileStatus(vertHandle));
         printInfoLog("vs", vertHandle);
 
+        span = telemetry.startShaderCompile();
         fragHandle = gl.glCreateShader(GL2.GL_FRAGMENT_SHADER);
         String[] ft = getFragShaderString();
         gl.glShaderSource(fragHandle, 1, ft, null);
         gl.glCompileShader(fragHandle);
+        telemetry.shaderCompiled(span, "fragment",
+                compileStatus(fragHandle));
         printInfoLog("fs", fragHandle);
 
+        span = telemetry.startShaderLink();
         prog = gl.glCreateProgram();
         gl.glAttachShader(prog, vertHandle);
         gl.glAttachShader(prog, fragHandle);
@@ -67,6 +91,52 @@ public class Shader {
         } else {
             isLinked = true;
         }
+        findUniforms();
+        telemetry.shaderLinked(span, isLinked, locations.size());
+    }
+
+    private boolean compileStatus(int handle) {
+        int[] status = new int[1];
+        gl.glGetObjectParameterivARB(handle,
+                GL2.GL_OBJECT_COMPILE_STATUS_ARB, status, 0);
+        return status[0] == 1;
+    }
+
+    /**
+     * Look up the locations of all active uniforms and point existing
+     * handles to the new program.
+     */
+    private void findUniforms() {
+        locations.clear();
+        if (isLinked) {
+            int[] num = new int[1];
+            int[] maxLength = new int[1];
+            gl.glGetProgramiv(prog, GL2.GL_ACTIVE_UNIFORMS, num, 0);
+            gl.glGetProgramiv(prog, GL2.GL_ACTIVE_UNIFORM_MAX_LENGTH,
+                    maxLength, 0);
+
+            byte[] name = new byte[Math.max(maxLength[0], 1)];
+            int[] length = new int[1];
+            int[] size = new int[1];
+            int[] type = new int[1];
+            for (int i = 0; i < num[0]; i++) {
+                gl.glGetActiveUniform(prog, i, name.length, length, 0, size,
+                        0, type, 0, name, 0);
+                String n = new String(name, 0, length[0]);
+                if (n.startsWith("gl_")) {
+                    continue;
+                }
+                // arrays are reported by their first element
+                if (n.endsWith("[0]")) {
+                    n = n.substring(0, n.length() - 3);
+                }
+                locations.put(n, gl.glGetUniformLocation(prog, n));
+            }
+        }
+        for (Uniform u : uniforms.values()) {
+            u.location = location(u.name);
+            u.valid = false;
+        }
     }
 
     /**
@@ -106,6 +176,7 @@ public class Shader {
         }
         isLinked = false;
         vertHandle = fragHandle = prog = 0;
+        findUniforms();
     }
 
     /**
@@ -113,10 +184,219 @@ public class Shader {
      * 
      * @param name
      *            : name of shader variable.
-     * @return uniform location index.
+     * @return uniform location index, -1 if the uniform is not active.
      */
     public int location(String name) {
-        return gl.glGetUniformLocation(prog, name);
+        Integer loc = locations.get(name);
+        return loc != null ? loc : -1;
+    }
+
+    /**
+     * Integer or sampler uniform.
+     * 
+     * @param name
+     *            : name of shader variable.
+     * @return uniform handle.
+     */
+    public Uniform1i uniform1i(String name) {
+        Uniform u = uniforms.get(name);
+        if (!(u instanceof Uniform1i)) {
+            u = new Uniform1i(name);
+            uniforms.put(name, u);
+        }
+        return (Uniform1i) u;
+    }
+
+    /**
+     * Float uniform.
+     * 
+     * @param name
+     *            : name of shader variable.
+     * @return uniform handle.
+     */
+    public Uniform1f uniform1f(String name) {
+        Uniform u = uniforms.get(name);
+        if (!(u instanceof Uniform1f)) {
+            u = new Uniform1f(name);
+            uniforms.put(name, u);
+        }
+        return (Uniform1f) u;
+    }
+
+    /**
+     * Vector uniform.
+     * 
+     * @param name
+     *            : name of shader variable.
+     * @return uniform handle.
+     */
+    public Uniform2f uniform2f(String name) {
+        Uniform u = uniforms.get(name);
+        if (!(u instanceof Uniform2f)) {
+            u = new Uniform2f(name);
+            uniforms.put(name, u);
+        }
+        return (Uniform2f) u;
+    }
+
+    /**
+     * Matrix uniform.
+     * 
+     * @param name
+     *            : name of shader variable.
+     * @return uniform handle.
+     */
+    public UniformMatrix4f uniformMatrix4f(String name) {
+        Uniform u = uniforms.get(name);
+        if (!(u instanceof UniformMatrix4f)) {
+            u = new UniformMatrix4f(name);
+            uniforms.put(name, u);
+        }
+        return (UniformMatrix4f) u;
+    }
+
+    /**
+     * Get number of uniform calls issued since the last reset.
+     * 
+     * @return number of calls.
+     */
+    public int getUniformCalls() {
+        return uniformCalls;
+    }
+
+    public void resetUniformCalls() {
+        uniformCalls = 0;
+    }
+
+    /**
+     * Uniform handle with the value last sent to the program. Values must
+     * be set while the program is bound.
+     */
+    public abstract class Uniform {
+        final String name;
+        int          location;
+        boolean      valid = false;
+
+        Uniform(String name) {
+            this.name = name;
+            this.location = location(name);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getLocation() {
+            return location;
+        }
+
+        /**
+         * Send the next value even if it did not change.
+         */
+        public void invalidate() {
+            valid = false;
+        }
+
+        /**
+         * Check whether a value has to be sent.
+         */
+        boolean skip() {
+            return location < 0 || !isLinked;
+        }
+
+        void sent() {
+            valid = true;
+            uniformCalls++;
+        }
+    }
+
+    public class Uniform1i extends Uniform {
+        private int value;
+
+        Uniform1i(String name) {
+            super(name);
+        }
+
+        public void set(int v) {
+            if (skip() || (valid && v == value)) {
+                return;
+            }
+            gl.glUniform1i(location, v);
+            value = v;
+            sent();
+        }
+    }
+
+    public class Uniform1f extends Uniform {
+        private float value;
+
+        Uniform1f(String name) {
+            super(name);
+        }
+
+        public void set(float v) {
+            if (skip() || (valid && Float.compare(v, value) == 0)) {
+                return;
+            }
+            gl.glUniform1f(location, v);
+            value = v;
+            sent();
+        }
+    }
+
+    public class Uniform2f extends Uniform {
+        private float x;
+        private float y;
+
+        Uniform2f(String name) {
+            super(name);
+        }
+
+        public void set(float vx, float vy) {
+            if (skip()
+                    || (valid && Float.compare(vx, x) == 0 && Float.compare(
+                            vy, y) == 0)) {
+                return;
+            }
+            gl.glUniform2f(location, vx, vy);
+            x = vx;
+            y = vy;
+            sent();
+        }
+    }
+
+    public class UniformMatrix4f extends Uniform {
+        private final float[] value = new float[16];
+
+        UniformMatrix4f(String name) {
+            super(name);
+        }
+
+        /**
+         * Set column-major matrix.
+         * 
+         * @param m
+         *            : matrix.
+         * @param offset
+         *            : index of first element.
+         */
+        public void set(float[] m, int offset) {
+            if (skip() || (valid && equal(m, offset))) {
+                return;
+            }
+            gl.glUniformMatrix4fv(location, 1, false, m, offset);
+            System.arraycopy(m, offset, value, 0, 16);
+            sent();
+        }
+
+        private boolean equal(float[] m, int offset) {
+            for (int i = 0; i < 16; i++) {
+                if (Float.compare(m[offset + i], value[i]) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 
     /**
@@ -168,6 +448,12 @@ public class Shader {
         text[0] += "#define PI_2     1.57079633\n";
         text[0] += "#define invPI    0.31830989\n";
         text[0] += "#define invTwoPI 0.15915494\n";
+        text[0] += "#define DEF_APPMAG_FACTOR_4PI "
+                + ColorTable.DEF_APPMAG_FACTOR_4PI + "\n";
+        text[0] += "#define DEF_APPMAG_FACTOR_PIN "
+                + ColorTable.DEF_APPMAG_FACTOR_PIN + "\n";
+        text[0] += "#define minTemp  " + ColorTable.minTemp + "\n";
+        text[0] += "#define tempRange " + ColorTable.tempRange + "\n";
 
         text[0] += "attribute float  absMag;";
         text[0] += "attribute float  starTemp;";
@@ -184,9 +470,11 @@ public class Shader {
         text[0] += "uniform   mat4  rotmat;";
         text[0] += "uniform   mat4  tetrad;";
 
-        text[0] += "varying   float appMag;";
-        text[0] += "varying   float logTemp;";
-        text[0] += "varying   float one_over_mu;";
+        text[0] += "uniform  float def_gamma;";
+        text[0] += "uniform  float def_s0;";
+
+        text[0] += "varying   float tempPos;";
+        text[0] += "varying   float brightness;";
 
         text[0] += "void transCartSphere( const vec3 p, inout float theta, inout float phi )\n";
         text[0] += "{\n";
@@ -242,7 +530,7 @@ public class Shader {
         // light vector in global system
         text[0] += "  vec4 k = vec4(1.0,-normalize(ldir));";
         text[0] += "  float omega = 1.0;";
-        text[0] += "  one_over_mu = 1.0;";
+        text[0] += "  float one_over_mu = 1.0;";
         text[0] += "  int validPoint = 1;";
 
         // light vector in observer system (Minkowski)
@@ -259,120 +547,58 @@ public class Shader {
         text[0] += "  } else {\n";
         text[0] += "    float d = wSize.y*0.5/tan(fovYh);";
         text[0] += "    vec3 v = vec3(cos(dec)*cos(ra),cos(dec)*sin(ra),sin(dec));";
-        text[0] += "    if (v.x>0.0)\n";
+        text[0] += "    if (v.x>0.0) {\n";
         text[0] += "      vert.xy = vec2(wSize.x*0.5-d*v.y/v.x,wSize.y*0.5+d*v.z/v.x);";
-        text[0] += "    else\n";
+        text[0] += "    } else {\n";
         text[0] += "      vert.xy = vec2(0,0);";
+        text[0] += "      validPoint = 0;";
+        text[0] += "    }\n";
         text[0] += "  }\n";
 
         text[0] += "  gl_Position = gl_ModelViewProjectionMatrix*vert;";
 
-        text[0] += "  logTemp = log( starTemp*omega )*edlg10;";
-        text[0] += "  appMag = absMag + 10.0 - 5.0*log(psc)*edlg10;";
+        text[0] += "  float logTemp = log( starTemp*omega )*edlg10;";
+        text[0] += "  float appMag = absMag + 10.0 - 5.0*log(psc)*edlg10;";
 
-        text[0] += "  if (appMag>14.0 || validPoint==0)\n";
+        // color of the table times pow(brightness,1/gamma), see ColorTable
+        text[0] += "  tempPos = clamp((logTemp - minTemp)/tempRange,0.0,0.9999);";
+        text[0] += "  float unlensed = pow(10.0,DEF_APPMAG_FACTOR_4PI*appMag)*def_s0;";
+        text[0] += "  if (camera==1) {\n";
+        text[0] += "    unlensed = pow(10.0,DEF_APPMAG_FACTOR_PIN*appMag)*def_s0;";
+        text[0] += "  }\n";
+        text[0] += "  brightness = pow( unlensed/one_over_mu, 1.0/def_gamma );";
+
+        text[0] += "  if (appMag>" + Defs.MAX_APPMAG
+                + " || validPoint==0)\n";
         text[0] += "    gl_PointSize = 0.0;";
         text[0] += "  else\n";
-        text[0] += "    gl_PointSize = 10.0;";
+        text[0] += "    gl_PointSize = " + Defs.POINT_SIZE + ";";
         text[0] += "}";
         return text;
     }
 
     /**
-     * Fragment shader.
+     * Fragment shader. The XYZ to RGB conversion and the gamma correction
+     * are part of the color table.
      * 
      * @return shader text.
      */
     protected String[] getFragShaderString() {
         String[] text = new String[1];
         text[0] = "#version 120\n";
-        text[0] += "#define  DEF_APPMAG_FACTOR_4PI  -0.4\n";
-        text[0] += "#define  DEF_APPMAG_FACTOR_PIN  -0.3\n";
-        text[0] += "#define  DEF_gamma           1.0\n";
-        text[0] += "#define  DEF_s0              1.0\n";
-        text[0] += "#define  minTemp             3.0\n";
-        text[0] += "#define  IlluminantC_x   0.3101\n";
-        text[0] += "#define  IlluminantC_y   0.3162\n";
-
-        text[0] += "#define  IlluminantD65_x 0.3127\n";
-        text[0] += "#define  IlluminantD65_y 0.3291\n";
-
-        text[0] += "#define  IlluminantE_x   0.33333\n";
-        text[0] += "#define  IlluminantE_y   0.33333\n";
-
-        text[0] += "#define  xRed    0.7355\n";
-        text[0] += "#define  yRed    0.2645\n";
-        text[0] += "#define  xGreen  0.2658\n";
-        text[0] += "#define  yGreen  0.7243\n";
-        text[0] += "#define  xBlue   0.1669\n";
-        text[0] += "#define  yBlue   0.0085\n";
-        text[0] += "#define  xWhite  IlluminantE_x\n";
-        text[0] += "#define  yWhite  IlluminantE_y\n";
-
-        text[0] += "uniform   sampler2D  texPsiTemp;";
-        text[0] += "uniform   sampler2D  texSigma;";
-
-        text[0] += "uniform   int  spacetime;"; // Minkowski=0, Warp=1
-        text[0] += "uniform   int  camera;"; // 4pi=0, Pinhole=1
-
-        text[0] += "uniform  float def_gamma;";
-        text[0] += "uniform  float def_s0;";
-
-        text[0] += "varying   float logTemp;";
-        text[0] += "varying   float appMag;";
-        text[0] += "varying   float one_over_mu;";
-
-        text[0] += "void  xyz_to_rgb( in vec3 xc, out vec3 rgb )\n";
-        text[0] += "{\n";
-        text[0] += "  vec3 xx = vec3( xRed, xGreen, xBlue );\n";
-        text[0] += "  vec3 yy = vec3( yRed, yGreen, yBlue );\n";
-        text[0] += "  vec3 zz = vec3(1.0) - xx - yy;\n";
-
-        text[0] += "  vec3 w = vec3( xWhite, yWhite, 1.0-xWhite-yWhite );\n";
-        text[0] += "  vec3 rgbx, rgby, rgbz, rgbw;\n";
 
-        /* xyz -> rgb matric, before scaling to white */
-        text[0] += "  rgbx = yy.gbr*zz.brg - yy.brg*zz.gbr;\n";
-        text[0] += "  rgby = xx.brg*zz.gbr - xx.gbr*zz.brg;\n";
-        text[0] += "  rgbz = xx.gbr*yy.brg - xx.brg*yy.gbr;\n";
-
-        /*
-         * White scaling factors. Dividing by w.y scales the white luminance to
-         * unity, as conventional.
-         */
-        text[0] += "  rgbw = (rgbx*w.x + rgby*w.y + rgbz*w.z)/w.y;\n";
+        text[0] += "uniform   sampler2D  texColor;";
 
-        /* xyz -> rgb matrix, correctly scaled to white. */
-        text[0] += "  rgbx = rgbx/rgbw;\n";
-        text[0] += "  rgby = rgby/rgbw;\n";
-        text[0] += "  rgbz = rgbz/rgbw;\n";
-
-        text[0] += "  rgb = rgbx*xc.x + rgby*xc.y + rgbz*xc.z;\n";
-
-        text[0] += "  rgb.r = pow( rgb.r, 1.0/def_gamma );\n";
-        text[0] += "  rgb.g = pow( rgb.g, 1.0/def_gamma );\n";
-        text[0] += "  rgb.b = pow( rgb.b, 1.0/def_gamma );\n";
-        text[0] += "}\n";
+        text[0] += "varying   float tempPos;";
+        text[0] += "varying   float brightness;";
 
         text[0] += "void main()";
         text[0] += "{";
         text[0] += "  float dist = length(gl_PointCoord - vec2(0.5));";
         text[0] += "  if (dist>0.5)\n";
         text[0] += "    discard;";
-        text[0] += "  float tempPos = clamp((logTemp - minTemp)/1.7,0.0,0.9999);";
-        text[0] += "  vec3  XYZ     = texture2D( texSigma,   vec2(dist,tempPos) ).xyz;";
-        text[0] += "  float psiV    = texture2D( texPsiTemp, vec2(tempPos,0) ).a;";
-
-        text[0] += "  float unlensed = pow(10.0,DEF_APPMAG_FACTOR_4PI*appMag)/psiV*def_s0;";
-        text[0] += "  if (camera==1) {\n";
-        text[0] += "    unlensed = pow(10.0,DEF_APPMAG_FACTOR_PIN*appMag)/psiV*def_s0;";
-        text[0] += "  }\n";
-        text[0] += "  vec3  xyz      = XYZ*unlensed/one_over_mu;";
-
-        text[0] += "  vec3 rgb;";
-        text[0] += "  xyz_to_rgb( xyz, rgb );";
-        text[0] += "  vec4 color = vec4(rgb,1.0);";
-        text[0] += "  gl_FragColor = color;";
+        text[0] += "  vec3  rgb  = texture2D( texColor, vec2(dist,tempPos) ).rgb;";
+        text[0] += "  gl_FragColor = vec4(rgb*brightness,1.0);";
         text[0] += "}";
         return text;
     }
@@ -0,0 +1,384 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.util.Arrays;
+
+/**
+ * Sky partition for culling stars outside the view of the pinhole camera.
+ * 
+ * The stars are split into distance shells, the sky of every
+ * shell into the six faces of a cube, and every face into a quadtree of
+ * LEAF_LEVEL levels. The stars are copied in the order of their leaf tile,
+ * with the leaves of a quadtree node in Morton order, so every node is a
+ * contiguous range of stars. Within a tile the stars keep their order,
+ * e.g. by brightness.
+ * 
+ * The pinhole camera looks along the direction of motion, and aberration
+ * maps circles around this axis to circles around it, so the stars that
+ * can land in the viewport lie in a cone around the axis whose half angle
+ * follows from inverting the aberration formula. A node is culled if its
+ * bounding cone, widened by the parallax that the observer position causes
+ * for the nearest star of the node, does not intersect this cone. The
+ * shells keep this widening small for distant stars when the observer has
+ * left the origin.
+ */
+public class SkyIndex {
+    public static final int    LEAF_LEVEL = 5;
+
+    /**
+     * Angle added to the view cone to cover rounding, in radians.
+     */
+    public static final double MARGIN     = 1e-3;
+
+    /**
+     * Inner radii of the distance shells in light years.
+     */
+    private static final float[] SHELLS   = { 0.0f, 100.0f, 1000.0f,
+            10000.0f };
+
+    private static final int   N          = 1 << LEAF_LEVEL;
+    private static final int   NUM_LEAVES = 6 * N * N;
+
+    private final StarCatalog  catalog;
+    private final int[]        leafStart;    // star ranges of the leaves
+    private final int[]        levelOffset;  // first node of every level
+    private final float[]      nodeDir;      // bounding cone axes
+    private final float[]      nodeRadius;   // bounding cone half angles
+    private final float[]      nodeMinDist;  // nearest star of a node,
+                                             // for every shell
+
+    /**
+     * Star ranges selected for one view.
+     */
+    public static class Ranges {
+        public int[] first = new int[64];
+        public int[] count = new int[64];
+        public int   size;
+        public int   numStars;
+
+        void clear() {
+            size = 0;
+            numStars = 0;
+        }
+
+        void add(int from, int to) {
+            if (to <= from) {
+                return;
+            }
+            numStars += to - from;
+            if (size > 0 && first[size - 1] + count[size - 1] == from) {
+                count[size - 1] += to - from;
+                return;
+            }
+            if (size == first.length) {
+                first = Arrays.copyOf(first, size * 2);
+                count = Arrays.copyOf(count, size * 2);
+            }
+            first[size] = from;
+            count[size] = to - from;
+            size++;
+        }
+    }
+
+    /**
+     * Build sky index.
+     * 
+     * @param stars
+     *            : star catalog.
+     */
+    public SkyIndex(StarCatalog stars) {
+        int n = stars.getNumStars();
+        int numShells = SHELLS.length;
+
+        levelOffset = new int[LEAF_LEVEL + 2];
+        for (int l = 0; l <= LEAF_LEVEL; l++) {
+            levelOffset[l + 1] = levelOffset[l] + (6 << (2 * l));
+        }
+        int numNodes = levelOffset[LEAF_LEVEL + 1];
+        nodeDir = new float[3 * numNodes];
+        nodeRadius = new float[numNodes];
+        nodeMinDist = new float[numShells * numNodes];
+        Arrays.fill(nodeMinDist, Float.POSITIVE_INFINITY);
+
+        // sort stars by shell and leaf
+        long[] keys = new long[n];
+        float[] pos = new float[3];
+        for (int i = 0; i < n; i++) {
+            float dist = position(stars, i, pos);
+            int shell = numShells - 1;
+            while (shell > 0 && !(dist >= SHELLS[shell])) {
+                shell--;
+            }
+            int leaf = leaf(pos);
+            keys[i] = ((long) (shell * NUM_LEAVES + leaf) << 32) | i;
+            int node = shell * numNodes + levelOffset[LEAF_LEVEL] + leaf;
+            nodeMinDist[node] = Math.min(nodeMinDist[node], dist);
+        }
+        Arrays.parallelSort(keys);
+
+        catalog = StarCatalog.allocate(n);
+        leafStart = new int[numShells * NUM_LEAVES + 1];
+        for (int k = 0; k < n; k++) {
+            int i = (int) keys[k];
+            catalog.set(k, stars.hipID(i), stars.parallax(i), stars.ra(i),
+                    stars.dec(i), stars.absMag(i), stars.temp(i));
+            leafStart[(int) (keys[k] >>> 32) + 1]++;
+        }
+        for (int t = 0; t < numShells * NUM_LEAVES; t++) {
+            leafStart[t + 1] += leafStart[t];
+        }
+
+        for (int l = LEAF_LEVEL; l >= 0; l--) {
+            for (int id = 0; id < (6 << (2 * l)); id++) {
+                int node = levelOffset[l] + id;
+                nodeBounds(l, id, node);
+                for (int sh = 0; l < LEAF_LEVEL && sh < numShells; sh++) {
+                    int base = sh * numNodes;
+                    for (int c = 0; c < 4; c++) {
+                        nodeMinDist[base + node] = Math.min(nodeMinDist[base
+                                + node], nodeMinDist[base + levelOffset[l + 1]
+                                + 4 * id + c]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get stars in the order of the index.
+     * 
+     * @return star catalog.
+     */
+    public StarCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Select the stars that can land in the viewport of the pinhole camera.
+     * 
+     * @param p
+     *            : projection parameters.
+     * @param ranges
+     *            : selected star ranges of getCatalog().
+     * @return false if the index cannot cull this view (4pi camera, warp
+     *         metric), ranges is not changed then.
+     */
+    public boolean select(ProjectionParams p, Ranges ranges) {
+        if (p.camera != 1 || p.spacetime != 0) {
+            return false;
+        }
+        double view = viewAngle(p);
+
+        // the camera axis is the x-axis of the rotated frame
+        float[] m = p.rotmat;
+        double ax = m[0];
+        double ay = m[4];
+        double az = m[8];
+        double al = Math.sqrt(ax * ax + ay * ay + az * az);
+
+        ranges.clear();
+        for (int shell = 0; shell < SHELLS.length; shell++) {
+            for (int face = 0; face < 6; face++) {
+                select(shell, 0, face, ax / al, ay / al, az / al, view,
+                        Math.abs(p.currPos), ranges);
+            }
+        }
+        return true;
+    }
+
+    private void select(int shell, int level, int id, double ax, double ay,
+            double az, double view, double offset, Ranges ranges) {
+        int shift = 2 * (LEAF_LEVEL - level);
+        int leaf0 = shell * NUM_LEAVES;
+        int from = leafStart[leaf0 + (id << shift)];
+        int to = leafStart[leaf0 + ((id + 1) << shift)];
+        if (from == to) {
+            return;
+        }
+        int node = levelOffset[level] + id;
+        double dist = nodeMinDist[shell * nodeRadius.length + node];
+        double angle = 0.0;
+        double r = Math.PI;
+        if (offset < dist) {
+            // observer inside the sphere of the nearest star
+            r = nodeRadius[node] + Math.asin(offset / dist);
+            double c = ax * nodeDir[3 * node] + ay * nodeDir[3 * node + 1]
+                    + az * nodeDir[3 * node + 2];
+            angle = Math.acos(Math.max(-1.0, Math.min(1.0, c)));
+        }
+        if (angle - r > view) {
+            return;
+        }
+        if (angle + r <= view || level == LEAF_LEVEL) {
+            ranges.add(from, to);
+            return;
+        }
+        for (int k = 0; k < 4; k++) {
+            select(shell, level + 1, 4 * id + k, ax, ay, az, view, offset,
+                    ranges);
+        }
+    }
+
+    /**
+     * Half angle of the cone around the direction of motion, in the frame
+     * of the catalog, that contains the viewport of the pinhole camera
+     * including the sprite size.
+     * 
+     * @param p
+     *            : projection parameters.
+     * @return angle in radians.
+     */
+    public static double viewAngle(ProjectionParams p) {
+        double d = p.height * 0.5 / Math.tan(p.fovYh());
+        double hx = p.width * 0.5 + Defs.POINT_SIZE;
+        double hy = p.height * 0.5 + Defs.POINT_SIZE;
+        double cosObs = Math.cos(Math.atan(Math.sqrt(hx * hx + hy * hy) / d));
+
+        // inverse aberration, cos(obs) = (cos + b) / (1 + b*cos)
+        double b = -p.tetrad[1] / p.tetrad[0];
+        double cos = (cosObs - b) / (1.0 - b * cosObs);
+        return Math.min(Math.PI, Math.acos(Math.max(-1.0, Math.min(1.0,
+                cos))) + MARGIN);
+    }
+
+    /**
+     * Position of a star as in the vertex shader.
+     * 
+     * @return distance in light years, zero if the position is undefined.
+     */
+    private static float position(StarCatalog stars, int i, float[] pos) {
+        float s = 1000.0f / stars.parallax(i) * 3.26f;
+        float cd = (float) Math.cos(stars.dec(i));
+        pos[0] = cd * (float) Math.cos(stars.ra(i));
+        pos[1] = cd * (float) Math.sin(stars.ra(i));
+        pos[2] = (float) Math.sin(stars.dec(i));
+        if (Float.isInfinite(s) || Float.isNaN(s)) {
+            return 0.0f;
+        }
+        if (s < 0.0f) {
+            pos[0] = -pos[0];
+            pos[1] = -pos[1];
+            pos[2] = -pos[2];
+        }
+        return Math.abs(s);
+    }
+
+    /**
+     * Leaf tile of a direction: face, followed by the Morton code of the
+     * cell on the face.
+     */
+    private static int leaf(float[] dir) {
+        float x = dir[0];
+        float y = dir[1];
+        float z = dir[2];
+        float ax = Math.abs(x);
+        float ay = Math.abs(y);
+        float az = Math.abs(z);
+        int face;
+        float u;
+        float v;
+        if (ax >= ay && ax >= az) {
+            face = x >= 0.0f ? 0 : 1;
+            u = y / ax;
+            v = z / ax;
+        } else if (ay >= az) {
+            face = y >= 0.0f ? 2 : 3;
+            u = x / ay;
+            v = z / ay;
+        } else {
+            face = z >= 0.0f ? 4 : 5;
+            u = x / az;
+            v = y / az;
+        }
+        int i = cell(u);
+        int j = cell(v);
+        return face * N * N + morton(i, j);
+    }
+
+    private static int cell(float u) {
+        if (!(u > -1.0f)) {
+            return 0;
+        }
+        return Math.min(N - 1, (int) ((u + 1.0f) * 0.5f * N));
+    }
+
+    private static int morton(int i, int j) {
+        int code = 0;
+        for (int b = 0; b < LEAF_LEVEL; b++) {
+            code |= ((i >> b) & 1) << (2 * b);
+            code |= ((j >> b) & 1) << (2 * b + 1);
+        }
+        return code;
+    }
+
+    /**
+     * Bounding cone of a node: axis through the center of its cell and the
+     * largest angle to a corner.
+     */
+    private void nodeBounds(int level, int id, int node) {
+        int cells = 1 << level;
+        int face = id >> (2 * level);
+        int code = id & ((1 << (2 * level)) - 1);
+        int i = 0;
+        int j = 0;
+        for (int b = 0; b < level; b++) {
+            i |= ((code >> (2 * b)) & 1) << b;
+            j |= ((code >> (2 * b + 1)) & 1) << b;
+        }
+        double u0 = 2.0 * i / cells - 1.0;
+        double v0 = 2.0 * j / cells - 1.0;
+        double size = 2.0 / cells;
+
+        double[] c = new double[3];
+        facePoint(face, u0 + 0.5 * size, v0 + 0.5 * size, c);
+        nodeDir[3 * node] = (float) c[0];
+        nodeDir[3 * node + 1] = (float) c[1];
+        nodeDir[3 * node + 2] = (float) c[2];
+
+        double[] q = new double[3];
+        double minCos = 1.0;
+        for (int k = 0; k < 4; k++) {
+            facePoint(face, u0 + (k & 1) * size, v0 + (k >> 1) * size, q);
+            minCos = Math.min(minCos, c[0] * q[0] + c[1] * q[1] + c[2]
+                    * q[2]);
+        }
+        // float axis, so add a little
+        nodeRadius[node] = (float) (Math.acos(minCos) + 1e-5);
+    }
+
+    /**
+     * Unit direction of a point on a cube face.
+     */
+    private static void facePoint(int face, double u, double v, double[] d) {
+        double s = face % 2 == 0 ? 1.0 : -1.0;
+        switch (face / 2) {
+        case 0:
+            d[0] = s;
+            d[1] = u;
+            d[2] = v;
+            break;
+        case 1:
+            d[0] = u;
+            d[1] = s;
+            d[2] = v;
+            break;
+        default:
+            d[0] = u;
+            d[1] = v;
+            d[2] = s;
+            break;
+        }
+        double l = Math.sqrt(d[0] * d[0] + d[1] * d[1] + d[2] * d[2]);
+        d[0] /= l;
+        d[1] /= l;
+        d[2] /= l;
+    }
+}
@@ -0,0 +1,355 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * CPU implementation of the point sprite rasterization and the fragment
+ * shader.
+ * 
+ * Visible stars are binned into screen tiles, and the tiles are rasterized
+ * in parallel. Tiles do not overlap, so every thread writes its own part of
+ * the framebuffer. Fragments are clamped to [0,1] and added, which is what
+ * GL_ONE, GL_ONE blending does on a fixed-point color buffer. The colors
+ * come from the ColorTable of the fragment shader, which is rebuilt when
+ * the gamma changes.
+ * 
+ * Large images can be rendered into a TiledImage. Then every thread only
+ * holds the tile that it rasterizes, so the memory does not grow with the
+ * image size.
+ */
+public class SoftwareRasterizer {
+    public static final int    TILE_SIZE             = 64;
+
+    private final TextureTable psiTemp;
+    private final TextureTable sigma;
+    private final ForkJoinPool pool;
+    private ColorTable         colors                = null;
+
+    private float              gamma                 = (float) Defs.DEF_GAMMA;
+    private float              s0                    = (float) Defs.DEF_S0;
+    private float              pointSize             = (float) Defs.POINT_SIZE;
+
+    private int[]              tileStart             = new int[0];
+    private int[]              tileStars             = new int[0];
+    private ThreadLocal<Framebuffer> tileBuffer = null;
+
+    /**
+     * Software rasterizer.
+     * 
+     * @param psiTemp
+     *            : psi temperature table.
+     * @param sigma
+     *            : sigma table.
+     * @param pool
+     *            : fork-join pool.
+     */
+    public SoftwareRasterizer(TextureTable psiTemp, TextureTable sigma,
+            ForkJoinPool pool) {
+        this.psiTemp = psiTemp;
+        this.sigma = sigma;
+        this.pool = pool;
+    }
+
+    public void setGamma(float gamma) {
+        this.gamma = gamma;
+    }
+
+    public void setS0(float s0) {
+        this.s0 = s0;
+    }
+
+    /**
+     * Render projected stars.
+     * 
+     * @param stars
+     *            : projected stars.
+     * @param camera
+     *            : 4pi=0, Pinhole=1.
+     * @param fb
+     *            : framebuffer, will be cleared.
+     */
+    public void render(ProjectedStars stars, int camera, Framebuffer fb) {
+        render(stars, camera, fb, true);
+    }
+
+    /**
+     * Render projected stars, e.g. one chunk of a catalog.
+     * 
+     * @param stars
+     *            : projected stars.
+     * @param camera
+     *            : 4pi=0, Pinhole=1.
+     * @param fb
+     *            : framebuffer.
+     * @param clear
+     *            : clear the framebuffer first, otherwise the stars are
+     *            added to the image.
+     */
+    public void render(ProjectedStars stars, int camera, Framebuffer fb,
+            boolean clear) {
+        updateColors();
+        int tilesX = (fb.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesY = (fb.getHeight() + TILE_SIZE - 1) / TILE_SIZE;
+        binStars(stars, fb.getWidth(), fb.getHeight(), TILE_SIZE, tilesX,
+                tilesY);
+        pool.invoke(new TileTask(stars, camera, fb, null, clear, tilesX, 0,
+                tilesX * tilesY));
+    }
+
+    /**
+     * Render projected stars into a tiled image. The tiles are rendered in
+     * parallel; each thread uses one tile buffer.
+     * 
+     * @param stars
+     *            : projected stars.
+     * @param camera
+     *            : camera of the projection.
+     * @param image
+     *            : tiled image.
+     * @param clear
+     *            : clear the image first, otherwise the stars are added to
+     *            the image.
+     */
+    public void render(ProjectedStars stars, int camera, TiledImage image,
+            boolean clear) {
+        updateColors();
+        final int size = image.getTileSize();
+        if (tileBuffer == null || tileBuffer.get().getWidth() != size) {
+            tileBuffer = new ThreadLocal<Framebuffer>() {
+                @Override
+                protected Framebuffer initialValue() {
+                    return new Framebuffer(size, size);
+                }
+            };
+        }
+        int tilesX = image.getTilesX();
+        int tilesY = image.getTilesY();
+        binStars(stars, image.getWidth(), image.getHeight(), size, tilesX,
+                tilesY);
+        pool.invoke(new TileTask(stars, camera, null, image, clear, tilesX,
+                0, tilesX * tilesY));
+    }
+
+    private void updateColors() {
+        if (colors == null || colors.getGamma() != gamma) {
+            colors = new ColorTable(psiTemp, sigma, gamma, pool);
+        }
+    }
+
+    /**
+     * Sort visible stars into the tiles that their sprites overlap.
+     */
+    private void binStars(ProjectedStars stars, int width, int height,
+            int tileSize, int tilesX, int tilesY) {
+        int numTiles = tilesX * tilesY;
+        if (tileStart.length < numTiles + 1) {
+            tileStart = new int[numTiles + 1];
+        }
+        Arrays.fill(tileStart, 0, numTiles + 1, 0);
+
+        // count
+        int total = 0;
+        for (int i = 0; i < stars.getCount(); i++) {
+            if (stars.visible[i]) {
+                total += forTiles(stars, i, width, height, tileSize, tilesX,
+                        null);
+            }
+        }
+        for (int t = 0; t < numTiles; t++) {
+            tileStart[t + 1] += tileStart[t];
+        }
+
+        // fill
+        if (tileStars.length < total) {
+            tileStars = new int[total];
+        }
+        int[] fill = new int[numTiles];
+        System.arraycopy(tileStart, 0, fill, 0, numTiles);
+        for (int i = 0; i < stars.getCount(); i++) {
+            if (stars.visible[i]) {
+                forTiles(stars, i, width, height, tileSize, tilesX, fill);
+            }
+        }
+    }
+
+    /**
+     * Visit tiles overlapped by a star sprite. Without 'fill', the tile
+     * counts are incremented, otherwise the star is stored.
+     */
+    private int forTiles(ProjectedStars stars, int i, int width, int height,
+            int tileSize, int tilesX, int[] fill) {
+        int x0 = Math.max(firstPixel(stars.x[i]), 0);
+        int x1 = Math.min(lastPixel(stars.x[i]), width - 1);
+        int y0 = Math.max(firstPixel(stars.y[i]), 0);
+        int y1 = Math.min(lastPixel(stars.y[i]), height - 1);
+        if (x0 > x1 || y0 > y1) {
+            return 0;
+        }
+        int n = 0;
+        for (int ty = y0 / tileSize; ty <= y1 / tileSize; ty++) {
+            for (int tx = x0 / tileSize; tx <= x1 / tileSize; tx++) {
+                int t = ty * tilesX + tx;
+                if (fill == null) {
+                    tileStart[t + 1]++;
+                } else {
+                    tileStars[fill[t]++] = i;
+                }
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /*
+     * Pixels whose centers lie inside the point sprite square.
+     */
+    private int firstPixel(float v) {
+        return (int) Math.ceil(v - pointSize * 0.5f - 0.5f);
+    }
+
+    private int lastPixel(float v) {
+        return (int) Math.ceil(v + pointSize * 0.5f - 0.5f) - 1;
+    }
+
+    /**
+     * Fork-join task for a range of tiles.
+     */
+    @SuppressWarnings("serial")
+    private class TileTask extends RecursiveAction {
+        private final ProjectedStars stars;
+        private final int            camera;
+        private final Framebuffer    fb;
+        private final TiledImage     image;
+        private final boolean        clear;
+        private final int            tilesX;
+        private final int            from;
+        private final int            to;
+
+        TileTask(ProjectedStars stars, int camera, Framebuffer fb,
+                TiledImage image, boolean clear, int tilesX, int from, int to) {
+            this.stars = stars;
+            this.camera = camera;
+            this.fb = fb;
+            this.image = image;
+            this.clear = clear;
+            this.tilesX = tilesX;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int t = from; t < to; t++) {
+                    if (image == null) {
+                        renderTile(stars, camera, fb, clear, t % tilesX, t
+                                / tilesX);
+                    } else {
+                        renderTile(stars, camera, image, clear, t % tilesX, t
+                                / tilesX);
+                    }
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TileTask(stars, camera, fb, image, clear, tilesX,
+                    from, mid), new TileTask(stars, camera, fb, image, clear,
+                    tilesX, mid, to));
+        }
+    }
+
+    /**
+     * Render all stars of one tile.
+     */
+    private void renderTile(ProjectedStars stars, int camera, Framebuffer fb,
+            boolean clear, int tx, int ty) {
+        int x0 = tx * TILE_SIZE;
+        int y0 = ty * TILE_SIZE;
+        int x1 = Math.min(x0 + TILE_SIZE, fb.getWidth());
+        int y1 = Math.min(y0 + TILE_SIZE, fb.getHeight());
+        if (clear) {
+            fb.clear(x0, y0, x1, y1);
+        }
+
+        int t = ty * ((fb.getWidth() + TILE_SIZE - 1) / TILE_SIZE) + tx;
+        float[] rgb = new float[3];
+        for (int k = tileStart[t]; k < tileStart[t + 1]; k++) {
+            renderStar(stars, tileStars[k], camera, fb, 0, 0, x0, y0, x1, y1,
+                    rgb);
+        }
+    }
+
+    /**
+     * Render all stars of one tile of a tiled image in the tile buffer of
+     * the thread.
+     */
+    private void renderTile(ProjectedStars stars, int camera,
+            TiledImage image, boolean clear, int tx, int ty) {
+        int size = image.getTileSize();
+        int x0 = tx * size;
+        int y0 = ty * size;
+        int x1 = Math.min(x0 + size, image.getWidth());
+        int y1 = Math.min(y0 + size, image.getHeight());
+        Framebuffer tile = tileBuffer.get();
+        if (clear) {
+            tile.clear(0, 0, x1 - x0, y1 - y0);
+        } else {
+            image.readTile(tx, ty, tile);
+        }
+
+        int t = ty * image.getTilesX() + tx;
+        float[] rgb = new float[3];
+        for (int k = tileStart[t]; k < tileStart[t + 1]; k++) {
+            renderStar(stars, tileStars[k], camera, tile, x0, y0, x0, y0, x1,
+                    y1, rgb);
+        }
+        image.writeTile(tx, ty, tile);
+    }
+
+    /**
+     * Rasterize the part of a star sprite inside the given rectangle. The
+     * framebuffer starts at pixel (ox,oy) of the image; rgb is scratch
+     * space of the tile for the sampled colour.
+     */
+    private void renderStar(ProjectedStars stars, int i, int camera,
+            Framebuffer fb, int ox, int oy, int rx0, int ry0, int rx1,
+            int ry1, float[] rgb) {
+        float vx = stars.x[i];
+        float vy = stars.y[i];
+        int px0 = Math.max(firstPixel(vx), rx0);
+        int px1 = Math.min(lastPixel(vx), rx1 - 1);
+        int py0 = Math.max(firstPixel(vy), ry0);
+        int py1 = Math.min(lastPixel(vy), ry1 - 1);
+
+        float tempPos = ColorTable.tempPos(stars.logTemp[i]);
+        float b = ColorTable.brightness(stars.appMag[i], stars.oneOverMu[i],
+                camera, s0, gamma);
+
+        for (int py = py0; py <= py1; py++) {
+            float pt = 0.5f - (py + 0.5f - vy) / pointSize;
+            for (int px = px0; px <= px1; px++) {
+                float ps = 0.5f + (px + 0.5f - vx) / pointSize;
+                float ds = ps - 0.5f;
+                float dt = pt - 0.5f;
+                float dist = (float) Math.sqrt(ds * ds + dt * dt);
+                if (dist > 0.5f) {
+                    continue;
+                }
+                colors.sample(dist, tempPos, rgb);
+                fb.add(px - ox, py - oy, Math.min(1.0f, rgb[0] * b), Math
+                        .min(1.0f, rgb[1] * b), Math.min(1.0f, rgb[2] * b));
+            }
+        }
+    }
+}
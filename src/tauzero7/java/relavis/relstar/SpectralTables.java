@@ -0,0 +1,471 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generator of the sigma and psitemp tables of the fragment shader.
+ * 
+ * A star of temperature T has the Planck spectrum B(lambda,T). Seen
+ * through a circular aperture, every wavelength forms the Fraunhofer
+ * pattern (2 J1(x)/x)^2 with x = pi APERTURE r / lambda, where r is the
+ * distance to the center of the point sprite (0.5 at its border). The
+ * sigma table holds the CIE XYZ tristimulus values of this pattern,
+ * 
+ * sigma(r,T) = sum B(lambda,T) (xbar,ybar,zbar)(lambda) A(r,lambda),
+ * 
+ * summed over 5 nm steps from 380 nm to 780 nm, for r = col/width in [0,1)
+ * and log10(T) = LOG_TEMP_MIN + LOG_TEMP_RANGE row/height. The psitemp
+ * table is the luminance Y of the pattern center, psi(T) = sigma(0,T).y,
+ * which normalizes the brightness of a star to its apparent magnitude.
+ * 
+ * The colour matching functions are the tabulated CIE 1931 2 degree
+ * observer. The 512 x 512 tables reproduce data/sigma.bin and
+ * data/psitemp.bin to within 0.05 % of the central Y of each row.
+ * 
+ * The Fraunhofer patterns do not depend on the temperature, they are
+ * computed once in parallel over the radius; the tables are then computed
+ * in parallel over the temperature. load...() keeps the results on disk,
+ * keyed by resolution.
+ */
+public class SpectralTables {
+    /** log10 of the lowest temperature, 'minTemp' of the fragment shader. */
+    public static final double LOG_TEMP_MIN   = 3.0;
+    /** Range of log10 temperature of the fragment shader. */
+    public static final double LOG_TEMP_RANGE = 1.7;
+    /** Aperture in nm, the first dark ring at 550 nm is at r = 0.26. */
+    public static final double APERTURE       = 2600.0;
+    public static final int    LAMBDA_MIN     = 380;
+    public static final int    LAMBDA_MAX     = 780;
+    public static final int    LAMBDA_STEP    = 5;
+
+    private static final double H             = 6.62607015e-34;
+    private static final double C             = 2.99792458e8;
+    private static final double K             = 1.380649e-23;
+
+    /**
+     * CIE 1931 2 degree standard observer, colour matching functions xbar,
+     * ybar and zbar from LAMBDA_MIN to LAMBDA_MAX in LAMBDA_STEP steps.
+     */
+    private static final double[][] CIE_1931 = {
+            { 0.001368, 0.000039, 0.006450 }, // 380
+            { 0.002236, 0.000064, 0.010550 }, // 385
+            { 0.004243, 0.000120, 0.020050 }, // 390
+            { 0.007650, 0.000217, 0.036210 }, // 395
+            { 0.014310, 0.000396, 0.067850 }, // 400
+            { 0.023190, 0.000640, 0.110200 }, // 405
+            { 0.043510, 0.001210, 0.207400 }, // 410
+            { 0.077630, 0.002180, 0.371300 }, // 415
+            { 0.134380, 0.004000, 0.645600 }, // 420
+            { 0.214770, 0.007300, 1.039050 }, // 425
+            { 0.283900, 0.011600, 1.385600 }, // 430
+            { 0.328500, 0.016840, 1.622960 }, // 435
+            { 0.348280, 0.023000, 1.747060 }, // 440
+            { 0.348060, 0.029800, 1.782600 }, // 445
+            { 0.336200, 0.038000, 1.772110 }, // 450
+            { 0.318700, 0.048000, 1.744100 }, // 455
+            { 0.290800, 0.060000, 1.669200 }, // 460
+            { 0.251100, 0.073900, 1.528100 }, // 465
+            { 0.195360, 0.090980, 1.287640 }, // 470
+            { 0.142100, 0.112600, 1.041900 }, // 475
+            { 0.095640, 0.139020, 0.812950 }, // 480
+            { 0.057950, 0.169300, 0.616200 }, // 485
+            { 0.032010, 0.208020, 0.465180 }, // 490
+            { 0.014700, 0.258600, 0.353300 }, // 495
+            { 0.004900, 0.323000, 0.272000 }, // 500
+            { 0.002400, 0.407300, 0.212300 }, // 505
+            { 0.009300, 0.503000, 0.158200 }, // 510
+            { 0.029100, 0.608200, 0.111700 }, // 515
+            { 0.063270, 0.710000, 0.078250 }, // 520
+            { 0.109600, 0.793200, 0.057250 }, // 525
+            { 0.165500, 0.862000, 0.042160 }, // 530
+            { 0.225750, 0.914850, 0.029840 }, // 535
+            { 0.290400, 0.954000, 0.020300 }, // 540
+            { 0.359700, 0.980300, 0.013400 }, // 545
+            { 0.433450, 0.994950, 0.008750 }, // 550
+            { 0.512050, 1.000000, 0.005750 }, // 555
+            { 0.594500, 0.995000, 0.003900 }, // 560
+            { 0.678400, 0.978600, 0.002750 }, // 565
+            { 0.762100, 0.952000, 0.002100 }, // 570
+            { 0.842500, 0.915400, 0.001800 }, // 575
+            { 0.916300, 0.870000, 0.001650 }, // 580
+            { 0.978600, 0.816300, 0.001400 }, // 585
+            { 1.026300, 0.757000, 0.001100 }, // 590
+            { 1.056700, 0.694900, 0.001000 }, // 595
+            { 1.062200, 0.631000, 0.000800 }, // 600
+            { 1.045600, 0.566800, 0.000600 }, // 605
+            { 1.002600, 0.503000, 0.000340 }, // 610
+            { 0.938400, 0.441200, 0.000240 }, // 615
+            { 0.854450, 0.381000, 0.000190 }, // 620
+            { 0.751400, 0.321000, 0.000100 }, // 625
+            { 0.642400, 0.265000, 0.000050 }, // 630
+            { 0.541900, 0.217000, 0.000030 }, // 635
+            { 0.447900, 0.175000, 0.000020 }, // 640
+            { 0.360800, 0.138200, 0.000010 }, // 645
+            { 0.283500, 0.107000, 0.000000 }, // 650
+            { 0.218700, 0.081600, 0.000000 }, // 655
+            { 0.164900, 0.061000, 0.000000 }, // 660
+            { 0.121200, 0.044580, 0.000000 }, // 665
+            { 0.087400, 0.032000, 0.000000 }, // 670
+            { 0.063600, 0.023200, 0.000000 }, // 675
+            { 0.046770, 0.017000, 0.000000 }, // 680
+            { 0.032900, 0.011920, 0.000000 }, // 685
+            { 0.022700, 0.008210, 0.000000 }, // 690
+            { 0.015840, 0.005723, 0.000000 }, // 695
+            { 0.011359, 0.004102, 0.000000 }, // 700
+            { 0.008111, 0.002929, 0.000000 }, // 705
+            { 0.005790, 0.002091, 0.000000 }, // 710
+            { 0.004109, 0.001484, 0.000000 }, // 715
+            { 0.002899, 0.001047, 0.000000 }, // 720
+            { 0.002049, 0.000740, 0.000000 }, // 725
+            { 0.001440, 0.000520, 0.000000 }, // 730
+            { 0.001000, 0.000361, 0.000000 }, // 735
+            { 0.000690, 0.000249, 0.000000 }, // 740
+            { 0.000476, 0.000172, 0.000000 }, // 745
+            { 0.000332, 0.000120, 0.000000 }, // 750
+            { 0.000235, 0.000085, 0.000000 }, // 755
+            { 0.000166, 0.000060, 0.000000 }, // 760
+            { 0.000117, 0.000042, 0.000000 }, // 765
+            { 0.000083, 0.000030, 0.000000 }, // 770
+            { 0.000059, 0.000021, 0.000000 }, // 775
+            { 0.000042, 0.000015, 0.000000 }, // 780
+    };
+
+    private final int          width;
+    private final int          height;
+    private final int          numLambda;
+    private final double[]     lambda;
+
+    private float[]            sigma;
+    private float[]            psi;
+
+    /**
+     * Spectral table generator.
+     * 
+     * @param width
+     *            : number of radii of the sigma table.
+     * @param height
+     *            : number of temperatures.
+     */
+    public SpectralTables(int width, int height) {
+        if (width < 2 || height < 2) {
+            throw new IllegalArgumentException("spectral tables " + width
+                    + " x " + height);
+        }
+        this.width = width;
+        this.height = height;
+        numLambda = (LAMBDA_MAX - LAMBDA_MIN) / LAMBDA_STEP + 1;
+        lambda = new double[numLambda];
+        for (int l = 0; l < numLambda; l++) {
+            lambda[l] = LAMBDA_MIN + l * LAMBDA_STEP;
+        }
+    }
+
+    /**
+     * Temperature of a table row.
+     * 
+     * @param row
+     *            : row index.
+     * @return temperature in Kelvin.
+     */
+    public double temperature(int row) {
+        return Math.pow(10.0, LOG_TEMP_MIN + LOG_TEMP_RANGE * row / height);
+    }
+
+    /**
+     * Sigma table, valid after compute().
+     * 
+     * @return width*height*3 values (X,Y,Z), row by row.
+     */
+    public float[] getSigma() {
+        return sigma;
+    }
+
+    /**
+     * Psitemp table, valid after compute().
+     * 
+     * @return height values Y.
+     */
+    public float[] getPsiTemp() {
+        return psi;
+    }
+
+    /**
+     * Name of the cached sigma table.
+     * 
+     * @param width
+     *            : number of radii.
+     * @param height
+     *            : number of temperatures.
+     * @return file name in the data directory.
+     */
+    public static String sigmaName(int width, int height) {
+        return "data/sigma_" + width + "x" + height + ".bin";
+    }
+
+    /**
+     * Name of the cached psitemp table.
+     * 
+     * @param height
+     *            : number of temperatures.
+     * @return file name in the data directory.
+     */
+    public static String psiTempName(int height) {
+        return "data/psitemp_" + height + ".bin";
+    }
+
+    /**
+     * Load the sigma table for Defs.SIGMA_WIDTH and Defs.TEMP_STEPS.
+     * 
+     * @return sigma table.
+     * @throws IOException
+     *             if the table cannot be read or written.
+     */
+    public static TextureTable loadSigma() throws IOException {
+        return TextureTable.get(ensure(true));
+    }
+
+    /**
+     * Load the psitemp table for Defs.TEMP_STEPS.
+     * 
+     * @return psitemp table.
+     * @throws IOException
+     *             if the table cannot be read or written.
+     */
+    public static TextureTable loadPsiTemp() throws IOException {
+        return TextureTable.get(ensure(false));
+    }
+
+    /**
+     * File of a table. Cached tables are used if they exist, then the
+     * classic tables Defs.BIN_NAME_SIGMA and Defs.BIN_NAME_PSITEMP for a
+     * 512 x 512 resolution. Otherwise both tables are computed and cached,
+     * so that they share the temperature sampling.
+     */
+    private static synchronized String ensure(boolean sigmaTable)
+            throws IOException {
+        int w = Defs.SIGMA_WIDTH;
+        int h = Defs.TEMP_STEPS;
+        String sigmaName = sigmaName(w, h);
+        String psiName = psiTempName(h);
+        if (Files.exists(Paths.get(sigmaName))
+                && Files.exists(Paths.get(psiName))) {
+            return sigmaTable ? sigmaName : psiName;
+        }
+        String legacy = sigmaTable ? Defs.BIN_NAME_SIGMA
+                : Defs.BIN_NAME_PSITEMP;
+        if (w == 512 && h == 512 && Files.exists(Paths.get(legacy))) {
+            return legacy;
+        }
+        System.err.println("Compute " + sigmaName + " ...");
+        SpectralTables tables = new SpectralTables(w, h);
+        tables.compute(Runtime.getRuntime().availableProcessors());
+        TextureTable.write(sigmaName, w, h, 3, tables.getSigma());
+        TextureTable.write(psiName, h, 1, 1, tables.getPsiTemp());
+        return sigmaTable ? sigmaName : psiName;
+    }
+
+    /**
+     * Compute both tables.
+     * 
+     * @param numThreads
+     *            : number of threads.
+     */
+    public void compute(int numThreads) {
+        final double[][] airy = new double[width][numLambda];
+        final float[] xyz = new float[width * height * 3];
+        final float[] y0 = new float[height];
+        int blocks = Math.max(1, numThreads) * 4;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+                numThreads));
+        try {
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+            for (int b = 0; b < blocks; b++) {
+                final int first = b * width / blocks;
+                final int last = (b + 1) * width / blocks;
+                tasks.add(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        for (int col = first; col < last; col++) {
+                            double r = (double) col / width;
+                            for (int l = 0; l < numLambda; l++) {
+                                airy[col][l] = airy(Math.PI * APERTURE * r
+                                        / lambda[l]);
+                            }
+                        }
+                        return null;
+                    }
+                });
+            }
+            invokeAll(executor, tasks);
+
+            tasks.clear();
+            for (int row = 0; row < height; row++) {
+                final int r = row;
+                tasks.add(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        computeRow(r, airy, xyz);
+                        y0[r] = xyz[r * width * 3 + 1];
+                        return null;
+                    }
+                });
+            }
+            invokeAll(executor, tasks);
+        } finally {
+            executor.shutdownNow();
+        }
+        sigma = xyz;
+        psi = y0;
+    }
+
+    private static void invokeAll(ExecutorService executor,
+            List<Callable<Object>> tasks) {
+        try {
+            for (Future<Object> f : executor.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Tristimulus values of all radii of one temperature.
+     */
+    private void computeRow(int row, double[][] airy, float[] xyz) {
+        double t = temperature(row);
+        double[][] w = new double[numLambda][3];
+        for (int l = 0; l < numLambda; l++) {
+            double b = planck(lambda[l], t);
+            for (int c = 0; c < 3; c++) {
+                w[l][c] = b * CIE_1931[l][c];
+            }
+        }
+        int base = row * width * 3;
+        for (int col = 0; col < width; col++) {
+            double x = 0.0;
+            double y = 0.0;
+            double z = 0.0;
+            double[] a = airy[col];
+            for (int l = 0; l < numLambda; l++) {
+                x += w[l][0] * a[l];
+                y += w[l][1] * a[l];
+                z += w[l][2] * a[l];
+            }
+            xyz[base + 3 * col] = (float) x;
+            xyz[base + 3 * col + 1] = (float) y;
+            xyz[base + 3 * col + 2] = (float) z;
+        }
+    }
+
+    /**
+     * Spectral radiance of a black body.
+     * 
+     * @param lambda
+     *            : wavelength in nm.
+     * @param t
+     *            : temperature in Kelvin.
+     * @return radiance in W/(m^3 sr).
+     */
+    public static double planck(double lambda, double t) {
+        double l = lambda * 1e-9;
+        double l5 = l * l * l * l * l;
+        return 2.0 * H * C * C / l5 / Math.expm1(H * C / (l * K * t));
+    }
+
+    /**
+     * Fraunhofer diffraction pattern of a circular aperture.
+     * 
+     * @param x
+     *            : scaled radius.
+     * @return (2 J1(x)/x)^2, one at the center.
+     */
+    public static double airy(double x) {
+        if (Math.abs(x) < 1e-8) {
+            return 1.0;
+        }
+        double a = 2.0 * besselJ1(x) / x;
+        return a * a;
+    }
+
+    /**
+     * Bessel function J1, rational approximation of Numerical Recipes.
+     */
+    static double besselJ1(double x) {
+        double ax = Math.abs(x);
+        if (ax < 8.0) {
+            double y = x * x;
+            double n = x * (72362614232.0 + y * (-7895059235.0 + y
+                    * (242396853.1 + y * (-2972611.439 + y * (15704.48260
+                            + y * (-30.16036606))))));
+            double d = 144725228442.0 + y * (2300535178.0 + y
+                    * (18583304.74 + y * (99447.43394 + y * (376.9991397
+                            + y))));
+            return n / d;
+        }
+        double z = 8.0 / ax;
+        double y = z * z;
+        double xx = ax - 2.356194491;
+        double p = 1.0 + y * (0.183105e-2 + y * (-0.3516396496e-4 + y
+                * (0.2457520174e-5 + y * (-0.240337019e-6))));
+        double q = 0.04687499995 + y * (-0.2002690873e-3 + y
+                * (0.8449199096e-5 + y * (-0.88228987e-6 + y
+                        * 0.105787412e-6)));
+        double r = Math.sqrt(0.636619772 / ax)
+                * (Math.cos(xx) * p - z * Math.sin(xx) * q);
+        return x < 0.0 ? -r : r;
+    }
+
+    /**
+     * Compute and cache the sigma and psitemp tables.
+     * 
+     * @param args
+     *            : [width height [threads]], defaults from Defs.
+     */
+    public static void main(String[] args) {
+        int w = args.length > 1 ? Integer.parseInt(args[0])
+                : Defs.SIGMA_WIDTH;
+        int h = args.length > 1 ? Integer.parseInt(args[1]) : Defs.TEMP_STEPS;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime
+                .getRuntime().availableProcessors();
+
+        long start = System.nanoTime();
+        SpectralTables tables = new SpectralTables(w, h);
+        tables.compute(threads);
+        String sigmaName = sigmaName(w, h);
+        String psiName = psiTempName(h);
+        try {
+            TextureTable.write(sigmaName, w, h, 3, tables.getSigma());
+            TextureTable.write(psiName, h, 1, 1, tables.getPsiTemp());
+        } catch (IOException e) {
+            System.err.println("Cannot write tables: " + e.getMessage());
+            System.exit(1);
+        }
+        System.err.printf("%s, %s: T = %.0f ... %.0f K, %.2f s\n",
+                sigmaName, psiName, tables.temperature(0),
+                tables.temperature(h - 1), (System.nanoTime() - start)
+                        * 1e-9);
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+
+import javax.media.opengl.GL;
+import javax.media.opengl.GL2;
+
+import com.jogamp.common.nio.Buffers;
+
+/**
+ * Star attributes on the graphics board.
+ * 
+ * Every star is stored as five interleaved floats (parallax, ra, dec,
+ * absolute magnitude, temperature). The first Defs.RESIDENT_CHUNKS chunks
+ * of the catalog get their own buffer object, which is uploaded once;
+ * further chunks are streamed through one buffer in every frame. The
+ * vertex pointers of every buffer are recorded in a vertex array object,
+ * so drawing a chunk is a bind and a draw call. Without vertex array
+ * objects (OpenGL before 3.0), the pointers are set before every draw,
+ * but they always point into buffer objects, never to client memory.
+ */
+public class StarBuffers {
+    public static final int       COMPONENTS = 5;
+    public static final int       STRIDE     = COMPONENTS * Float.BYTES;
+
+    private final ChunkedCatalog  catalog;
+    private int[]                 vbo        = new int[0];
+    private int[]                 vao        = new int[0];
+    private SkyIndex[]            skyIndex   = new SkyIndex[0];
+    private final int[]           streamVBO  = new int[1];
+    private final int[]           streamVAO  = new int[1];
+    private boolean               useVAO     = false;
+    private FloatBuffer           scratch    = null;
+    private final SkyIndex.Ranges ranges     = new SkyIndex.Ranges();
+
+    /**
+     * Star buffers.
+     * 
+     * @param catalog
+     *            : chunked star catalog.
+     */
+    public StarBuffers(ChunkedCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    public int getNumResident() {
+        return vbo.length;
+    }
+
+    public boolean usesVAO() {
+        return useVAO;
+    }
+
+    /**
+     * Create and fill the buffer objects. Catalogs in memory are uploaded
+     * in the order of their sky index.
+     * 
+     * @param gl
+     *            : opengl.
+     * @throws IOException
+     *             if a chunk cannot be read.
+     */
+    public void init(BufferGL gl) throws IOException {
+        useVAO = gl.isFunctionAvailable("glGenVertexArrays");
+
+        int numResident = Math.min(catalog.getNumChunks(),
+                Defs.RESIDENT_CHUNKS);
+        vbo = new int[numResident];
+        skyIndex = new SkyIndex[numResident];
+        gl.glGenBuffers(numResident, vbo, 0);
+        for (int k = 0; k < numResident; k++) {
+            skyIndex[k] = catalog.getSkyIndex(k);
+            upload(gl, vbo[k], skyIndex[k] != null ? skyIndex[k]
+                    .getCatalog() : catalog.getChunk(k), GL.GL_STATIC_DRAW);
+        }
+        if (catalog.getNumChunks() > numResident) {
+            gl.glGenBuffers(1, streamVBO, 0);
+        }
+
+        if (useVAO) {
+            vao = new int[numResident];
+            gl.glGenVertexArrays(numResident, vao, 0);
+            for (int k = 0; k < numResident; k++) {
+                gl.glBindVertexArray(vao[k]);
+                setPointers(gl, vbo[k]);
+            }
+            if (streamVBO[0] != 0) {
+                gl.glGenVertexArrays(1, streamVAO, 0);
+                gl.glBindVertexArray(streamVAO[0]);
+                setPointers(gl, streamVBO[0]);
+            }
+            gl.glBindVertexArray(0);
+        }
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Draw all stars. Shader, textures and point sprites must be set up.
+     * 
+     * @param gl
+     *            : opengl.
+     * @param params
+     *            : current view, used to cull the sky tiles outside the
+     *            pinhole camera.
+     * @return number of stars drawn.
+     * @throws IOException
+     *             if a streamed chunk cannot be read.
+     */
+    public long draw(BufferGL gl, ProjectionParams params)
+            throws IOException {
+        long drawn = 0;
+        for (int k = 0; k < catalog.getNumChunks(); k++) {
+            int n;
+            if (k < vbo.length) {
+                n = catalog.getChunkLength(k);
+                bind(gl, k < vao.length ? vao[k] : 0, vbo[k]);
+                if (skyIndex[k] != null
+                        && skyIndex[k].select(params, ranges)) {
+                    // only the sky tiles in front of the pinhole camera
+                    gl.glMultiDrawArrays(GL.GL_POINTS, ranges.first, 0,
+                            ranges.count, 0, ranges.size);
+                    drawn += ranges.numStars;
+                    continue;
+                }
+            } else {
+                StarCatalog chunk = catalog.getChunk(k);
+                n = chunk.getNumStars();
+                upload(gl, streamVBO[0], chunk, GL2.GL_STREAM_DRAW);
+                bind(gl, streamVAO[0], streamVBO[0]);
+            }
+            gl.glDrawArrays(GL.GL_POINTS, 0, n);
+            drawn += n;
+        }
+        unbind(gl);
+        return drawn;
+    }
+
+    /**
+     * Delete the buffer objects.
+     * 
+     * @param gl
+     *            : opengl.
+     */
+    public void dispose(BufferGL gl) {
+        if (vao.length > 0) {
+            gl.glDeleteVertexArrays(vao.length, vao, 0);
+        }
+        if (streamVAO[0] != 0) {
+            gl.glDeleteVertexArrays(1, streamVAO, 0);
+        }
+        gl.glDeleteBuffers(vbo.length, vbo, 0);
+        if (streamVBO[0] != 0) {
+            gl.glDeleteBuffers(1, streamVBO, 0);
+        }
+        vbo = new int[0];
+        vao = new int[0];
+        streamVBO[0] = 0;
+        streamVAO[0] = 0;
+    }
+
+    private void bind(BufferGL gl, int array, int buffer) {
+        if (useVAO) {
+            gl.glBindVertexArray(array);
+        } else {
+            setPointers(gl, buffer);
+        }
+    }
+
+    private void unbind(BufferGL gl) {
+        if (useVAO) {
+            gl.glBindVertexArray(0);
+        } else {
+            gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
+            gl.glDisableVertexAttribArray(Defs.VERTEX_MAG_ARRAY);
+            gl.glDisableVertexAttribArray(Defs.VERTEX_TEMP_ARRAY);
+        }
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Point the vertex arrays into a buffer object, recorded in the bound
+     * vertex array object if there is one.
+     */
+    private static void setPointers(BufferGL gl, int buffer) {
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, buffer);
+        gl.glVertexPointer(3, GL.GL_FLOAT, STRIDE, 0);
+        gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
+        gl.glVertexAttribPointer(Defs.VERTEX_MAG_ARRAY, 1, GL.GL_FLOAT,
+                false, STRIDE, 3 * Float.BYTES);
+        gl.glEnableVertexAttribArray(Defs.VERTEX_MAG_ARRAY);
+        gl.glVertexAttribPointer(Defs.VERTEX_TEMP_ARRAY, 1, GL.GL_FLOAT,
+                false, STRIDE, 4 * Float.BYTES);
+        gl.glEnableVertexAttribArray(Defs.VERTEX_TEMP_ARRAY);
+    }
+
+    /**
+     * Interleave chunk and upload it into a buffer object.
+     */
+    private void upload(BufferGL gl, int buffer, StarCatalog chunk,
+            int usage) {
+        int n = chunk.getNumStars();
+        if (scratch == null) {
+            scratch = Buffers.newDirectFloatBuffer(catalog.getChunkLength(0)
+                    * COMPONENTS);
+        }
+        for (int i = 0; i < n; i++) {
+            int base = i * COMPONENTS;
+            scratch.put(base, chunk.parallax(i));
+            scratch.put(base + 1, chunk.ra(i));
+            scratch.put(base + 2, chunk.dec(i));
+            scratch.put(base + 3, chunk.absMag(i));
+            scratch.put(base + 4, chunk.temp(i));
+        }
+        scratch.position(0);
+        scratch.limit(n * COMPONENTS);
+
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, buffer);
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, (long) n * STRIDE, scratch, usage);
+        scratch.clear();
+    }
+}
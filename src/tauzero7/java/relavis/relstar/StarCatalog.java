@@ -0,0 +1,300 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import com.jogamp.common.nio.Buffers;
+
+/**
+ * Star catalog in struct-of-arrays form.
+ * 
+ * Every column is a direct buffer in native byte order, so the same memory
+ * can be handed to OpenGL and read by CPU code. Slices share the memory of
+ * the catalog they were taken from.
+ */
+public class StarCatalog {
+    private final int         numStars;
+
+    private final IntBuffer   hipID;
+    private final FloatBuffer parallax; // milli arcsec
+    private final FloatBuffer ra;       // radians
+    private final FloatBuffer dec;      // radians
+    private final FloatBuffer absMag;
+    private final FloatBuffer temp;     // Kelvin
+
+    private final FloatBuffer vertices; // (parallax, ra, dec) triples or null
+
+    /**
+     * Star catalog with given columns.
+     * 
+     * @param numStars
+     *            : number of stars.
+     * @param hipID
+     *            : Hipparcos identifiers.
+     * @param parallax
+     *            : parallaxes in milli arcsec.
+     * @param ra
+     *            : right ascensions in radians.
+     * @param dec
+     *            : declinations in radians.
+     * @param absMag
+     *            : absolute magnitudes.
+     * @param temp
+     *            : temperatures in Kelvin.
+     */
+    StarCatalog(int numStars, IntBuffer hipID, FloatBuffer parallax,
+            FloatBuffer ra, FloatBuffer dec, FloatBuffer absMag,
+            FloatBuffer temp) {
+        this(numStars, hipID, parallax, ra, dec, absMag, temp, null);
+    }
+
+    /**
+     * Star catalog with given columns and precomputed vertex column.
+     * 
+     * @param numStars
+     *            : number of stars.
+     * @param hipID
+     *            : Hipparcos identifiers.
+     * @param parallax
+     *            : parallaxes in milli arcsec.
+     * @param ra
+     *            : right ascensions in radians.
+     * @param dec
+     *            : declinations in radians.
+     * @param absMag
+     *            : absolute magnitudes.
+     * @param temp
+     *            : temperatures in Kelvin.
+     * @param vertices
+     *            : interleaved (parallax, ra, dec) triples, may be null.
+     */
+    StarCatalog(int numStars, IntBuffer hipID, FloatBuffer parallax,
+            FloatBuffer ra, FloatBuffer dec, FloatBuffer absMag,
+            FloatBuffer temp, FloatBuffer vertices) {
+        this.numStars = numStars;
+        this.hipID = hipID;
+        this.parallax = parallax;
+        this.ra = ra;
+        this.dec = dec;
+        this.absMag = absMag;
+        this.temp = temp;
+        this.vertices = vertices;
+    }
+
+    /**
+     * Allocate empty catalog.
+     * 
+     * @param numStars
+     *            : number of stars.
+     * @return catalog with direct columns.
+     */
+    public static StarCatalog allocate(int numStars) {
+        return new StarCatalog(numStars,
+                Buffers.newDirectIntBuffer(numStars),
+                Buffers.newDirectFloatBuffer(numStars),
+                Buffers.newDirectFloatBuffer(numStars),
+                Buffers.newDirectFloatBuffer(numStars),
+                Buffers.newDirectFloatBuffer(numStars),
+                Buffers.newDirectFloatBuffer(numStars));
+    }
+
+    /**
+     * Get number of stars.
+     * 
+     * @return number of stars.
+     */
+    public int getNumStars() {
+        return numStars;
+    }
+
+    /**
+     * Set star data.
+     * 
+     * @param i
+     *            : star index.
+     * @param id
+     *            : Hipparcos identifier.
+     * @param plx
+     *            : parallax in milli arcsec.
+     * @param raRad
+     *            : right ascension in radians.
+     * @param decRad
+     *            : declination in radians.
+     * @param mag
+     *            : absolute magnitude.
+     * @param t
+     *            : temperature in Kelvin.
+     */
+    public void set(int i, int id, float plx, float raRad, float decRad,
+            float mag, float t) {
+        hipID.put(i, id);
+        parallax.put(i, plx);
+        ra.put(i, raRad);
+        dec.put(i, decRad);
+        absMag.put(i, mag);
+        temp.put(i, t);
+    }
+
+    public int hipID(int i) {
+        return hipID.get(i);
+    }
+
+    public float parallax(int i) {
+        return parallax.get(i);
+    }
+
+    public float ra(int i) {
+        return ra.get(i);
+    }
+
+    public float dec(int i) {
+        return dec.get(i);
+    }
+
+    public float absMag(int i) {
+        return absMag.get(i);
+    }
+
+    public float temp(int i) {
+        return temp.get(i);
+    }
+
+    /*
+     * Column views. They share memory with the catalog, but have their own
+     * position and limit.
+     */
+    public IntBuffer getHipIDColumn() {
+        return hipID.duplicate();
+    }
+
+    public FloatBuffer getParallaxColumn() {
+        return parallax.duplicate();
+    }
+
+    public FloatBuffer getRaColumn() {
+        return ra.duplicate();
+    }
+
+    public FloatBuffer getDecColumn() {
+        return dec.duplicate();
+    }
+
+    public FloatBuffer getAbsMagColumn() {
+        return absMag.duplicate();
+    }
+
+    public FloatBuffer getTempColumn() {
+        return temp.duplicate();
+    }
+
+    /**
+     * Get slice of catalog without copying.
+     * 
+     * @param offset
+     *            : index of first star.
+     * @param count
+     *            : number of stars.
+     * @return catalog view.
+     */
+    public StarCatalog slice(int offset, int count) {
+        if (offset < 0 || count < 0 || offset + count > numStars) {
+            throw new IndexOutOfBoundsException("slice " + offset + "+"
+                    + count + " of " + numStars);
+        }
+        return new StarCatalog(count, slice(hipID, offset, count),
+                slice(parallax, offset, count), slice(ra, offset, count),
+                slice(dec, offset, count), slice(absMag, offset, count),
+                slice(temp, offset, count), vertices == null ? null
+                        : slice(vertices, 3 * offset, 3 * count));
+    }
+
+    /**
+     * Export positions as interleaved (parallax, ra, dec) triples.
+     * 
+     * @param dst
+     *            : destination buffer with at least 3*numStars free floats.
+     * @return destination buffer.
+     */
+    public FloatBuffer exportVertices(FloatBuffer dst) {
+        int base = dst.position();
+        for (int i = 0; i < numStars; i++) {
+            dst.put(base + 3 * i + 0, parallax.get(i));
+            dst.put(base + 3 * i + 1, ra.get(i));
+            dst.put(base + 3 * i + 2, dec.get(i));
+        }
+        return dst;
+    }
+
+    /**
+     * Get new direct buffer with interleaved positions.
+     * 
+     * @return vertex float buffer.
+     */
+    public FloatBuffer newVertexBuffer() {
+        return exportVertices(Buffers.newDirectFloatBuffer(numStars * 3));
+    }
+
+    /**
+     * Get interleaved positions. If the catalog was read together with a
+     * precomputed vertex column, that memory is returned, otherwise the
+     * positions are exported into a new buffer.
+     * 
+     * @return vertex float buffer.
+     */
+    public FloatBuffer getVertices() {
+        if (vertices != null) {
+            return vertices.duplicate();
+        }
+        return newVertexBuffer();
+    }
+
+    /**
+     * Check for precomputed vertex column.
+     * 
+     * @return true if vertices are stored with the catalog.
+     */
+    public boolean hasVertices() {
+        return vertices != null;
+    }
+
+    /**
+     * Copy catalog into another one.
+     * 
+     * @param dst
+     *            : destination catalog.
+     * @param offset
+     *            : index of first star in destination.
+     */
+    public void copyTo(StarCatalog dst, int offset) {
+        StarCatalog d = dst.slice(offset, numStars);
+        d.hipID.put(getHipIDColumn());
+        d.parallax.put(getParallaxColumn());
+        d.ra.put(getRaColumn());
+        d.dec.put(getDecColumn());
+        d.absMag.put(getAbsMagColumn());
+        d.temp.put(getTempColumn());
+    }
+
+    private static IntBuffer slice(IntBuffer buf, int offset, int count) {
+        IntBuffer b = buf.duplicate();
+        b.limit(offset + count);
+        b.position(offset);
+        return b.slice();
+    }
+
+    private static FloatBuffer slice(FloatBuffer buf, int offset, int count) {
+        FloatBuffer b = buf.duplicate();
+        b.limit(offset + count);
+        b.position(offset);
+        return b.slice();
+    }
+}
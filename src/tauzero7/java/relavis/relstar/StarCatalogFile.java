@@ -0,0 +1,620 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import com.jogamp.common.nio.Buffers;
+
+/**
+ * Packed star catalog file.
+ * 
+ * The file stores the catalog columns exactly as the renderer consumes them,
+ * so loading is a mapping of the file without any per-star math.
+ * 
+ * <pre>
+ *  offset  size  content
+ *       0     4  magic "RSCF" (MAGIC in little-endian byte order)
+ *       4     4  version
+ *       8     4  byte order mark 0x0A0B0C0D, written in file byte order
+ *      12     4  number of columns
+ *      16     8  number of rows
+ *      24     8  CRC32 of everything behind the column table
+ *      32  24*n  column table: id, type, components, flags (4 bytes
+ *                each), byte offset of column data (8 bytes)
+ * </pre>
+ * 
+ * Column data start at 8-byte aligned offsets. The flag
+ * FLAG_BRIGHTNESS_ORDER is set on all columns if the rows are sorted by
+ * apparent magnitude (see BrightnessIndex); older files have no flags.
+ */
+public class StarCatalogFile {
+    public static final int  MAGIC           = 0x46435352;  // "RSCF"
+    public static final int  VERSION         = 1;
+    public static final int  BYTE_ORDER_MARK = 0x0A0B0C0D;
+
+    public static final int  COL_HIPID       = 1;
+    public static final int  COL_PARALLAX    = 2;
+    public static final int  COL_RA          = 3;
+    public static final int  COL_DEC         = 4;
+    public static final int  COL_ABSMAG      = 5;
+    public static final int  COL_TEMP        = 6;
+    public static final int  COL_VERTEX      = 7;
+
+    public static final int  TYPE_INT32      = 1;
+    public static final int  TYPE_FLOAT32    = 2;
+
+    public static final int  FLAG_BRIGHTNESS_ORDER = 1;
+
+    private static final int HEADER_SIZE     = 32;
+    private static final int COLUMN_SIZE     = 24;
+
+    /**
+     * Column description.
+     */
+    static class Column {
+        final int  id;
+        final int  type;
+        final int  components;
+        final int  flags;
+        final long offset;
+
+        Column(int id, int type, int components, int flags, long offset) {
+            this.id = id;
+            this.type = type;
+            this.components = components;
+            this.flags = flags;
+            this.offset = offset;
+        }
+    }
+
+    private final String    filename;
+    private final ByteOrder order;
+    private final int       version;
+    private final long      numRows;
+    private final long      checksum;
+    private final long      dataOffset;
+    private final Column[]  columns;
+
+    /**
+     * Open packed catalog file and read its header.
+     * 
+     * @param filename
+     *            : name of catalog file.
+     * @throws IOException
+     *             if the header is not valid.
+     */
+    public StarCatalogFile(String filename) throws IOException {
+        this.filename = filename;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException(filename + ": file too short");
+            }
+            ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, head, 0);
+
+            // the byte order mark decides how the rest is read
+            head.order(ByteOrder.LITTLE_ENDIAN);
+            if (head.getInt(8) == BYTE_ORDER_MARK) {
+                order = ByteOrder.LITTLE_ENDIAN;
+            } else if (head.getInt(8) == Integer
+                    .reverseBytes(BYTE_ORDER_MARK)) {
+                order = ByteOrder.BIG_ENDIAN;
+            } else {
+                throw new IOException(filename + ": not a packed catalog");
+            }
+            head.order(order);
+
+            // magic as the characters "RSCF" or as int in file byte order
+            int magic = head.getInt(0);
+            if (magic != MAGIC && Integer.reverseBytes(magic) != MAGIC) {
+                throw new IOException(filename + ": not a packed catalog");
+            }
+
+            version = head.getInt(4);
+            if (version != VERSION) {
+                throw new IOException(filename + ": unsupported version "
+                        + version);
+            }
+            int numColumns = head.getInt(12);
+            numRows = head.getLong(16);
+            checksum = head.getLong(24);
+            if (numColumns <= 0 || numRows < 0) {
+                throw new IOException(filename + ": corrupt header");
+            }
+
+            ByteBuffer table = ByteBuffer.allocate(numColumns * COLUMN_SIZE)
+                    .order(order);
+            readFully(channel, table, HEADER_SIZE);
+
+            columns = new Column[numColumns];
+            for (int i = 0; i < numColumns; i++) {
+                int base = i * COLUMN_SIZE;
+                columns[i] = new Column(table.getInt(base),
+                        table.getInt(base + 4), table.getInt(base + 8),
+                        table.getInt(base + 12), table.getLong(base + 16));
+                long end = columns[i].offset
+                        + numRows * columns[i].components * 4;
+                if (columns[i].offset % 8 != 0 || end > channel.size()) {
+                    throw new IOException(filename + ": corrupt column "
+                            + columns[i].id);
+                }
+            }
+            dataOffset = align(HEADER_SIZE + numColumns * COLUMN_SIZE);
+        }
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public ByteOrder getByteOrder() {
+        return order;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public long getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Check whether the rows are sorted by apparent magnitude.
+     * 
+     * @return true if all columns have FLAG_BRIGHTNESS_ORDER.
+     */
+    public boolean isBrightnessOrdered() {
+        for (Column c : columns) {
+            if ((c.flags & FLAG_BRIGHTNESS_ORDER) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find column by identifier.
+     * 
+     * @param id
+     *            : column identifier.
+     * @return column description or null.
+     */
+    Column getColumn(int id) {
+        for (Column c : columns) {
+            if (c.id == id) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Map the whole catalog into memory.
+     * 
+     * @param verify
+     *            : verify checksum of the column data.
+     * @return catalog whose columns share memory with the mapped file.
+     * @throws IOException
+     *             if the file cannot be mapped or the checksum is wrong.
+     */
+    public StarCatalog read(boolean verify) throws IOException {
+        if (numRows > Integer.MAX_VALUE) {
+            throw new IOException(filename + ": " + numRows
+                    + " rows do not fit into one catalog");
+        }
+        for (int id = COL_HIPID; id <= COL_TEMP; id++) {
+            if (getColumn(id) == null) {
+                throw new IOException(filename + ": missing column " + id);
+            }
+        }
+
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+
+        if (verify) {
+            ByteBuffer data = map.duplicate();
+            data.position((int) dataOffset);
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            if (crc.getValue() != checksum) {
+                throw new IOException(filename + ": checksum mismatch");
+            }
+        }
+
+        int n = (int) numRows;
+        Column vc = getColumn(COL_VERTEX);
+        return new StarCatalog(n, intColumn(columnBytes(map, getColumn(
+                COL_HIPID), n), getColumn(COL_HIPID), n),
+                floatColumn(columnBytes(map, getColumn(COL_PARALLAX), n),
+                        getColumn(COL_PARALLAX), n),
+                floatColumn(columnBytes(map, getColumn(COL_RA), n),
+                        getColumn(COL_RA), n),
+                floatColumn(columnBytes(map, getColumn(COL_DEC), n),
+                        getColumn(COL_DEC), n),
+                floatColumn(columnBytes(map, getColumn(COL_ABSMAG), n),
+                        getColumn(COL_ABSMAG), n),
+                floatColumn(columnBytes(map, getColumn(COL_TEMP), n),
+                        getColumn(COL_TEMP), n),
+                vc == null ? null : floatColumn(columnBytes(map, vc, n), vc,
+                        n));
+    }
+
+    /**
+     * Map a range of rows into memory. Only the parts of the columns that
+     * belong to the range are mapped, so this also works for catalogs that
+     * are much larger than the memory. The checksum is not verified.
+     * 
+     * @param first
+     *            : first row.
+     * @param count
+     *            : number of rows.
+     * @return catalog whose columns share memory with the mapped file.
+     * @throws IOException
+     *             if the file cannot be mapped.
+     */
+    public StarCatalog readChunk(long first, int count) throws IOException {
+        if (first < 0 || count < 0 || first + count > numRows) {
+            throw new IndexOutOfBoundsException("chunk " + first + "+"
+                    + count + " of " + numRows);
+        }
+        for (int id = COL_HIPID; id <= COL_TEMP; id++) {
+            if (getColumn(id) == null) {
+                throw new IOException(filename + ": missing column " + id);
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            Column ic = getColumn(COL_HIPID);
+            IntBuffer hipID = intColumn(mapColumn(channel, ic, first, count),
+                    ic, count);
+            FloatBuffer vertices = null;
+            if (getColumn(COL_VERTEX) != null) {
+                vertices = chunkColumn(channel, COL_VERTEX, first, count);
+            }
+            return new StarCatalog(count, hipID,
+                    chunkColumn(channel, COL_PARALLAX, first, count),
+                    chunkColumn(channel, COL_RA, first, count),
+                    chunkColumn(channel, COL_DEC, first, count),
+                    chunkColumn(channel, COL_ABSMAG, first, count),
+                    chunkColumn(channel, COL_TEMP, first, count), vertices);
+        }
+    }
+
+    private FloatBuffer chunkColumn(FileChannel channel, int id, long first,
+            int count) throws IOException {
+        Column c = getColumn(id);
+        return floatColumn(mapColumn(channel, c, first, count), c, count);
+    }
+
+    /**
+     * Map rows of one column.
+     */
+    private ByteBuffer mapColumn(FileChannel channel, Column c, long first,
+            int count) throws IOException {
+        long start = c.offset + first * c.components * 4;
+        return channel.map(FileChannel.MapMode.READ_ONLY, start,
+                (long) count * c.components * 4).order(order);
+    }
+
+    /**
+     * Write catalog as packed file in little-endian byte order.
+     * 
+     * @param catalog
+     *            : star catalog.
+     * @param filename
+     *            : name of catalog file.
+     * @param withVertices
+     *            : also store the interleaved vertex column.
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    public static void write(StarCatalog catalog, String filename,
+            boolean withVertices) throws IOException {
+        int n = catalog.getNumStars();
+        try (Writer writer = new Writer(filename, n, withVertices)) {
+            for (int i = 0; i < n; i += Defs.CHUNK_SIZE) {
+                writer.append(catalog.slice(i,
+                        Math.min(Defs.CHUNK_SIZE, n - i)));
+            }
+        }
+    }
+
+    /**
+     * Writer for packed catalog files that are written block by block, so
+     * that catalogs larger than the memory can be converted. The number of
+     * rows must be known in advance. Header and checksum are written when
+     * the writer is closed; until then the file has no valid magic. The
+     * brightness order flag is set if the appended rows were sorted.
+     */
+    public static class Writer implements Closeable {
+        private final String      filename;
+        private final FileChannel channel;
+        private final long        numRows;
+        private final int         numColumns;
+        private final int[]       comps   = { 1, 1, 1, 1, 1, 1, 3 };
+        private final long[]      offsets;
+        private final long        dataOffset;
+        private final long        fileSize;
+
+        private long              written    = 0;
+        private ByteBuffer        scratch    = null;
+        private boolean           ordered    = true;
+        private float             lastAppMag = Float.NEGATIVE_INFINITY;
+
+        /**
+         * Create packed catalog file in little-endian byte order.
+         * 
+         * @param filename
+         *            : name of catalog file.
+         * @param numRows
+         *            : number of rows that will be appended.
+         * @param withVertices
+         *            : also store the interleaved vertex column.
+         * @throws IOException
+         *             if the file cannot be created.
+         */
+        public Writer(String filename, long numRows, boolean withVertices)
+                throws IOException {
+            this.filename = filename;
+            this.numRows = numRows;
+            this.numColumns = withVertices ? 7 : 6;
+
+            offsets = new long[numColumns];
+            long offset = align(HEADER_SIZE + numColumns * COLUMN_SIZE);
+            dataOffset = offset;
+            for (int i = 0; i < numColumns; i++) {
+                offsets[i] = offset;
+                offset = align(offset + numRows * comps[i] * 4);
+            }
+            fileSize = offset;
+
+            channel = FileChannel.open(Paths.get(filename),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            // alignment gaps are never written and read as zeros
+            writeFully(ByteBuffer.allocate(1), fileSize - 1);
+        }
+
+        /**
+         * Append rows.
+         * 
+         * @param block
+         *            : catalog with the next rows.
+         * @throws IOException
+         *             if the rows cannot be written.
+         */
+        public void append(StarCatalog block) throws IOException {
+            int n = block.getNumStars();
+            if (written + n > numRows) {
+                throw new IOException(filename + ": more than " + numRows
+                        + " rows");
+            }
+            scratch(n).asIntBuffer().put(block.getHipIDColumn());
+            writeColumn(0, n);
+            scratch(n).asFloatBuffer().put(block.getParallaxColumn());
+            writeColumn(1, n);
+            scratch(n).asFloatBuffer().put(block.getRaColumn());
+            writeColumn(2, n);
+            scratch(n).asFloatBuffer().put(block.getDecColumn());
+            writeColumn(3, n);
+            scratch(n).asFloatBuffer().put(block.getAbsMagColumn());
+            writeColumn(4, n);
+            scratch(n).asFloatBuffer().put(block.getTempColumn());
+            writeColumn(5, n);
+            if (numColumns > 6) {
+                block.exportVertices(scratch(3 * n).asFloatBuffer());
+                writeColumn(6, n);
+            }
+            if (ordered && n > 0) {
+                ordered = BrightnessIndex.continuesOrder(block, lastAppMag);
+                lastAppMag = BrightnessIndex.appMag(block, n - 1);
+            }
+            written += n;
+        }
+
+        /**
+         * Write header and checksum and close the file.
+         * 
+         * @throws IOException
+         *             if not all rows were appended or the file cannot be
+         *             written.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                if (written != numRows) {
+                    throw new IOException(filename + ": " + written
+                            + " of " + numRows + " rows written");
+                }
+
+                CRC32 crc = new CRC32();
+                ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+                for (long pos = dataOffset; pos < fileSize; pos += buf
+                        .limit()) {
+                    buf.clear();
+                    buf.limit((int) Math.min(buf.capacity(), fileSize - pos));
+                    readFully(channel, buf, pos);
+                    buf.flip();
+                    crc.update(buf);
+                }
+
+                ByteBuffer head = ByteBuffer.allocate((int) dataOffset)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                head.putInt(MAGIC);
+                head.putInt(VERSION);
+                head.putInt(BYTE_ORDER_MARK);
+                head.putInt(numColumns);
+                head.putLong(numRows);
+                head.putLong(crc.getValue());
+                for (int i = 0; i < numColumns; i++) {
+                    head.putInt(i + 1);
+                    head.putInt(i == 0 ? TYPE_INT32 : TYPE_FLOAT32);
+                    head.putInt(comps[i]);
+                    head.putInt(ordered ? FLAG_BRIGHTNESS_ORDER : 0);
+                    head.putLong(offsets[i]);
+                }
+                head.clear();
+                writeFully(head, 0);
+            } finally {
+                channel.close();
+            }
+        }
+
+        private ByteBuffer scratch(int numFloats) {
+            if (scratch == null || scratch.capacity() < numFloats * 4) {
+                scratch = ByteBuffer.allocateDirect(numFloats * 4).order(
+                        ByteOrder.LITTLE_ENDIAN);
+            }
+            scratch.clear();
+            scratch.limit(numFloats * 4);
+            return scratch;
+        }
+
+        private void writeColumn(int col, int n) throws IOException {
+            scratch.limit(n * comps[col] * 4);
+            writeFully(scratch, offsets[col] + written * comps[col] * 4);
+        }
+
+        private void writeFully(ByteBuffer buf, long position)
+                throws IOException {
+            while (buf.hasRemaining()) {
+                channel.write(buf, position + buf.position());
+            }
+        }
+    }
+
+    /**
+     * Load the star catalog. The packed catalog is used if it exists,
+     * otherwise the Hipparcos binary file is read.
+     * 
+     * @return star catalog.
+     */
+    public static StarCatalog load() {
+        if (Files.exists(Paths.get(Defs.BIN_NAME_CATALOG))) {
+            try {
+                Telemetry.Span span = Telemetry.get().startCatalogLoad();
+                StarCatalog catalog = new StarCatalogFile(
+                        Defs.BIN_NAME_CATALOG).read(true);
+                // rows without temperature were dropped when packing
+                Telemetry.get().catalogLoaded(span, Defs.BIN_NAME_CATALOG,
+                        Files.size(Paths.get(Defs.BIN_NAME_CATALOG)),
+                        catalog.getNumStars(), 0);
+                return catalog;
+            } catch (IOException e) {
+                System.err.println("Cannot read " + Defs.BIN_NAME_CATALOG
+                        + ": " + e.getMessage());
+            }
+        }
+        return new Hipparcos().getCatalog();
+    }
+
+    /**
+     * Int column from its bytes, copied if not in native byte order.
+     */
+    private IntBuffer intColumn(ByteBuffer bytes, Column c, int n)
+            throws IOException {
+        if (c.type != TYPE_INT32 || c.components != 1) {
+            throw new IOException(filename + ": wrong layout of column "
+                    + c.id);
+        }
+        IntBuffer b = bytes.order(order).asIntBuffer();
+        if (order == ByteOrder.nativeOrder()) {
+            return b;
+        }
+        IntBuffer copy = Buffers.newDirectIntBuffer(b.capacity());
+        copy.put(b).clear();
+        return copy;
+    }
+
+    /**
+     * Float column from its bytes, copied if not in native byte order.
+     */
+    private FloatBuffer floatColumn(ByteBuffer bytes, Column c, int n)
+            throws IOException {
+        int comps = c.id == COL_VERTEX ? 3 : 1;
+        if (c.type != TYPE_FLOAT32 || c.components != comps) {
+            throw new IOException(filename + ": wrong layout of column "
+                    + c.id);
+        }
+        FloatBuffer b = bytes.order(order).asFloatBuffer();
+        if (order == ByteOrder.nativeOrder()) {
+            return b;
+        }
+        // OpenGL expects native byte order
+        FloatBuffer copy = Buffers.newDirectFloatBuffer(b.capacity());
+        copy.put(b).clear();
+        return copy;
+    }
+
+    private ByteBuffer columnBytes(ByteBuffer map, Column c, int n) {
+        ByteBuffer b = map.duplicate();
+        b.limit((int) (c.offset + (long) n * c.components * 4));
+        b.position((int) c.offset);
+        return b.slice().order(order);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf,
+            long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    /**
+     * Convert Hipparcos binary file into packed catalog, sorted by
+     * brightness.
+     * 
+     * @param args
+     *            : [hip.bin [hip.rsc]]
+     */
+    public static void main(String[] args) {
+        String in = args.length > 0 ? args[0] : Defs.BIN_NAME_HIPPARCOS;
+        String out = args.length > 1 ? args[1] : Defs.BIN_NAME_CATALOG;
+
+        StarCatalog catalog = BrightnessIndex.sort(new Hipparcos(in)
+                .getCatalog());
+        try {
+            write(catalog, out, true);
+            new StarCatalogFile(out).read(true);
+        } catch (IOException e) {
+            System.err.println("Cannot write " + out + ": " + e.getMessage());
+            System.exit(1);
+        }
+        System.err.printf("Convert %s ... %s (%d stars)\n", in, out,
+                catalog.getNumStars());
+    }
+}
@@ -0,0 +1,548 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * CPU implementation of the star projection of the vertex shader.
+ * 
+ * The whole catalog is transformed in batch: aberration and Doppler shift
+ * in Minkowski spacetime or the warp distortion table, followed by the
+ * fullsky, pinhole, fisheye or cube face camera. The catalog is
+ * partitioned across a fork-join pool; every star only writes to its own
+ * slot of the output arrays.
+ */
+public class StarProjector {
+    public static final int    DEFAULT_GRAIN = 8192;
+    /** Stars per block of the multi-view projection. */
+    public static final int    BLOCK         = 512;
+
+    private static final float edlg10        = 0.434294482f;
+    private static final float invPI         = 0.31830989f;
+    private static final float invTwoPI      = 0.15915494f;
+
+    /**
+     * Forward, right and up axis of the cube faces in the observer system,
+     * see ProjectionParams.cubeFaces(). The front face is the pinhole
+     * camera with a field of view of 90 degrees.
+     */
+    private static final float[][] FACES = {
+            { 1, 0, 0, 0, -1, 0, 0, 0, 1 },  // front
+            { 0, -1, 0, -1, 0, 0, 0, 0, 1 }, // right
+            { -1, 0, 0, 0, 1, 0, 0, 0, 1 },  // back
+            { 0, 1, 0, 1, 0, 0, 0, 0, 1 },   // left
+            { 0, 0, 1, 0, -1, 0, -1, 0, 0 }, // up
+            { 0, 0, -1, 0, -1, 0, 1, 0, 0 }, // down
+    };
+
+    private final ForkJoinPool pool;
+    private final TextureTable warpTable;
+    private int                grain         = DEFAULT_GRAIN;
+    private ProjectionKernel   kernel        = ProjectionKernel.load();
+
+    /**
+     * Star projector using the common fork-join pool.
+     * 
+     * @param warpTable
+     *            : warp distortion table, may be null for Minkowski only.
+     */
+    public StarProjector(TextureTable warpTable) {
+        this(ForkJoinPool.commonPool(), warpTable);
+    }
+
+    /**
+     * Star projector.
+     * 
+     * @param pool
+     *            : fork-join pool.
+     * @param warpTable
+     *            : warp distortion table, may be null for Minkowski only.
+     */
+    public StarProjector(ForkJoinPool pool, TextureTable warpTable) {
+        this.pool = pool;
+        this.warpTable = warpTable;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public TextureTable getWarpTable() {
+        return warpTable;
+    }
+
+    public ProjectionKernel getKernel() {
+        return kernel;
+    }
+
+    /**
+     * Set kernel used to project ranges of stars.
+     * 
+     * @param kernel
+     *            : projection kernel.
+     */
+    public void setKernel(ProjectionKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    /**
+     * Set number of stars below which a range is not split further.
+     * 
+     * @param grain
+     *            : grain size.
+     */
+    public void setGrain(int grain) {
+        this.grain = Math.max(1, grain);
+    }
+
+    /**
+     * Project all stars of the catalog.
+     * 
+     * @param catalog
+     *            : star catalog.
+     * @param params
+     *            : projection parameters.
+     * @param out
+     *            : preallocated output.
+     */
+    public void project(StarCatalog catalog, ProjectionParams params,
+            ProjectedStars out) {
+        if (params.spacetime != 0 && warpTable == null) {
+            throw new IllegalStateException("warp table is missing");
+        }
+        int n = catalog.getNumStars();
+        out.setCount(n);
+        pool.invoke(new ProjectTask(catalog, new ProjectionParams[] { params },
+                new ProjectedStars[] { out }, 0, n));
+    }
+
+    /**
+     * Project all stars of the catalog for several views of the same
+     * instant, e.g. cube faces, stereo pairs or different velocities. The
+     * catalog is traversed once; see projectRange().
+     * 
+     * @param catalog
+     *            : star catalog.
+     * @param params
+     *            : projection parameters of every view.
+     * @param out
+     *            : preallocated output of every view.
+     */
+    public void project(StarCatalog catalog, ProjectionParams[] params,
+            ProjectedStars[] out) {
+        if (params.length != out.length) {
+            throw new IllegalArgumentException(params.length + " views, "
+                    + out.length + " outputs");
+        }
+        for (ProjectionParams p : params) {
+            if (p.spacetime != 0 && warpTable == null) {
+                throw new IllegalStateException("warp table is missing");
+            }
+        }
+        int n = catalog.getNumStars();
+        for (ProjectedStars o : out) {
+            o.setCount(n);
+        }
+        pool.invoke(new ProjectTask(catalog, params, out, 0, n));
+    }
+
+    /**
+     * Project one chunk of a catalog. For the pinhole camera, only the sky
+     * tiles that can be seen are projected if the chunk has a sky index;
+     * the stars are then indexed like SkyIndex.getCatalog().
+     * 
+     * @param catalog
+     *            : chunked star catalog.
+     * @param k
+     *            : chunk index.
+     * @param params
+     *            : projection parameters.
+     * @param out
+     *            : preallocated output.
+     * @param ranges
+     *            : scratch for the selected star ranges.
+     * @throws IOException
+     *             if the chunk cannot be read.
+     */
+    public void project(ChunkedCatalog catalog, int k,
+            ProjectionParams params, ProjectedStars out,
+            SkyIndex.Ranges ranges) throws IOException {
+        SkyIndex sky = params.camera == 1 ? catalog.getSkyIndex(k) : null;
+        if (sky != null && sky.select(params, ranges)) {
+            project(sky.getCatalog(), params, out, ranges);
+        } else {
+            project(catalog.getChunk(k), params, out);
+        }
+    }
+
+    /**
+     * Project selected ranges of stars, e.g. the stars of a SkyIndex that
+     * can be seen by the pinhole camera. All other stars are invisible.
+     * 
+     * @param catalog
+     *            : star catalog.
+     * @param params
+     *            : projection parameters.
+     * @param out
+     *            : preallocated output.
+     * @param ranges
+     *            : star ranges.
+     */
+    @SuppressWarnings("serial")
+    public void project(StarCatalog catalog, ProjectionParams params,
+            ProjectedStars out, SkyIndex.Ranges ranges) {
+        if (params.spacetime != 0 && warpTable == null) {
+            throw new IllegalStateException("warp table is missing");
+        }
+        int n = catalog.getNumStars();
+        out.setCount(n);
+        Arrays.fill(out.visible, 0, n, false);
+
+        final List<ProjectTask> tasks = new ArrayList<ProjectTask>();
+        for (int r = 0; r < ranges.size; r++) {
+            tasks.add(new ProjectTask(catalog,
+                    new ProjectionParams[] { params },
+                    new ProjectedStars[] { out }, ranges.first[r],
+                    ranges.first[r] + ranges.count[r]));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * Fork-join task for a range of stars and one or more views.
+     */
+    @SuppressWarnings("serial")
+    private class ProjectTask extends RecursiveAction {
+        private final StarCatalog        catalog;
+        private final ProjectionParams[] params;
+        private final ProjectedStars[]   out;
+        private final int                from;
+        private final int                to;
+
+        ProjectTask(StarCatalog catalog, ProjectionParams[] params,
+                ProjectedStars[] out, int from, int to) {
+            this.catalog = catalog;
+            this.params = params;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                if (params.length == 1) {
+                    kernel.project(catalog, from, to, params[0], warpTable,
+                            out[0]);
+                } else {
+                    kernel.project(catalog, from, to, params, warpTable, out);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ProjectTask(catalog, params, out, from, mid),
+                    new ProjectTask(catalog, params, out, mid, to));
+        }
+    }
+
+    /**
+     * Project a range of stars. This is a line by line translation of the
+     * vertex shader, including its single precision.
+     * 
+     * As in the shader, stars behind the pinhole camera are invisible, so
+     * culling them does not change the image. The fisheye and cube face
+     * cameras have no shader; stars outside their field of view are
+     * invisible as well.
+     * 
+     * @param catalog
+     *            : star catalog.
+     * @param from
+     *            : first star.
+     * @param to
+     *            : end of range (exclusive).
+     * @param p
+     *            : projection parameters.
+     * @param warp
+     *            : warp distortion table.
+     * @param out
+     *            : output, indexed like the catalog.
+     */
+    public static void projectRange(StarCatalog catalog, int from, int to,
+            ProjectionParams p, TextureTable warp, ProjectedStars out) {
+        projectRange(catalog, from, to, new ProjectionParams[] { p }, warp,
+                new ProjectedStars[] { out });
+    }
+
+    /**
+     * Project a range of stars for several views. The stars are read in
+     * blocks of BLOCK stars; the values that do not depend on the view are
+     * computed once per block and then used by every view. The results are
+     * the same as those of separate projections.
+     * 
+     * @param catalog
+     *            : star catalog.
+     * @param from
+     *            : first star.
+     * @param to
+     *            : end of range (exclusive).
+     * @param p
+     *            : projection parameters of every view.
+     * @param warp
+     *            : warp distortion table.
+     * @param out
+     *            : output of every view, indexed like the catalog.
+     */
+    public static void projectRange(StarCatalog catalog, int from, int to,
+            ProjectionParams[] p, TextureTable warp, ProjectedStars[] out) {
+        View[] views = new View[p.length];
+        for (int v = 0; v < p.length; v++) {
+            views[v] = new View(p[v], warp);
+        }
+        StarBlock block = new StarBlock(Math.min(BLOCK, to - from));
+        for (int first = from; first < to; first += BLOCK) {
+            int last = Math.min(first + BLOCK, to);
+            block.load(catalog, first, last);
+            for (int v = 0; v < views.length; v++) {
+                views[v].project(block, out[v]);
+            }
+        }
+    }
+
+    /**
+     * Values of a block of stars that do not depend on the view.
+     */
+    private static class StarBlock {
+        final float[] sx;     // position in the catalog system
+        final float[] sy;
+        final float[] sz;
+        final float[] ra;
+        final float[] dec;
+        final float[] appMag;
+        final float[] temp;
+        int           first;
+        int           count;
+
+        StarBlock(int capacity) {
+            sx = new float[capacity];
+            sy = new float[capacity];
+            sz = new float[capacity];
+            ra = new float[capacity];
+            dec = new float[capacity];
+            appMag = new float[capacity];
+            temp = new float[capacity];
+        }
+
+        void load(StarCatalog catalog, int from, int to) {
+            first = from;
+            count = to - from;
+            for (int j = 0; j < count; j++) {
+                int i = from + j;
+                float psc = 1000.0f / catalog.parallax(i);
+                float r = catalog.ra(i);
+                float d = catalog.dec(i);
+
+                float s = psc * 3.26f;
+                float cd = (float) Math.cos(d);
+                sx[j] = s * cd * (float) Math.cos(r);
+                sy[j] = s * cd * (float) Math.sin(r);
+                sz[j] = s * (float) Math.sin(d);
+                ra[j] = r;
+                dec[j] = d;
+                appMag[j] = catalog.absMag(i) + 10.0f - 5.0f
+                        * (float) Math.log(psc) * edlg10;
+                temp[j] = catalog.temp(i);
+            }
+        }
+    }
+
+    /**
+     * Projection of one view, see projectRange().
+     */
+    private static class View {
+        private final float[]      m;
+        private final float[]      t;
+        private final float        currPos;
+        private final float        beta;
+        private final float        wx;
+        private final float        wy;
+        private final float        d;
+        private final float        thetaMax;
+        private final float[]      axes;
+        private final int          spacetime;
+        private final int          camera;
+        private final TextureTable warp;
+        private final float[]      rd = new float[2];
+
+        View(ProjectionParams p, TextureTable warp) {
+            m = p.rotmat;
+            t = p.tetrad;
+            currPos = (float) p.currPos;
+            beta = p.shaderBeta();
+            wx = p.width;
+            wy = p.height;
+            thetaMax = (float) Math.toRadians(p.fisheyeFov * 0.5);
+            axes = FACES[p.camera == 3 ? p.face : 0];
+            if (p.camera == 2) {
+                // pixels per radian
+                d = Math.min(wx, wy) * 0.5f / thetaMax;
+            } else if (p.camera == 3) {
+                d = wy * 0.5f;
+            } else {
+                d = wy * 0.5f / (float) Math.tan(p.fovYh());
+            }
+            spacetime = p.spacetime;
+            camera = p.camera;
+            this.warp = warp;
+        }
+
+        void project(StarBlock b, ProjectedStars out) {
+            for (int j = 0; j < b.count; j++) {
+                int i = b.first + j;
+                float ra = b.ra[j];
+                float dec = b.dec[j];
+
+                // rotation of global coordinate system
+                float sx = b.sx[j];
+                float sy = b.sy[j];
+                float sz = b.sz[j];
+                float rx = m[0] * sx + m[4] * sy + m[8] * sz;
+                float ry = m[1] * sx + m[5] * sy + m[9] * sz;
+                float rz = m[2] * sx + m[6] * sy + m[10] * sz;
+
+                // relative position between star and observer
+                float lx = rx - currPos;
+                float len = (float) Math.sqrt(lx * lx + ry * ry + rz * rz);
+                float nx = lx / len;
+                float ny = ry / len;
+                float nz = rz / len;
+
+                float omega = 1.0f;
+                float oneOverMu = 1.0f;
+                boolean validPoint = true;
+
+                if (spacetime == 0) {
+                    // light vector k = (1,-n) in observer system
+                    float k0 = t[0] - t[4] * nx - t[8] * ny - t[12] * nz;
+                    float k1 = t[1] - t[5] * nx - t[9] * ny - t[13] * nz;
+                    float k2 = t[2] - t[6] * nx - t[10] * ny - t[14] * nz;
+                    float k3 = t[3] - t[7] * nx - t[11] * ny - t[15] * nz;
+                    omega = Math.abs(k0);
+                    float kl = (float) Math.sqrt(k1 * k1 + k2 * k2 + k3 * k3);
+                    calcRaDec(-k1 / kl, -k2 / kl, -k3 / kl, Float.NaN, rd);
+                    ra = rd[0];
+                    dec = rd[1];
+                } else {
+                    float phi = (float) Math.acos(nx) * invPI;
+                    float xi = warp.sample(phi, beta + 0.01f, 0);
+                    omega = 1.0f / warp.sample(phi, beta + 0.01f, 1);
+                    oneOverMu = 1.0f / warp.sample(phi, beta + 0.01f, 2);
+                    if (xi < 0.0f) {
+                        validPoint = false;
+                    } else {
+                        calcRaDec(nx, ny, nz, xi, rd);
+                        ra = rd[0];
+                        dec = rd[1];
+                    }
+                }
+
+                if (camera == 0) {
+                    out.x[i] = (0.5f - ra * invTwoPI) * wx;
+                    out.y[i] = (0.5f + dec * invPI) * wy;
+                } else {
+                    float cdec = (float) Math.cos(dec);
+                    float vx = cdec * (float) Math.cos(ra);
+                    float vy = cdec * (float) Math.sin(ra);
+                    float vz = (float) Math.sin(dec);
+                    if (camera == 2) {
+                        // azimuthal equidistant around the x-axis
+                        float s = (float) Math.sqrt(vy * vy + vz * vz);
+                        float theta = (float) Math.atan2(s, vx);
+                        float r = s > 0.0f ? d * theta / s : 0.0f;
+                        out.x[i] = wx * 0.5f - r * vy;
+                        out.y[i] = wy * 0.5f + r * vz;
+                        validPoint &= theta <= thetaMax;
+                    } else if (camera == 3) {
+                        float[] a = axes;
+                        float f = a[0] * vx + a[1] * vy + a[2] * vz;
+                        float u = a[3] * vx + a[4] * vy + a[5] * vz;
+                        float v = a[6] * vx + a[7] * vy + a[8] * vz;
+                        out.x[i] = f > 0.0f ? wx * 0.5f + d * u / f : 0.0f;
+                        out.y[i] = f > 0.0f ? wy * 0.5f + d * v / f : 0.0f;
+                        validPoint &= f > 0.0f;
+                    } else if (vx > 0.0f) {
+                        out.x[i] = wx * 0.5f - d * vy / vx;
+                        out.y[i] = wy * 0.5f + d * vz / vx;
+                    } else {
+                        out.x[i] = 0.0f;
+                        out.y[i] = 0.0f;
+                        validPoint = false;
+                    }
+                }
+
+                float appMag = b.appMag[j];
+                out.logTemp[i] = (float) Math.log(b.temp[j] * omega)
+                        * edlg10;
+                out.appMag[i] = appMag;
+                out.oneOverMu[i] = oneOverMu;
+                out.visible[i] = !(appMag > Defs.MAX_APPMAG) && validPoint;
+            }
+        }
+    }
+
+    /**
+     * Direction in the plane spanned by the x-axis and 'dir', rotated by
+     * the angle 'angle' from the x-axis, in spherical coordinates
+     * (calcNewRaDec and calcWarpRaDec of the shader). If 'dir' is parallel
+     * to the x-axis, the xy-plane is used.
+     * 
+     * @param dx
+     *            : direction x.
+     * @param dy
+     *            : direction y.
+     * @param dz
+     *            : direction z.
+     * @param angle
+     *            : angle to the x-axis, NaN for the angle of 'dir' itself.
+     * @param rd
+     *            : resulting right ascension and declination.
+     */
+    static void calcRaDec(float dx, float dy, float dz, float angle,
+            float[] rd) {
+        // ez = normalize(cross(ex,dir)), ey = normalize(cross(ez,ex))
+        float l = (float) Math.sqrt(dy * dy + dz * dz);
+        float eyy = 1.0f;
+        float eyz = 0.0f;
+        if (l > 0.0f) {
+            eyy = dy / l;
+            eyz = dz / l;
+        }
+
+        float phi = Float.isNaN(angle) ? (float) Math.acos(dx) : angle;
+        float x = (float) Math.cos(phi);
+        float s = (float) Math.sin(phi);
+        float y = s * eyy;
+        float z = s * eyz;
+
+        rd[1] = (float) Math.atan2(z, Math.sqrt(x * x + y * y));
+        rd[0] = (float) Math.atan2(y, x);
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Timeline of the startup stages.
+ * 
+ * Stages may run on different threads. Start and end times are measured
+ * relative to the creation of the timeline, i.e. the application start.
+ */
+public class StartupTimeline {
+
+    /**
+     * Single startup stage.
+     */
+    public class Stage {
+        private final String name;
+        private final String thread;
+        private final long   start;
+        private long         end = -1;
+
+        private Stage(String name) {
+            this.name = name;
+            this.thread = Thread.currentThread().getName();
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * End stage.
+         */
+        public void end() {
+            end = System.nanoTime();
+            synchronized (StartupTimeline.this) {
+                stages.add(this);
+            }
+        }
+    }
+
+    private final long        origin;
+    private final List<Stage> stages = new ArrayList<Stage>();
+
+    public StartupTimeline() {
+        origin = System.nanoTime();
+    }
+
+    /**
+     * Begin new stage on the current thread.
+     * 
+     * @param name
+     *            : name of stage.
+     * @return stage that has to be ended.
+     */
+    public Stage begin(String name) {
+        return new Stage(name);
+    }
+
+    /**
+     * Time since application start.
+     * 
+     * @return elapsed time in milliseconds.
+     */
+    public double elapsed() {
+        return (System.nanoTime() - origin) * 1e-6;
+    }
+
+    /**
+     * Print all finished stages ordered by start time.
+     * 
+     * @param out
+     *            : print stream.
+     */
+    public synchronized void print(PrintStream out) {
+        List<Stage> sorted = new ArrayList<Stage>(stages);
+        Collections.sort(sorted, new Comparator<Stage>() {
+            @Override
+            public int compare(Stage a, Stage b) {
+                return Long.compare(a.start, b.start);
+            }
+        });
+
+        out.println("Startup timeline:");
+        out.printf("\t%-24s %-22s %9s %9s\n", "stage", "thread", "start",
+                "duration");
+        for (Stage s : sorted) {
+            out.printf("\t%-24s %-22s %7.1fms %7.1fms\n", s.name, s.thread,
+                    (s.start - origin) * 1e-6, (s.end - s.start) * 1e-6);
+        }
+        out.printf("\t%-24s %-22s %7.1fms\n", "total", "", elapsed());
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+/**
+ * Events of asset loading and rendering for external recorders.
+ * 
+ * The default telemetry does nothing. The Java Flight Recorder telemetry
+ * in src-jfr needs JDK 11 or later; it is built by the 'build-jfr' target
+ * and emits its events into every running flight recording, e.g. with
+ * '-XX:StartFlightRecording'. The system property 'relstar.telemetry=none'
+ * turns the events off.
+ * 
+ * Events of a phase span it: the start method is called when the phase
+ * begins, and the returned span is passed to the report at its end.
+ */
+public class Telemetry {
+    public static final String JFR_TELEMETRY =
+            "tauzero7.java.relavis.relstar.JfrTelemetry";
+
+    private static Telemetry   current;
+
+    /**
+     * Event of a phase, from its start method to its report.
+     */
+    public static class Span {
+        /** Span of disabled events. */
+        public static final Span NONE = new Span();
+    }
+
+    /**
+     * Telemetry of this JVM.
+     * 
+     * @return flight recorder telemetry if available, no-op otherwise.
+     */
+    public static synchronized Telemetry get() {
+        if (current == null) {
+            current = new Telemetry();
+            if (!"none".equals(System.getProperty("relstar.telemetry"))) {
+                try {
+                    current = (Telemetry) Class.forName(JFR_TELEMETRY)
+                            .getDeclaredConstructor().newInstance();
+                } catch (ClassNotFoundException e) {
+                    // not built
+                } catch (Exception | LinkageError e) {
+                    // built, but the JVM has no flight recorder
+                    System.err.println("Flight recorder events not "
+                            + "available: " + e);
+                }
+            }
+        }
+        return current;
+    }
+
+    public String getName() {
+        return "none";
+    }
+
+    /**
+     * Start reading a star catalog.
+     * 
+     * @return span for catalogLoaded().
+     */
+    public Span startCatalogLoad() {
+        return Span.NONE;
+    }
+
+    /**
+     * Star catalog was read.
+     * 
+     * @param span
+     *            : span of startCatalogLoad().
+     * @param filename
+     *            : catalog file.
+     * @param bytes
+     *            : file size.
+     * @param rowsKept
+     *            : number of stars in the catalog.
+     * @param rowsRejected
+     *            : number of rows without valid temperature.
+     */
+    public void catalogLoaded(Span span, String filename, long bytes,
+            long rowsKept, long rowsRejected) {
+    }
+
+    /**
+     * Start decoding a texture table.
+     * 
+     * @return span for tableDecoded().
+     */
+    public Span startTableDecode() {
+        return Span.NONE;
+    }
+
+    /**
+     * Texture table was decoded.
+     * 
+     * @param span
+     *            : span of startTableDecode().
+     * @param filename
+     *            : table file.
+     * @param width
+     *            : table width.
+     * @param height
+     *            : table height.
+     * @param num
+     *            : number of components.
+     * @param bytes
+     *            : size of the table data.
+     */
+    public void tableDecoded(Span span, String filename, int width,
+            int height, int num, long bytes) {
+    }
+
+    /**
+     * Start compiling a shader.
+     * 
+     * @return span for shaderCompiled().
+     */
+    public Span startShaderCompile() {
+        return Span.NONE;
+    }
+
+    /**
+     * Shader was compiled.
+     * 
+     * @param span
+     *            : span of startShaderCompile().
+     * @param stage
+     *            : "vertex" or "fragment".
+     * @param ok
+     *            : compile status.
+     */
+    public void shaderCompiled(Span span, String stage, boolean ok) {
+    }
+
+    /**
+     * Start linking the shader program.
+     * 
+     * @return span for shaderLinked().
+     */
+    public Span startShaderLink() {
+        return Span.NONE;
+    }
+
+    /**
+     * Shader program was linked.
+     * 
+     * @param span
+     *            : span of startShaderLink().
+     * @param ok
+     *            : link status.
+     * @param uniforms
+     *            : number of active uniforms.
+     */
+    public void shaderLinked(Span span, boolean ok, int uniforms) {
+    }
+
+    /**
+     * Start rendering a frame.
+     * 
+     * @return span for frameRendered().
+     */
+    public Span startFrame() {
+        return Span.NONE;
+    }
+
+    /**
+     * Frame was rendered, including the buffer swap.
+     * 
+     * @param span
+     *            : span of startFrame().
+     * @param starsDrawn
+     *            : number of stars sent to the graphics board.
+     * @param starsCulled
+     *            : number of stars skipped by magnitude or view.
+     * @param uniformCalls
+     *            : number of uniform calls.
+     */
+    public void frameRendered(Span span, long starsDrawn, long starsCulled,
+            int uniformCalls) {
+    }
+
+    /**
+     * Flight state was changed by the user.
+     * 
+     * @param change
+     *            : what was changed, e.g. "play" or "velocity".
+     * @param beta
+     *            : velocity.
+     * @param position
+     *            : distance to origin.
+     * @param spacetime
+     *            : Minkowski=0, Warp=1.
+     * @param camera
+     *            : 4pi=0, Pinhole=1.
+     */
+    public void flightChanged(String change, double beta, double position,
+            int spacetime, int camera) {
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.jogamp.common.nio.Buffers;
+
+/**
+ * Lookup table stored as binary texture file.
+ * 
+ * The file starts with the 4-byte code CODE, followed by width, height and
+ * number of components as little-endian integers, and the float data. The
+ * data are mapped into memory and shared by the OpenGL upload and CPU-side
+ * lookups.
+ */
+public class TextureTable {
+    public static final int    HEADER_SIZE = 16;
+    public static final String CODE        = "SIZE";
+
+    private static final ConcurrentHashMap<String, TextureTable> cache =
+            new ConcurrentHashMap<String, TextureTable>();
+
+    private final String      filename;
+    private final String      code;
+    private final int         width;
+    private final int         height;
+    private final int         num;
+    private final FloatBuffer data;
+
+    /**
+     * Read texture table.
+     * 
+     * @param filename
+     *            : name of table file.
+     * @throws IOException
+     *             if the file cannot be read or the header is not valid.
+     */
+    public TextureTable(String filename) throws IOException {
+        this.filename = filename;
+        Telemetry.Span span = Telemetry.get().startTableDecode();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException(filename + ": file too short");
+            }
+            ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    fileSize).order(ByteOrder.LITTLE_ENDIAN);
+
+            byte[] head_code = new byte[4];
+            map.get(head_code);
+            code = new String(head_code, "US-ASCII");
+            if (!CODE.equals(code)) {
+                throw new IOException(filename + ": wrong code '" + code
+                        + "', expected '" + CODE + "'");
+            }
+            width = map.getInt(4);
+            height = map.getInt(8);
+            num = map.getInt(12);
+
+            long byteSize = (long) width * height * num * Float.BYTES;
+            if (width <= 0 || height <= 0 || num <= 0
+                    || HEADER_SIZE + byteSize > fileSize) {
+                throw new IOException(filename + ": wrong size " + width
+                        + " x " + height + " x " + num);
+            }
+
+            map.limit((int) (HEADER_SIZE + byteSize));
+            map.position(HEADER_SIZE);
+            FloatBuffer buf = map.slice().order(ByteOrder.LITTLE_ENDIAN)
+                    .asFloatBuffer();
+            if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+                // OpenGL expects native byte order
+                FloatBuffer copy = Buffers.newDirectFloatBuffer(buf
+                        .capacity());
+                copy.put(buf).clear();
+                buf = copy;
+            }
+            data = buf;
+        }
+        Telemetry.get().tableDecoded(span, filename, width, height, num,
+                (long) data.capacity() * Float.BYTES);
+    }
+
+    /**
+     * Get texture table from cache, read it if necessary.
+     * 
+     * @param filename
+     *            : name of table file.
+     * @return texture table.
+     * @throws IOException
+     *             if the file cannot be read or the header is not valid.
+     */
+    public static TextureTable get(String filename) throws IOException {
+        TextureTable table = cache.get(filename);
+        if (table == null) {
+            table = new TextureTable(filename);
+            TextureTable prev = cache.putIfAbsent(filename, table);
+            if (prev != null) {
+                table = prev;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Write texture table. The file is written next to its final name and
+     * then moved into place, so readers never see a partial table.
+     * 
+     * @param filename
+     *            : name of table file.
+     * @param width
+     *            : table width.
+     * @param height
+     *            : table height.
+     * @param num
+     *            : number of components.
+     * @param data
+     *            : width*height*num values, row by row.
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    public static void write(String filename, int width, int height, int num,
+            float[] data) throws IOException {
+        if ((long) width * height * num != data.length) {
+            throw new IllegalArgumentException(data.length + " values for "
+                    + width + " x " + height + " x " + num);
+        }
+        Path path = Paths.get(filename).toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        Path tmp = Files.createTempFile(path.getParent(), path.getFileName()
+                .toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + data.length
+                    * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buf.put(CODE.getBytes("US-ASCII"));
+            buf.putInt(width).putInt(height).putInt(num);
+            buf.asFloatBuffer().put(data);
+            buf.clear();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        cache.remove(filename);
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getNum() {
+        return num;
+    }
+
+    /**
+     * Get table data. The buffer shares memory with the table.
+     * 
+     * @return float buffer of width*height*num values.
+     */
+    public FloatBuffer getData() {
+        return data.duplicate();
+    }
+
+    /**
+     * Get single table value.
+     * 
+     * @param x
+     *            : column.
+     * @param y
+     *            : row.
+     * @param c
+     *            : component.
+     * @return table value.
+     */
+    public float get(int x, int y, int c) {
+        return data.get((y * width + x) * num + c);
+    }
+
+    /**
+     * Sample table with bilinear interpolation like a GL_LINEAR texture
+     * whose coordinates are clamped to the edge.
+     * 
+     * @param s
+     *            : texture coordinate in [0,1] along width.
+     * @param t
+     *            : texture coordinate in [0,1] along height.
+     * @param c
+     *            : component.
+     * @return interpolated value.
+     */
+    public float sample(float s, float t, int c) {
+        float x = s * width - 0.5f;
+        float y = t * height - 0.5f;
+        x = Math.max(0.0f, Math.min(x, width - 1));
+        y = Math.max(0.0f, Math.min(y, height - 1));
+
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int x1 = Math.min(x0 + 1, width - 1);
+        int y1 = Math.min(y0 + 1, height - 1);
+        float fx = x - x0;
+        float fy = y - y0;
+
+        float v0 = get(x0, y0, c) * (1.0f - fx) + get(x1, y0, c) * fx;
+        float v1 = get(x0, y1, c) * (1.0f - fx) + get(x1, y1, c) * fx;
+        return v0 * (1.0f - fy) + v1 * fy;
+    }
+}
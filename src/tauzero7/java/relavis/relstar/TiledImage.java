@@ -0,0 +1,192 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * RGB float image in a memory-mapped portable float map (PFM), accessed
+ * tile by tile.
+ * 
+ * The pixels live in the file, not on the heap: the operating system pages
+ * them in and out, so images much larger than the memory of the JVM can be
+ * rendered. The file is mapped in segments of whole rows, since a mapping
+ * is limited to 2 GB. Rows are bottom-up like in the Framebuffer and the
+ * PFM format. A new image is black. Different tiles can be read and
+ * written concurrently.
+ */
+public class TiledImage implements Closeable {
+    private static final long         MAX_SEGMENT = 1L << 30;
+
+    private final int                 width;
+    private final int                 height;
+    private final int                 tileSize;
+    private final int                 rowsPerSegment;
+    private final FileChannel         channel;
+    private final MappedByteBuffer[]  segments;
+    private final FloatBuffer[]       pixels;
+
+    /**
+     * Create image file.
+     * 
+     * @param filename
+     *            : name of PFM file, an existing file is overwritten.
+     * @param width
+     *            : width in pixels.
+     * @param height
+     *            : height in pixels.
+     * @param tileSize
+     *            : width and height of a tile.
+     * @throws IOException
+     *             if the file cannot be created.
+     */
+    public TiledImage(String filename, int width, int height, int tileSize)
+            throws IOException {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+
+        // negative scale denotes little-endian data
+        byte[] head = String.format("PF\n%d %d\n-1.0\n", width, height)
+                .getBytes("US-ASCII");
+        long rowBytes = width * 12L;
+        rowsPerSegment = (int) Math.max(1, MAX_SEGMENT / rowBytes);
+        int numSegments = (height + rowsPerSegment - 1) / rowsPerSegment;
+
+        channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        segments = new MappedByteBuffer[numSegments];
+        pixels = new FloatBuffer[numSegments];
+        try {
+            ByteBuffer hb = ByteBuffer.wrap(head);
+            while (hb.hasRemaining()) {
+                channel.write(hb, hb.position());
+            }
+            for (int s = 0; s < numSegments; s++) {
+                long first = (long) s * rowsPerSegment;
+                long rows = Math.min(rowsPerSegment, height - first);
+                segments[s] = channel.map(FileChannel.MapMode.READ_WRITE,
+                        head.length + first * rowBytes, rows * rowBytes);
+                segments[s].order(ByteOrder.LITTLE_ENDIAN);
+                pixels[s] = segments[s].asFloatBuffer();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Tile size for a memory budget per tile.
+     * 
+     * @param bytes
+     *            : bytes of an RGB float tile.
+     * @return tile size, a multiple of 16.
+     */
+    public static int tileSize(int bytes) {
+        int size = (int) Math.sqrt(bytes / 12.0) / 16 * 16;
+        return Math.max(16, size);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getTilesX() {
+        return (width + tileSize - 1) / tileSize;
+    }
+
+    public int getTilesY() {
+        return (height + tileSize - 1) / tileSize;
+    }
+
+    /**
+     * Copy tile into a framebuffer.
+     * 
+     * @param tx
+     *            : tile column.
+     * @param ty
+     *            : tile row from bottom.
+     * @param fb
+     *            : framebuffer of at least tileSize x tileSize pixels, the
+     *            tile is stored at its origin.
+     */
+    public void readTile(int tx, int ty, Framebuffer fb) {
+        copyTile(tx, ty, fb, false);
+    }
+
+    /**
+     * Copy framebuffer into a tile.
+     * 
+     * @param tx
+     *            : tile column.
+     * @param ty
+     *            : tile row from bottom.
+     * @param fb
+     *            : framebuffer of at least tileSize x tileSize pixels with
+     *            the tile at its origin.
+     */
+    public void writeTile(int tx, int ty, Framebuffer fb) {
+        copyTile(tx, ty, fb, true);
+    }
+
+    private void copyTile(int tx, int ty, Framebuffer fb, boolean write) {
+        int x0 = tx * tileSize;
+        int y0 = ty * tileSize;
+        int n = (Math.min(x0 + tileSize, width) - x0) * 3;
+        int y1 = Math.min(y0 + tileSize, height);
+        FloatBuffer tile = fb.getData();
+        for (int y = y0; y < y1; y++) {
+            FloatBuffer image = pixels[y / rowsPerSegment].duplicate();
+            int i = ((y % rowsPerSegment) * width + x0) * 3;
+            int k = (y - y0) * fb.getWidth() * 3;
+            image.limit(i + n).position(i);
+            tile.limit(k + n).position(k);
+            if (write) {
+                image.put(tile);
+            } else {
+                tile.put(image);
+            }
+            tile.clear();
+        }
+    }
+
+    /**
+     * Write the mapped pixels to the file and close it.
+     * 
+     * @throws IOException
+     *             if the file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        for (MappedByteBuffer s : segments) {
+            s.force();
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Render high-resolution masters for domes and cubemaps, e.g. 8K x 8K
+ * fisheye images or six 4K cube faces, without OpenGL.
+ * 
+ * The images are TiledImages, memory-mapped PFM files. The catalog is
+ * projected chunk by chunk for all views in one pass; then the projected
+ * stars are binned per tile and the tiles are rasterized in parallel. The
+ * memory is the projected chunk of every view plus one tile of
+ * Defs.TILE_MEMORY bytes per thread, independent of the image size.
+ */
+public class TiledRenderer {
+    private final ChunkedCatalog     catalog;
+    private final StarProjector      projector;
+    private final SoftwareRasterizer rasterizer;
+
+    /**
+     * Tiled renderer.
+     * 
+     * @param catalog
+     *            : star catalog, rendered chunk by chunk.
+     * @param psiTemp
+     *            : psi temperature table.
+     * @param sigma
+     *            : sigma table.
+     * @param warp
+     *            : warp distortion table, may be null for Minkowski only.
+     * @param pool
+     *            : fork-join pool.
+     */
+    public TiledRenderer(ChunkedCatalog catalog, TextureTable psiTemp,
+            TextureTable sigma, TextureTable warp, ForkJoinPool pool) {
+        this.catalog = catalog;
+        this.projector = new StarProjector(pool, warp);
+        this.rasterizer = new SoftwareRasterizer(psiTemp, sigma, pool);
+    }
+
+    public StarProjector getProjector() {
+        return projector;
+    }
+
+    public SoftwareRasterizer getRasterizer() {
+        return rasterizer;
+    }
+
+    /**
+     * Render several views of the same instant.
+     * 
+     * @param params
+     *            : projection parameters of every view, width and height
+     *            must match the image.
+     * @param images
+     *            : image of every view.
+     * @return number of visible stars in all views.
+     * @throws IOException
+     *             if a chunk cannot be read.
+     */
+    public long render(ProjectionParams[] params, TiledImage[] images)
+            throws IOException {
+        ChunkedCatalog bright = catalog.brightest(Defs.MAX_APPMAG);
+        int length = bright.getNumChunks() > 0 ? bright.getChunkLength(0)
+                : 0;
+        ProjectedStars[] stars = new ProjectedStars[params.length];
+        for (int v = 0; v < params.length; v++) {
+            stars[v] = new ProjectedStars(length);
+        }
+
+        long numVisible = 0;
+        for (int k = 0; k < bright.getNumChunks(); k++) {
+            projector.project(bright.getChunk(k), params, stars);
+            for (int v = 0; v < params.length; v++) {
+                rasterizer.render(stars[v], params[v].camera, images[v],
+                        k == 0);
+                numVisible += stars[v].getNumVisible();
+            }
+        }
+        return numVisible;
+    }
+
+    /**
+     * Render a fisheye image or the six faces of a cubemap. The faces are
+     * written to name_front.pfm, name_right.pfm, and so on.
+     * 
+     * Usage: TiledRenderer name.pfm (fisheye|cube) size [beta spacetime
+     * currPos fov]
+     * 
+     * @param args
+     *            : command line arguments.
+     */
+    public static void main(String[] args) {
+        if (args.length < 3 || !args[0].endsWith(".pfm")
+                || !(args[1].equals("fisheye") || args[1].equals("cube"))) {
+            System.err.println("Usage: TiledRenderer name.pfm (fisheye|cube) "
+                    + "size [beta spacetime currPos fov]");
+            System.exit(1);
+        }
+        ProjectionParams params = new ProjectionParams();
+        int size = 0;
+        try {
+            size = Integer.parseInt(args[2]);
+            if (args.length > 3) {
+                params.beta = Double.parseDouble(args[3]);
+            }
+            if (args.length > 4) {
+                params.spacetime = Integer.parseInt(args[4]);
+            }
+            if (args.length > 5) {
+                params.currPos = Double.parseDouble(args[5]);
+            }
+            if (args.length > 6) {
+                params.fisheyeFov = Double.parseDouble(args[6]);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid argument: " + e.getMessage());
+            System.exit(1);
+        }
+        if (params.spacetime == 0) {
+            params.setBoost(params.beta);
+        }
+
+        String base = args[0].substring(0, args[0].length() - 4);
+        ProjectionParams[] views;
+        String[] names;
+        if (args[1].equals("cube")) {
+            views = params.cubeFaces(size);
+            names = new String[] { "front", "right", "back", "left", "up",
+                    "down" };
+            for (int f = 0; f < names.length; f++) {
+                names[f] = base + "_" + names[f] + ".pfm";
+            }
+        } else {
+            params.camera = 2;
+            params.width = size;
+            params.height = size;
+            views = new ProjectionParams[] { params };
+            names = new String[] { args[0] };
+        }
+
+        TextureTable psiTemp = null;
+        TextureTable sigma = null;
+        TextureTable warp = null;
+        try {
+            psiTemp = SpectralTables.loadPsiTemp();
+            sigma = SpectralTables.loadSigma();
+            if (params.spacetime != 0) {
+                warp = WarpTable.load();
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        ChunkedCatalog catalog = ChunkedCatalog.load();
+
+        TiledRenderer renderer = new TiledRenderer(catalog, psiTemp, sigma,
+                warp, ForkJoinPool.commonPool());
+        int tileSize = TiledImage.tileSize(Defs.TILE_MEMORY);
+        TiledImage[] images = new TiledImage[views.length];
+        try {
+            for (int v = 0; v < views.length; v++) {
+                images[v] = new TiledImage(names[v], size, size, tileSize);
+            }
+            long start = System.nanoTime();
+            long numVisible = renderer.render(views, images);
+            for (TiledImage image : images) {
+                image.close();
+            }
+            System.out.println(String.format(
+                    "Rendered %d stars in %d view(s) of %dx%d in %.1f ms "
+                            + "(tile %d)", numVisible, views.length, size,
+                    size, (System.nanoTime() - start) * 1e-6, tileSize));
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
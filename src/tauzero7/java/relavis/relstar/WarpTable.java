@@ -0,0 +1,459 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generator of the warp distortion table.
+ * 
+ * The observer sits in the center of an Alcubierre warp bubble with radius
+ * R and wall thickness parameter SIGMA that moves along the x axis with
+ * velocity v. In coordinates comoving with the bubble the metric
+ * 
+ * ds^2 = -dt^2 + (dx + h dt)^2 + dy^2 + dz^2, h = v (1 - f(r))
+ * 
+ * is static and axisymmetric, so every light ray stays in a plane through
+ * the x axis and its energy is conserved. Rays are integrated from the
+ * observer backwards in time with an adaptive Dormand-Prince 5(4) scheme
+ * until the shift is negligible; from there on they are straight lines,
+ * and their direction and frequency in the rest frame of the stars are
+ * final. This gives the asymptotic angle phi and the frequency ratio for
+ * every observation angle xi.
+ * 
+ * The relation xi to phi is inverted for the table columns phi in [0,pi].
+ * If several images exist, the one with the smallest xi is kept. The
+ * magnification is the ratio of the solid angles, sin(xi) dxi / (sin(phi)
+ * dphi). Every table entry holds (xi, 1+z, mu); xi is -1 where no ray
+ * reaches the stars. Row 'row' of a table with height H belongs to the
+ * velocity (1+vmax)^((row+1)/H) - 1, which for vmax=9 is the sampling
+ * v = 10^((row+1)/H) - 1 expected by the shader.
+ * 
+ * Rows are computed in parallel. load() keeps the result on disk, keyed by
+ * resolution and maximum velocity.
+ */
+public class WarpTable {
+    /** Radius of the warp bubble. */
+    public static final double R         = 2.0;
+    /** Thickness parameter of the bubble wall. */
+    public static final double SIGMA     = 1.0;
+    /** Rays are given up at this distance from the bubble. */
+    public static final double R_MAX     = 5e4;
+    /** Shift below which a ray leaving the bubble is a straight line. */
+    public static final double FLAT      = 1e-13;
+    /** Relative tolerance of the integrator. */
+    public static final double TOLERANCE = 1e-10;
+    /** Maximum number of steps per ray. */
+    public static final int    MAX_STEPS = 100000;
+    /** Number of rays per table column. */
+    public static final int    OVERSAMPLE = 2;
+
+    private final int          width;
+    private final int          height;
+    private final double       betaMax;
+
+    /**
+     * Warp table generator.
+     * 
+     * @param width
+     *            : number of angles phi.
+     * @param height
+     *            : number of velocities.
+     * @param betaMax
+     *            : maximum velocity, e.g. Defs.betaMaxWarp.
+     */
+    public WarpTable(int width, int height, double betaMax) {
+        if (width < 2 || height < 1 || !(betaMax > 0.0)) {
+            throw new IllegalArgumentException("warp table " + width + " x "
+                    + height + ", max " + betaMax);
+        }
+        this.width = width;
+        this.height = height;
+        this.betaMax = betaMax;
+    }
+
+    /**
+     * Velocity of a table row.
+     * 
+     * @param row
+     *            : row index.
+     * @return velocity in units of c.
+     */
+    public double velocity(int row) {
+        return Math.pow(1.0 + betaMax, (row + 1.0) / height) - 1.0;
+    }
+
+    /**
+     * Name of the cached table.
+     * 
+     * @param width
+     *            : number of angles.
+     * @param height
+     *            : number of velocities.
+     * @param betaMax
+     *            : maximum velocity.
+     * @return file name in the data directory.
+     */
+    public static String cacheName(int width, int height, double betaMax) {
+        return String.format(Locale.US, "data/warpDistort_%dx%d_max%s.bin",
+                width, height, fmt(betaMax));
+    }
+
+    private static String fmt(double v) {
+        return v == Math.rint(v) ? Long.toString((long) v) : Double
+                .toString(v);
+    }
+
+    /**
+     * Load the warp table for Defs.WARP_WIDTH, Defs.WARP_HEIGHT and
+     * Defs.betaMaxWarp. A cached table is used if it exists. Otherwise the
+     * classic table Defs.BIN_NAME_WARP is used for a maximum velocity of 9,
+     * or a new table is computed and cached.
+     * 
+     * @return warp distortion table.
+     * @throws IOException
+     *             if the table cannot be read or written.
+     */
+    public static TextureTable load() throws IOException {
+        String name = cacheName(Defs.WARP_WIDTH, Defs.WARP_HEIGHT,
+                Defs.betaMaxWarp);
+        if (Files.exists(Paths.get(name))) {
+            return TextureTable.get(name);
+        }
+        if (Defs.betaMaxWarp == 9.0
+                && Files.exists(Paths.get(Defs.BIN_NAME_WARP))) {
+            return TextureTable.get(Defs.BIN_NAME_WARP);
+        }
+        System.err.println("Compute " + name + " ...");
+        WarpTable table = new WarpTable(Defs.WARP_WIDTH, Defs.WARP_HEIGHT,
+                Defs.betaMaxWarp);
+        TextureTable.write(name, Defs.WARP_WIDTH, Defs.WARP_HEIGHT, 3,
+                table.compute(Runtime.getRuntime().availableProcessors(),
+                        true));
+        return TextureTable.get(name);
+    }
+
+    /**
+     * Compute all rows.
+     * 
+     * @param numThreads
+     *            : number of threads.
+     * @param progress
+     *            : print progress to System.err.
+     * @return width*height*3 values (xi, 1+z, mu), row by row.
+     */
+    public float[] compute(int numThreads, final boolean progress) {
+        final float[] data = new float[width * height * 3];
+        final AtomicInteger done = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+                numThreads));
+        try {
+            List<Future<?>> rows = new ArrayList<Future<?>>();
+            for (int row = 0; row < height; row++) {
+                final int r = row;
+                rows.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        computeRow(r, data);
+                        int n = done.incrementAndGet();
+                        if (progress) {
+                            System.err.printf("\rwarp table: %d / %d rows",
+                                    n, height);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> f : rows) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        if (progress) {
+            System.err.println();
+        }
+        return data;
+    }
+
+    /**
+     * Trace the rays of one velocity and invert xi to phi.
+     * 
+     * @param row
+     *            : row index.
+     * @param data
+     *            : table data.
+     */
+    public void computeRow(int row, float[] data) {
+        double v = velocity(row);
+        int numRays = OVERSAMPLE * width + 1;
+        double[] xi = new double[numRays];
+        double[] phi = new double[numRays];
+        double[] shift = new double[numRays];
+        Ray ray = new Ray(v);
+        for (int k = 0; k < numRays; k++) {
+            xi[k] = Math.PI * k / (numRays - 1);
+            if (ray.trace(xi[k])) {
+                phi[k] = ray.phi;
+                shift[k] = ray.shift;
+            } else {
+                phi[k] = Double.NaN;
+            }
+        }
+
+        int base = row * width * 3;
+        boolean[] filled = new boolean[width];
+        for (int i = 0; i < width; i++) {
+            data[base + 3 * i] = -1.0f;
+            data[base + 3 * i + 1] = 1.0f;
+            data[base + 3 * i + 2] = 1.0f;
+        }
+        // intervals of rays in order of xi, the first hit wins
+        for (int k = 0; k + 1 < numRays; k++) {
+            double p0 = phi[k];
+            double p1 = phi[k + 1];
+            if (Double.isNaN(p0) || Double.isNaN(p1) || p0 == p1) {
+                continue;
+            }
+            double lo = Math.min(p0, p1);
+            double hi = Math.max(p0, p1);
+            int first = Math.max(0, (int) Math.ceil(lo / Math.PI * width
+                    - 0.5));
+            int last = Math.min(width - 1, (int) Math.floor(hi / Math.PI
+                    * width - 0.5));
+            double dphi = (p1 - p0) / (xi[k + 1] - xi[k]);
+            for (int i = first; i <= last; i++) {
+                if (filled[i]) {
+                    continue;
+                }
+                double p = Math.PI * (i + 0.5) / width;
+                double a = (p - p0) / (p1 - p0);
+                double x = xi[k] + a * (xi[k + 1] - xi[k]);
+                double mu = Math.sin(x) / (Math.sin(p) * Math.abs(dphi));
+                data[base + 3 * i] = (float) x;
+                data[base + 3 * i + 1] = (float) (shift[k] + a
+                        * (shift[k + 1] - shift[k]));
+                data[base + 3 * i + 2] = (float) mu;
+                filled[i] = true;
+            }
+        }
+    }
+
+    /**
+     * Shape function of the bubble.
+     * 
+     * @param r
+     *            : distance to the bubble center.
+     * @return one inside, zero outside.
+     */
+    public static double shape(double r) {
+        return (Math.tanh(SIGMA * (r + R)) - Math.tanh(SIGMA * (r - R)))
+                / (2.0 * Math.tanh(SIGMA * R));
+    }
+
+    /**
+     * Derivative of the shape function.
+     */
+    static double dshape(double r) {
+        double cp = Math.cosh(SIGMA * (r + R));
+        double cm = Math.cosh(SIGMA * (r - R));
+        return SIGMA * (1.0 / (cp * cp) - 1.0 / (cm * cm))
+                / (2.0 * Math.tanh(SIGMA * R));
+    }
+
+    /**
+     * Light ray in the plane z=0, traced from the observer backwards.
+     * State (x, y, p_x, p_y); p_t = -1, so that the observer measures unit
+     * frequency.
+     */
+    static class Ray {
+        // Dormand-Prince 5(4) coefficients
+        private static final double A21 = 1.0 / 5.0;
+        private static final double A31 = 3.0 / 40.0, A32 = 9.0 / 40.0;
+        private static final double A41 = 44.0 / 45.0, A42 = -56.0 / 15.0,
+                A43 = 32.0 / 9.0;
+        private static final double A51 = 19372.0 / 6561.0,
+                A52 = -25360.0 / 2187.0, A53 = 64448.0 / 6561.0,
+                A54 = -212.0 / 729.0;
+        private static final double A61 = 9017.0 / 3168.0,
+                A62 = -355.0 / 33.0, A63 = 46732.0 / 5247.0,
+                A64 = 49.0 / 176.0, A65 = -5103.0 / 18656.0;
+        private static final double B1 = 35.0 / 384.0, B3 = 500.0 / 1113.0,
+                B4 = 125.0 / 192.0, B5 = -2187.0 / 6784.0, B6 = 11.0 / 84.0;
+        private static final double E1 = 71.0 / 57600.0,
+                E3 = -71.0 / 16695.0, E4 = 71.0 / 1920.0,
+                E5 = -17253.0 / 339200.0, E6 = 22.0 / 525.0,
+                E7 = -1.0 / 40.0;
+
+        final double      v;
+        double            phi;
+        double            shift;
+
+        private final double[] y  = new double[4];
+        private final double[] t  = new double[4];
+        private final double[] y5 = new double[4];
+        private final double[][] k = new double[7][4];
+
+        Ray(double v) {
+            this.v = v;
+        }
+
+        /**
+         * Right-hand side of the backward geodesic equation.
+         */
+        private void rhs(double[] s, double[] d) {
+            double r = Math.sqrt(s[0] * s[0] + s[1] * s[1]);
+            double h = v * (1.0 - shape(r));
+            double px = s[2];
+            double py = s[3];
+            double dh = r > 0.0 ? -v * dshape(r) / r : 0.0;
+            double c = px * (1.0 + h * px);
+            d[0] = h - (1.0 - h * h) * px;
+            d[1] = -py;
+            d[2] = -dh * s[0] * c;
+            d[3] = -dh * s[1] * c;
+        }
+
+        /**
+         * Trace a ray.
+         * 
+         * @param xi
+         *            : observation angle to the direction of motion.
+         * @return true if the ray reaches the flat region, then phi and
+         *         shift are set.
+         */
+        boolean trace(double xi) {
+            y[0] = 0.0;
+            y[1] = 0.0;
+            y[2] = -Math.cos(xi);
+            y[3] = -Math.sin(xi);
+            double step = 1e-2;
+
+            for (int n = 0; n < MAX_STEPS; n++) {
+                double r = Math.sqrt(y[0] * y[0] + y[1] * y[1]);
+                rhs(y, k[0]);
+                boolean outward = y[0] * k[0][0] + y[1] * k[0][1] > 0.0;
+                if ((outward && v * shape(r) < FLAT) || r > R_MAX) {
+                    // straight line from here, p is constant
+                    double px = y[2];
+                    double py = y[3];
+                    phi = Math.atan2(-py, -px);
+                    shift = 1.0 + v * px;
+                    return shift > 0.0;
+                }
+                step = Math.min(step, 1.0 + 0.5 * r);
+
+                while (true) {
+                    for (int i = 0; i < 4; i++) {
+                        t[i] = y[i] + step * A21 * k[0][i];
+                    }
+                    rhs(t, k[1]);
+                    for (int i = 0; i < 4; i++) {
+                        t[i] = y[i] + step * (A31 * k[0][i] + A32 * k[1][i]);
+                    }
+                    rhs(t, k[2]);
+                    for (int i = 0; i < 4; i++) {
+                        t[i] = y[i] + step * (A41 * k[0][i] + A42 * k[1][i]
+                                + A43 * k[2][i]);
+                    }
+                    rhs(t, k[3]);
+                    for (int i = 0; i < 4; i++) {
+                        t[i] = y[i] + step * (A51 * k[0][i] + A52 * k[1][i]
+                                + A53 * k[2][i] + A54 * k[3][i]);
+                    }
+                    rhs(t, k[4]);
+                    for (int i = 0; i < 4; i++) {
+                        t[i] = y[i] + step * (A61 * k[0][i] + A62 * k[1][i]
+                                + A63 * k[2][i] + A64 * k[3][i] + A65
+                                * k[4][i]);
+                    }
+                    rhs(t, k[5]);
+                    for (int i = 0; i < 4; i++) {
+                        y5[i] = y[i] + step * (B1 * k[0][i] + B3 * k[2][i]
+                                + B4 * k[3][i] + B5 * k[4][i] + B6
+                                * k[5][i]);
+                    }
+                    rhs(y5, k[6]);
+
+                    double err = 0.0;
+                    for (int i = 0; i < 4; i++) {
+                        double e = step * (E1 * k[0][i] + E3 * k[2][i] + E4
+                                * k[3][i] + E5 * k[4][i] + E6 * k[5][i] + E7
+                                * k[6][i]);
+                        double sc = TOLERANCE * (1.0 + Math.max(Math
+                                .abs(y[i]), Math.abs(y5[i])));
+                        err = Math.max(err, Math.abs(e) / sc);
+                    }
+                    if (err <= 1.0 || step < 1e-12) {
+                        System.arraycopy(y5, 0, y, 0, 4);
+                        step *= Math.min(5.0, 0.9 * Math.pow(Math.max(err,
+                                1e-10), -0.2));
+                        break;
+                    }
+                    step *= Math.max(0.2, 0.9 * Math.pow(err, -0.2));
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Compute and cache a warp table.
+     * 
+     * @param args
+     *            : [width height [betaMax [threads]]], defaults from Defs.
+     */
+    public static void main(String[] args) {
+        int w = args.length > 1 ? Integer.parseInt(args[0]) : Defs.WARP_WIDTH;
+        int h = args.length > 1 ? Integer.parseInt(args[1])
+                : Defs.WARP_HEIGHT;
+        double betaMax = args.length > 2 ? Double.parseDouble(args[2])
+                : Defs.betaMaxWarp;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime
+                .getRuntime().availableProcessors();
+
+        long start = System.nanoTime();
+        WarpTable table = new WarpTable(w, h, betaMax);
+        float[] data = table.compute(threads, true);
+        String name = cacheName(w, h, betaMax);
+        try {
+            TextureTable.write(name, w, h, 3, data);
+        } catch (IOException e) {
+            System.err.println("Cannot write " + name + ": "
+                    + e.getMessage());
+            System.exit(1);
+        }
+
+        int invalid = 0;
+        for (int i = 0; i < data.length; i += 3) {
+            if (data[i] < 0.0f) {
+                invalid++;
+            }
+        }
+        System.err.printf("%s: %d x %d, v = %.4f ... %.4f, %d entries "
+                + "without image, %.1f s\n", name, w, h, table.velocity(0),
+                table.velocity(h - 1), invalid,
+                (System.nanoTime() - start) * 1e-9);
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.util.Random;
+
+/**
+ * Check the frame scheduler without a display: a flight of ten seconds must
+ * end at the same position for any frame rate, and a stall longer than the
+ * catch-up limit must drop ticks.
+ */
+public class FrameSchedulerCheck {
+
+    /**
+     * Position of a flight with constant velocity.
+     */
+    private static class Flight implements FrameScheduler.Simulation {
+        double prev  = 0.0;
+        double curr  = 0.0;
+        double shown = 0.0;
+
+        @Override
+        public void step() {
+            prev = curr;
+            curr += 0.9 * Defs.timeStep;
+        }
+
+        @Override
+        public void interpolate(double alpha) {
+            shown = prev + alpha * (curr - prev);
+        }
+    }
+
+    /**
+     * Run the check.
+     * 
+     * @param args
+     *            : not used.
+     */
+    public static void main(String[] args) {
+        final long duration = 10000000000L;
+        double[] rates = { 24.0, 60.0, 144.0, 0.0 };
+        double expected = -1.0;
+        boolean ok = true;
+        Random random = new Random(1);
+        for (double rate : rates) {
+            Flight flight = new Flight();
+            FrameScheduler scheduler = new FrameScheduler(flight,
+                    Defs.TICK_MILLIS, Defs.MAX_CATCHUP_TICKS);
+            scheduler.start(0);
+            long t = 0;
+            while (t < duration) {
+                // rate zero: irregular frames between 2 and 60 ms
+                long dt = rate > 0.0 ? (long) (1e9 / rate)
+                        : 2000000L + (long) (58e6 * random.nextDouble());
+                t = Math.min(t + dt, duration);
+                scheduler.frame(t);
+            }
+            if (expected < 0.0) {
+                expected = flight.shown;
+            }
+            ok &= Math.abs(flight.shown - expected) < 1e-9;
+            System.out.printf("%s: position %.6f after %d ticks, %.1f fps, "
+                    + "jitter %.2f ms\n", rate > 0.0 ? rate + " Hz"
+                    : "irregular", flight.shown, scheduler.getTicks(),
+                    scheduler.getFrameRate(), scheduler.getJitter());
+        }
+
+        // a stall longer than the catch-up limit drops ticks
+        Flight flight = new Flight();
+        FrameScheduler scheduler = new FrameScheduler(flight,
+                Defs.TICK_MILLIS, Defs.MAX_CATCHUP_TICKS);
+        scheduler.start(0);
+        scheduler.frame(1000000000L);
+        System.out.printf("1 s stall: %d ticks, %d dropped\n",
+                scheduler.getTicks(), scheduler.getDroppedTicks());
+        ok &= scheduler.getTicks() == Defs.MAX_CATCHUP_TICKS
+                && scheduler.getTicks() + scheduler.getDroppedTicks() == 1000
+                        / Defs.TICK_MILLIS;
+
+        System.out.println(ok ? "OK" : "FAILED");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.media.opengl.GL;
+
+/**
+ * BufferGL stand-in without a graphics board: records the names of all
+ * calls and hands out buffer and vertex array names.
+ * 
+ * A vertex pointer set while no buffer object is bound would read client
+ * memory on a real context; such pointers are counted as client-side
+ * arrays.
+ */
+public class RecordingBufferGL implements BufferGL {
+    private final boolean      vao;
+    private final List<String> calls        = new ArrayList<String>();
+    private int                nextName     = 1;
+    private int                boundBuffer  = 0;
+    private int                clientArrays = 0;
+
+    /**
+     * Recording stand-in.
+     * 
+     * @param vao
+     *            : report vertex array objects as available.
+     */
+    public RecordingBufferGL(boolean vao) {
+        this.vao = vao;
+    }
+
+    public List<String> getCalls() {
+        return calls;
+    }
+
+    public int getClientArrays() {
+        return clientArrays;
+    }
+
+    /**
+     * Number of recorded calls of a function.
+     * 
+     * @param name
+     *            : function name.
+     * @return number of calls.
+     */
+    public int count(String name) {
+        int n = 0;
+        for (String call : calls) {
+            if (call.equals(name)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Forget the recorded calls.
+     */
+    public void clear() {
+        calls.clear();
+        clientArrays = 0;
+    }
+
+    public boolean isFunctionAvailable(String name) {
+        return vao || !name.endsWith("VertexArrays");
+    }
+
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        calls.add("glGenBuffers");
+        gen(n, buffers, offset);
+    }
+
+    public void glBindBuffer(int target, int buffer) {
+        calls.add("glBindBuffer");
+        if (target == GL.GL_ARRAY_BUFFER) {
+            boundBuffer = buffer;
+        }
+    }
+
+    public void glBufferData(int target, long size, Buffer data, int usage) {
+        calls.add("glBufferData");
+        if (boundBuffer == 0) {
+            throw new IllegalStateException("glBufferData without buffer");
+        }
+        if (data != null && data.remaining() * 4L < size) {
+            throw new IllegalStateException("glBufferData of " + size
+                    + " bytes from " + data.remaining() + " floats");
+        }
+    }
+
+    public void glBufferSubData(int target, long offset, long size,
+            Buffer data) {
+        calls.add("glBufferSubData");
+        if (boundBuffer == 0) {
+            throw new IllegalStateException("glBufferSubData without buffer");
+        }
+    }
+
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        calls.add("glDeleteBuffers");
+    }
+
+    public void glGenVertexArrays(int n, int[] arrays, int offset) {
+        calls.add("glGenVertexArrays");
+        if (!vao) {
+            throw new IllegalStateException("no vertex array objects");
+        }
+        gen(n, arrays, offset);
+    }
+
+    public void glBindVertexArray(int array) {
+        calls.add("glBindVertexArray");
+        if (!vao) {
+            throw new IllegalStateException("no vertex array objects");
+        }
+    }
+
+    public void glDeleteVertexArrays(int n, int[] arrays, int offset) {
+        calls.add("glDeleteVertexArrays");
+    }
+
+    public void glVertexPointer(int size, int type, int stride, long offset) {
+        calls.add("glVertexPointer");
+        pointer();
+    }
+
+    public void glEnableClientState(int array) {
+        calls.add("glEnableClientState");
+    }
+
+    public void glDisableClientState(int array) {
+        calls.add("glDisableClientState");
+    }
+
+    public void glVertexAttribPointer(int index, int size, int type,
+            boolean normalized, int stride, long offset) {
+        calls.add("glVertexAttribPointer");
+        pointer();
+    }
+
+    public void glEnableVertexAttribArray(int index) {
+        calls.add("glEnableVertexAttribArray");
+    }
+
+    public void glDisableVertexAttribArray(int index) {
+        calls.add("glDisableVertexAttribArray");
+    }
+
+    public void glDrawArrays(int mode, int first, int count) {
+        calls.add("glDrawArrays");
+    }
+
+    public void glMultiDrawArrays(int mode, int[] first, int firstOffset,
+            int[] count, int countOffset, int drawCount) {
+        calls.add("glMultiDrawArrays");
+        if (firstOffset + drawCount > first.length
+                || countOffset + drawCount > count.length) {
+            throw new IllegalStateException("glMultiDrawArrays of "
+                    + drawCount + " ranges");
+        }
+    }
+
+    private void gen(int n, int[] names, int offset) {
+        for (int i = 0; i < n; i++) {
+            names[offset + i] = nextName++;
+        }
+    }
+
+    private void pointer() {
+        if (boundBuffer == 0) {
+            clientArrays++;
+        }
+    }
+}
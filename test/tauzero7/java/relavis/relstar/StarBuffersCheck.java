@@ -0,0 +1,93 @@
+/**
+ * JRelStarflight realizes the special relativistic and warp flight 
+ * through the Hipparcos star field.
+ * 
+ * Copyright (c) 2011, 2017, Thomas Mueller
+ * 
+ * @author   Thomas Mueller
+ * @version  1.1
+ */
+package tauzero7.java.relavis.relstar;
+
+import java.util.Random;
+
+/**
+ * Check the star buffers with the recording stand-in: after the upload,
+ * frames must not upload data unless chunks are streamed, and no vertex
+ * pointer may point to client memory. With vertex array objects, frames
+ * must not set any pointers.
+ */
+public class StarBuffersCheck {
+
+    /**
+     * Run the check.
+     * 
+     * @param args
+     *            : [number of stars]
+     */
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        Random random = new Random(1);
+        StarCatalog stars = StarCatalog.allocate(n);
+        for (int i = 0; i < n; i++) {
+            stars.set(i, i, 1.0f + 100.0f * random.nextFloat(),
+                    (float) (2.0 * Math.PI * random.nextFloat()),
+                    (float) Math.asin(2.0 * random.nextFloat() - 1.0),
+                    5.0f * random.nextFloat(), 3000.0f + 10000.0f
+                            * random.nextFloat());
+        }
+
+        boolean ok = true;
+        int chunkSize = Math.max(1, n / (Defs.RESIDENT_CHUNKS + 2));
+        int[] sizes = { n, chunkSize };
+        boolean[] withVAO = { true, false };
+        for (int size : sizes) {
+            for (boolean vao : withVAO) {
+                ok &= check(new ChunkedCatalog(stars, size), vao);
+            }
+        }
+        System.out.println(ok ? "OK" : "FAILED");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean check(ChunkedCatalog catalog, boolean vao) {
+        RecordingBufferGL gl = new RecordingBufferGL(vao);
+        StarBuffers buffers = new StarBuffers(catalog);
+        ProjectionParams params = new ProjectionParams();
+        params.width = 720;
+        params.height = 576;
+        try {
+            buffers.init(gl);
+            boolean initClient = gl.getClientArrays() > 0;
+            gl.clear();
+            for (int camera = 0; camera < 2; camera++) {
+                params.camera = camera;
+                buffers.draw(gl, params);
+            }
+            if (initClient) {
+                System.err.println("client-side arrays in init");
+                return false;
+            }
+        } catch (Exception e) {
+            System.err.println(e);
+            return false;
+        }
+        int streamed = catalog.getNumChunks() - buffers.getNumResident();
+        int uploads = gl.count("glBufferData")
+                + gl.count("glBufferSubData");
+        int pointers = gl.count("glVertexPointer")
+                + gl.count("glVertexAttribPointer");
+        int draws = gl.count("glDrawArrays") + gl.count("glMultiDrawArrays");
+        System.out.printf("%d chunk(s), %d resident, VAO %s: 2 frames with "
+                + "%d draws, %d uploads, %d pointer calls, %d client-side "
+                + "arrays, %d calls\n", catalog.getNumChunks(),
+                buffers.getNumResident(), buffers.usesVAO() ? "on" : "off",
+                draws, uploads, pointers, gl.getClientArrays(),
+                gl.getCalls().size());
+        return buffers.usesVAO() == vao && gl.getClientArrays() == 0
+                && uploads == 2 * streamed && (!vao || pointers == 0)
+                && draws >= 2 * catalog.getNumChunks();
+    }
+}